@@ -46,7 +46,6 @@ import org.apache.maven.project.DefaultProjectBuildingRequest;
 import org.apache.maven.project.ProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.ProjectBuildingResult;
-import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
 import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
 import org.eclipse.aether.RepositorySystem;
@@ -378,10 +377,9 @@ public final class ArtifactMojo extends AbstractMojo {
     private void unpackFileToDirectory(final Artifact artifact) throws NoSuchArchiverException {
         final File toUnpack = artifact.getFile();
         if (toUnpack != null && toUnpack.exists() && toUnpack.isFile()) {
-            final UnArchiver unarchiver = this.archiverManager.getUnArchiver(toUnpack);
-            unarchiver.setSourceFile(toUnpack);
-            unarchiver.setDestDirectory(this.outputDirectory);
-            unarchiver.extract();
+            new Unpacker(
+                this.archiverManager, this.outputDirectory, null, new String[0], new String[0]
+            ).unpack(toUnpack);
         }
     }
 
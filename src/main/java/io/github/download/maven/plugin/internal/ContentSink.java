@@ -0,0 +1,183 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import io.github.download.maven.plugin.internal.checksum.Digester;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import javax.annotation.Nullable;
+import org.apache.http.HttpEntity;
+
+/**
+ * Destination of the content of a response: writes it to the partial file,
+ * or to a stream consuming it as it arrives, digests it and reports the progress
+ * of the download.
+ * <p>Not thread safe: the content must be written in order, from one thread at a time.</p>
+ */
+final class ContentSink {
+
+    /**
+     * Buffer size used to copy the content of a response entity.
+     */
+    private static final int BUFFER_SIZE = 8 * 11024;
+
+    /**
+     * Partial content of the output file, {@literal null} if the content is written to a stream.
+     */
+    @Nullable
+    private final PartialDownload partial;
+
+    /**
+     * Digester of the content.
+     */
+    private final Digester digester;
+
+    /**
+     * Progress report of the download.
+     */
+    private final ProgressReport progressReport;
+
+    /**
+     * Stream the content is written to, {@literal null} until opened.
+     */
+    private OutputStream out;
+
+    /**
+     * Number of bytes of the content written so far.
+     */
+    private long written;
+
+    /**
+     * Constructor.
+     * @param partial Partial content of the output file.
+     * @param digester Digester of the content.
+     * @param progressReport Progress report of the download.
+     */
+    ContentSink(final PartialDownload partial, final Digester digester, final ProgressReport progressReport) {
+        this.partial = partial;
+        this.digester = digester;
+        this.progressReport = progressReport;
+    }
+
+    /**
+     * Constructor of a destination writing the content to a stream, which is closed
+     * once the content is completed or given up on.
+     * @param out Stream consuming the content.
+     * @param digester Digester of the content.
+     * @param progressReport Progress report of the download.
+     */
+    ContentSink(final OutputStream out, final Digester digester, final ProgressReport progressReport) {
+        this.partial = null;
+        this.out = out;
+        this.digester = digester;
+        this.progressReport = progressReport;
+    }
+
+    /**
+     * Opens the partial file to write the content from the given position.
+     * @param uri Request uri.
+     * @param start Position in the partial file the content is written from,
+     *  always zero if the content is written to a stream.
+     * @param length Length of the content, negative if unknown.
+     * @throws IOException If the partial file could not be opened.
+     */
+    void open(final URI uri, final long start, final long length) throws IOException {
+        this.progressReport.initiate(uri, length < 0L ? length : start + length);
+        this.written = start;
+        if (this.partial != null) {
+            this.out = Files.newOutputStream(
+                this.partial.file().toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                start > 0L ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING
+            );
+        }
+    }
+
+    /**
+     * Writes a chunk of the content.
+     * @param bytes Buffer holding the chunk.
+     * @param offset Position of the chunk in the buffer.
+     * @param count Number of bytes of the chunk.
+     * @throws IOException If the chunk could not be written.
+     */
+    void write(final byte[] bytes, final int offset, final int count) throws IOException {
+        this.out.write(bytes, offset, count);
+        this.digester.update(bytes, offset, count);
+        this.written += count;
+        this.progressReport.update(count);
+    }
+
+    /**
+     * Copies the content of a response entity, and completes it.
+     * @param entity Content of the response, {@literal null} if none.
+     * @throws IOException If the content could not be read or written.
+     */
+    void copy(@Nullable final HttpEntity entity) throws IOException {
+        if (entity != null) {
+            try (InputStream in = entity.getContent()) {
+                final byte[] tmp = new byte[BUFFER_SIZE];
+                int bytesRead;
+                while ((bytesRead = in.read(tmp)) != -1) {
+                    this.write(tmp, 0, bytesRead);
+                }
+            } catch (final IOException ex) {
+                this.fail(ex);
+                throw ex;
+            }
+        }
+        this.complete();
+    }
+
+    /**
+     * Completes the content.
+     * @throws IOException If the partial file could not be closed.
+     */
+    void complete() throws IOException {
+        this.close();
+        this.progressReport.completed();
+    }
+
+    /**
+     * Gives up on the content, keeping what was written so far to be resumed.
+     * @param cause Failure of the download.
+     */
+    void fail(final Exception cause) {
+        this.progressReport.error(cause);
+        try {
+            this.close();
+        } catch (final IOException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+
+    /**
+     * Closes the partial file and records how much of it was written,
+     * or closes the stream consuming the content.
+     * @throws IOException If the partial file or the stream could not be closed.
+     */
+    private void close() throws IOException {
+        try {
+            this.out.close();
+        } finally {
+            if (this.partial != null) {
+                this.partial.written(this.written);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import io.github.download.maven.plugin.internal.checksum.Checksums;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A file to download with the {@code wget} goal, configured as an entry
+ * of its {@code downloads} list.
+ * <p>Each entry takes the per-file options of the goal; all the other options
+ * are shared by the entries.</p>
+ */
+public final class Download {
+
+    /**
+     * URL to fetch the file from.
+     */
+    private URI uri;
+
+    /**
+     * File name to use as output value; if not set, the last segment of the URL.
+     */
+    private String outputFileName;
+
+    /**
+     * Expected md5 of the file.
+     */
+    private String md5;
+
+    /**
+     * Expected sha1 of the file.
+     */
+    private String sha1;
+
+    /**
+     * Expected sha256 of the file.
+     */
+    private String sha256;
+
+    /**
+     * Expected sha512 of the file.
+     */
+    private String sha512;
+
+    /**
+     * Whether to unpack the file; if not set, as configured for the goal.
+     */
+    private Boolean unpack;
+
+    /**
+     * Additional HTTP headers, sent along with the ones configured for the goal.
+     */
+    private Map<String, String> headers = new HashMap<>();
+
+    /**
+     * Sets the URL to fetch the file from.
+     * @param value URL.
+     * @return This entry.
+     */
+    Download withUri(final URI value) {
+        this.uri = value;
+        return this;
+    }
+
+    /**
+     * Sets the output file name.
+     * @param value File name, {@literal null} to use the last segment of the URL.
+     * @return This entry.
+     */
+    Download withOutputFileName(final String value) {
+        this.outputFileName = value;
+        return this;
+    }
+
+    /**
+     * Sets the expected checksums.
+     * @param md5sum Expected md5, {@literal null} if none.
+     * @param sha1sum Expected sha1, {@literal null} if none.
+     * @param sha256sum Expected sha256, {@literal null} if none.
+     * @param sha512sum Expected sha512, {@literal null} if none.
+     * @return This entry.
+     */
+    Download withChecksums(final String md5sum, final String sha1sum, final String sha256sum, final String sha512sum) {
+        this.md5 = md5sum;
+        this.sha1 = sha1sum;
+        this.sha256 = sha256sum;
+        this.sha512 = sha512sum;
+        return this;
+    }
+
+    /**
+     * URL to fetch the file from.
+     * @return URL, {@literal null} if not configured.
+     */
+    URI uri() {
+        return this.uri;
+    }
+
+    /**
+     * Output file name.
+     * @return Configured name, or the last segment of the URL.
+     */
+    String outputFileName() {
+        return Optional.ofNullable(this.outputFileName)
+            .orElseGet(() -> FileNameUtils.getOutputFileName(this.uri));
+    }
+
+    /**
+     * Expected checksums of the file.
+     * @param log Logger to report missing checksums to.
+     * @return Checksums.
+     */
+    Checksums checksums(final Log log) {
+        return new Checksums(this.md5, this.sha1, this.sha256, this.sha512, log);
+    }
+
+    /**
+     * Whether to unpack the file.
+     * @param fallback Value configured for the goal, used if not set on the entry.
+     * @return True if the file is to be unpacked.
+     */
+    boolean unpack(final boolean fallback) {
+        return Optional.ofNullable(this.unpack).orElse(fallback);
+    }
+
+    /**
+     * HTTP headers to send with the request.
+     * @param common Headers configured for the goal, overridden by the ones of the entry.
+     * @return Request headers.
+     */
+    List<Header> headers(final Map<String, String> common) {
+        final Map<String, String> all = new HashMap<>(common);
+        all.putAll(this.headers);
+        return all.entrySet().stream()
+            .map(pair -> new BasicHeader(pair.getKey(), pair.getValue()))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Identifies the resource fetched for this entry: two entries with the same identity
+     * receive the same content, so that one of them can be served from the other's download.
+     * @param common Headers configured for the goal.
+     * @param credentials Server id and user name the resource is fetched with.
+     * @return Identity of the request.
+     */
+    String identity(final Map<String, String> common, final String... credentials) {
+        final Map<String, String> all = new TreeMap<>(common);
+        all.putAll(this.headers);
+        return Arrays.asList(
+            this.uri, all, Arrays.asList(credentials), this.md5, this.sha1, this.sha256, this.sha512
+        ).toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(this.uri);
+    }
+}
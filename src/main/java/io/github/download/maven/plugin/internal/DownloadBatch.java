@@ -0,0 +1,138 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Runs the downloads of a {@code wget} execution on a bounded pool of workers.
+ * <p>A failed download does not stop the others: every failure is reported
+ * and, once all the downloads are over, they are combined into a single one.</p>
+ */
+final class DownloadBatch {
+
+    /**
+     * Maximum number of downloads running at the same time.
+     */
+    private final int concurrency;
+
+    /**
+     * Logger.
+     */
+    private final Log log;
+
+    /**
+     * Constructor.
+     * @param concurrency Maximum number of downloads running at the same time.
+     * @param log Logger.
+     */
+    DownloadBatch(final int concurrency, final Log log) {
+        this.concurrency = concurrency;
+        this.log = log;
+    }
+
+    /**
+     * Runs the downloads and waits for all of them to be over.
+     * <p>A single download is run on the calling thread, and its failure
+     * is rethrown as is.</p>
+     * @param downloads Downloads to run.
+     * @param task Runs a download.
+     * @throws MojoExecutionException If a download failed with an unexpected error.
+     * @throws MojoFailureException If downloads failed, and none with an unexpected error.
+     */
+    void run(final List<Download> downloads, final DownloadBatch.Task task)
+        throws MojoExecutionException, MojoFailureException {
+        if (downloads.size() == 1) {
+            task.run(downloads.get(0));
+        } else {
+            final ExecutorService workers = Executors.newFixedThreadPool(
+                Math.min(this.concurrency, downloads.size())
+            );
+            try {
+                final Map<Download, Future<Void>> running = new LinkedHashMap<>();
+                for (final Download download : downloads) {
+                    running.put(download, workers.submit(() -> {
+                        task.run(download);
+                        return null;
+                    }));
+                }
+                this.complete(running);
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Waits for the downloads to be over and combines their failures.
+     * @param running Running downloads.
+     * @throws MojoExecutionException If a download failed with an unexpected error.
+     * @throws MojoFailureException If downloads failed, and none with an unexpected error.
+     */
+    private void complete(final Map<Download, Future<Void>> running)
+        throws MojoExecutionException, MojoFailureException {
+        final List<String> failures = new ArrayList<>(0);
+        boolean unexpected = false;
+        for (final Map.Entry<Download, Future<Void>> entry : running.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while waiting for the downloads", ex);
+            } catch (final ExecutionException ex) {
+                this.log.error(String.format("Download of %s failed", entry.getKey()), ex.getCause());
+                failures.add(String.format("%s: %s", entry.getKey(), ex.getCause().getMessage()));
+                unexpected = unexpected || !(ex.getCause() instanceof MojoFailureException);
+            }
+        }
+        if (!failures.isEmpty()) {
+            final String message = String.format(
+                "%d of %d downloads failed:%n%s", failures.size(), running.size(),
+                failures.stream().map(failure -> "  " + failure).collect(Collectors.joining(System.lineSeparator()))
+            );
+            if (unexpected) {
+                throw new MojoExecutionException(message);
+            }
+            throw new MojoFailureException(message);
+        }
+    }
+
+    /**
+     * Download of a single entry.
+     */
+    @FunctionalInterface
+    interface Task {
+
+        /**
+         * Downloads an entry.
+         * @param download Entry to download.
+         * @throws MojoExecutionException If the download failed with an unexpected error.
+         * @throws MojoFailureException If the download failed.
+         */
+        void run(Download download) throws MojoExecutionException, MojoFailureException;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * Consumer of a response received over the multiplexed HTTP/2 transport.
+ * <p>The status line and headers are presented to the downloader as an HttpClient 4
+ * response, so that they are handled exactly as on the HTTP/1.1 transport, and the
+ * content is streamed to the destination it opens as it arrives.</p>
+ */
+final class Http2ResponseConsumer extends AbstractBinResponseConsumer<HttpResponse> {
+
+    /**
+     * Buffer size used to pass the content to its destination.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Protocol version of the responses.
+     */
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    /**
+     * Opens the destination of the content from the response head.
+     */
+    private final Http2ResponseConsumer.Opener opener;
+
+    /**
+     * Buffer used to pass the content to its destination.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Response head, {@literal null} until received.
+     */
+    private HttpResponse head;
+
+    /**
+     * Destination of the content; empty if the response has no content to keep.
+     */
+    private Optional<ContentSink> sink = Optional.empty();
+
+    /**
+     * Constructor.
+     * @param opener Opens the destination of the content from the response head.
+     */
+    Http2ResponseConsumer(final Http2ResponseConsumer.Opener opener) {
+        super();
+        this.opener = opener;
+    }
+
+    /**
+     * Destination the content was written to.
+     * @return Destination; empty if the response had no content to keep.
+     */
+    Optional<ContentSink> sink() {
+        return this.sink;
+    }
+
+    @Override
+    protected void start(
+        final org.apache.hc.core5.http.HttpResponse response, final ContentType type
+    ) throws IOException {
+        this.head = new BasicHttpResponse(HTTP_2, response.getCode(), response.getReasonPhrase());
+        for (final Header header : response.getHeaders()) {
+            this.head.addHeader(header.getName(), header.getValue());
+        }
+        this.sink = this.opener.open(this.head);
+    }
+
+    @Override
+    protected HttpResponse buildResult() {
+        return this.head;
+    }
+
+    @Override
+    protected int capacityIncrement() {
+        return BUFFER_SIZE;
+    }
+
+    @Override
+    protected void data(final ByteBuffer src, final boolean end) throws IOException {
+        while (src.hasRemaining()) {
+            final int count = Math.min(src.remaining(), this.buffer.length);
+            src.get(this.buffer, 0, count);
+            if (this.sink.isPresent()) {
+                this.sink.get().write(this.buffer, 0, count);
+            }
+        }
+    }
+
+    @Override
+    public void failed(final Exception cause) {
+        this.sink.ifPresent(destination -> destination.fail(cause));
+    }
+
+    @Override
+    public void releaseResources() {
+        // the destination is completed by the downloader once the exchange is over
+    }
+
+    /**
+     * Opens the destination of the content of a response.
+     */
+    @FunctionalInterface
+    interface Opener {
+
+        /**
+         * Opens the destination of the content of a response.
+         * @param head Status line and headers of the response.
+         * @return Destination of the content; empty if there is no content to keep.
+         * @throws IOException If the destination could not be opened.
+         */
+        Optional<ContentSink> open(HttpResponse head) throws IOException;
+    }
+}
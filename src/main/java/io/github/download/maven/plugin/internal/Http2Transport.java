@@ -0,0 +1,320 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.apache.hc.client5.http.auth.Credentials;
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.auth.BasicScheme;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.client5.http.ssl.TrustAllStrategy;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.CredentialsProvider;
+
+/**
+ * HTTP/2 transport, sending all the downloads to the same origin as streams
+ * multiplexed over a single connection.
+ * <p>HTTP/2 is negotiated with ALPN over TLS, and used with prior knowledge
+ * over plain HTTP. As with {@link HttpClientPool}, one client is kept per effective
+ * connection configuration for the lifetime of the JVM. Proxies are not supported:
+ * see {@link #supports(URI, org.apache.http.HttpHost)}.</p>
+ */
+final class Http2Transport {
+
+    /**
+     * Time after which idle connections are closed, in seconds.
+     */
+    private static final long IDLE_EVICTION = 30L;
+
+    /**
+     * Shared clients by their configuration.
+     */
+    private static final Map<Http2Transport.Config, CloseableHttpAsyncClient> CLIENTS =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Effective connection configuration.
+     */
+    private final Http2Transport.Config config;
+
+    /**
+     * Credentials of the HTTP/1.1 transport, looked up for each authentication scope.
+     */
+    private final CredentialsProvider credentials;
+
+    /**
+     * Whether basic authentication is sent without waiting for a challenge.
+     */
+    private final boolean preemptive;
+
+    /**
+     * Constructor.
+     * @param config Effective connection configuration.
+     * @param credentials Credentials provider.
+     * @param preemptive Whether basic authentication is sent without waiting for a challenge.
+     */
+    Http2Transport(
+        final Http2Transport.Config config, final CredentialsProvider credentials, final boolean preemptive
+    ) {
+        this.config = config;
+        this.credentials = credentials;
+        this.preemptive = preemptive;
+    }
+
+    /**
+     * Checks whether a resource can be fetched with this transport, which connects
+     * to the server directly.
+     * @param uri Resource URI.
+     * @param proxy Explicit proxy, {@literal null} if none.
+     * @return True if no proxy is configured for the resource.
+     */
+    static boolean supports(final URI uri, @Nullable final org.apache.http.HttpHost proxy) {
+        final ProxySelector selector = ProxySelector.getDefault();
+        return proxy == null
+            && (selector == null || selector.select(uri).stream().allMatch(Proxy.NO_PROXY::equals));
+    }
+
+    /**
+     * Closes all shared clients and their connections.
+     */
+    static void closeAll() {
+        for (final Http2Transport.Config key : CLIENTS.keySet()) {
+            final CloseableHttpAsyncClient client = CLIENTS.remove(key);
+            if (client != null) {
+                client.close(CloseMode.GRACEFUL);
+            }
+        }
+    }
+
+    /**
+     * Sends a {@code GET} request and waits for its response to be consumed.
+     * @param uri Resource URI.
+     * @param headers Request headers.
+     * @param consumer Consumer of the response.
+     * @return Response head.
+     * @throws IOException Thrown if the exchange does not succeed.
+     */
+    HttpResponse get(final URI uri, final Header[] headers, final Http2ResponseConsumer consumer)
+        throws IOException {
+        final AsyncRequestBuilder request = AsyncRequestBuilder.get(uri);
+        for (final Header header : headers) {
+            request.setHeader(header.getName(), header.getValue());
+        }
+        try {
+            return CLIENTS.computeIfAbsent(this.config, Http2Transport::create)
+                .execute(request.build(), consumer, this.context(uri), null)
+                .get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (final ExecutionException ex) {
+            throw Http2Transport.unwrap(ex.getCause());
+        }
+    }
+
+    /**
+     * Creates the execution context of a request, carrying the credentials
+     * and the preemptive authentication.
+     * @param uri Resource URI.
+     * @return New request context.
+     */
+    private HttpClientContext context(final URI uri) {
+        final HttpClientContext context = HttpClientContext.create();
+        context.setCredentialsProvider(
+            (scope, ignored) -> this.lookup(scope.getHost(), scope.getPort())
+        );
+        final HttpHost target = new HttpHost(uri.getScheme(), uri.getHost(), uri.getPort());
+        final Credentials found = this.lookup(target.getHostName(), target.getPort());
+        if (this.preemptive && found != null) {
+            final BasicScheme scheme = new BasicScheme();
+            scheme.initPreemptive(found);
+            context.resetAuthExchange(target, scheme);
+        }
+        return context;
+    }
+
+    /**
+     * Looks up the credentials of an authentication scope.
+     * @param host Host name.
+     * @param port Port.
+     * @return Credentials; {@literal null} if none apply.
+     */
+    private Credentials lookup(final String host, final int port) {
+        final org.apache.http.auth.Credentials found = this.credentials.getCredentials(
+            new org.apache.http.auth.AuthScope(host, port)
+        );
+        final Credentials result;
+        if (found == null) {
+            result = null;
+        } else {
+            result = new UsernamePasswordCredentials(
+                found.getUserPrincipal().getName(),
+                found.getPassword() == null ? null : found.getPassword().toCharArray()
+            );
+        }
+        return result;
+    }
+
+    /**
+     * Creates and starts a client for the given configuration.
+     * @param config Effective connection configuration.
+     * @return New started client.
+     */
+    private static CloseableHttpAsyncClient create(final Http2Transport.Config config) {
+        final H2AsyncClientBuilder builder = H2AsyncClientBuilder.create()
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(config.connectTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(config.socketTimeout))
+                .setRedirectsEnabled(config.redirectsEnabled)
+                .build())
+            .setTlsStrategy(Http2Transport.tlsStrategy(config.insecure))
+            .evictIdleConnections(Timeout.of(IDLE_EVICTION, TimeUnit.SECONDS));
+        if (!config.redirectsEnabled) {
+            builder.disableRedirectHandling();
+        }
+        final CloseableHttpAsyncClient client = builder.build();
+        client.start();
+        return client;
+    }
+
+    /**
+     * Creates the TLS strategy.
+     * @param insecure Whether certificate and host name verification are skipped.
+     * @return TLS strategy.
+     */
+    private static TlsStrategy tlsStrategy(final boolean insecure) {
+        final ClientTlsStrategyBuilder builder = ClientTlsStrategyBuilder.create()
+            .setTlsVersions(SSLProtocols.supported());
+        if (insecure) {
+            try {
+                builder.setSslContext(
+                    SSLContexts.custom().loadTrustMaterial(TrustAllStrategy.INSTANCE).build()
+                ).setHostnameVerifier(NoopHostnameVerifier.INSTANCE);
+            } catch (final NoSuchAlgorithmException | KeyStoreException
+                           | KeyManagementException cantHappen) {
+                throw new IllegalStateException(cantHappen);
+            }
+        } else {
+            builder.setSslContext(SSLContexts.createSystemDefault());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Unwraps the failure of an exchange.
+     * @param cause Failure cause.
+     * @return I/O exception to report.
+     */
+    private static IOException unwrap(final Throwable cause) {
+        final IOException result;
+        if (cause instanceof IOException) {
+            result = (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else {
+            result = new IOException(cause);
+        }
+        return result;
+    }
+
+    /**
+     * Effective connection configuration a client is created for.
+     */
+    static final class Config {
+
+        /**
+         * Connect timeout in milliseconds.
+         */
+        private final int connectTimeout;
+
+        /**
+         * Socket timeout in milliseconds.
+         */
+        private final int socketTimeout;
+
+        /**
+         * Whether redirects are followed.
+         */
+        private final boolean redirectsEnabled;
+
+        /**
+         * Whether TLS verification is skipped.
+         */
+        private final boolean insecure;
+
+        /**
+         * Constructor.
+         * @param connectTimeout Connect timeout in milliseconds.
+         * @param socketTimeout Socket timeout in milliseconds.
+         * @param redirectsEnabled Whether redirects are followed.
+         * @param insecure Whether TLS verification is skipped.
+         */
+        Config(
+            final int connectTimeout, final int socketTimeout,
+            final boolean redirectsEnabled, final boolean insecure
+        ) {
+            this.connectTimeout = connectTimeout;
+            this.socketTimeout = socketTimeout;
+            this.redirectsEnabled = redirectsEnabled;
+            this.insecure = insecure;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Http2Transport.Config
+                && this.fields().equals(((Http2Transport.Config) other).fields());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.fields().hashCode();
+        }
+
+        /**
+         * All the fields identifying the configuration.
+         * @return Field values.
+         */
+        private List<Object> fields() {
+            return Arrays.asList(this.connectTimeout, this.socketTimeout, this.redirectsEnabled, this.insecure);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustAllStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.ssl.SSLContexts;
+
+/**
+ * JVM-wide registry of pooled HTTP clients.
+ * <p>One client (and one connection pool) is kept per effective connection
+ * configuration, so that all executions of the plugin with the same timeouts,
+ * proxy, TLS and redirect settings reuse kept-alive connections instead of
+ * paying a new TCP and TLS handshake for every file.</p>
+ * <p>Credentials are not part of the configuration: they are supplied
+ * per request through the execution context.</p>
+ */
+final class HttpClientPool {
+
+    /**
+     * Time to live of a pooled connection, in minutes.
+     */
+    private static final long CONNECTION_TTL = 1L;
+
+    /**
+     * Time after which idle pooled connections are evicted, in seconds.
+     */
+    private static final long IDLE_EVICTION = 30L;
+
+    /**
+     * Pooled clients by their configuration.
+     */
+    private static final Map<HttpClientPool.Key, CloseableHttpClient> CLIENTS =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Private constructor of utility class.
+     */
+    private HttpClientPool() {
+    }
+
+    /**
+     * Gets the shared client for the given configuration, creating it if needed.
+     * The returned client must not be closed by the caller.
+     * @param key Effective connection configuration.
+     * @return Shared pooled client.
+     */
+    static CloseableHttpClient client(final HttpClientPool.Key key) {
+        return CLIENTS.computeIfAbsent(key, HttpClientPool::create);
+    }
+
+    /**
+     * Closes all pooled clients and their connections.
+     * @throws IOException If a client could not be closed.
+     */
+    static void closeAll() throws IOException {
+        for (final HttpClientPool.Key key : CLIENTS.keySet()) {
+            final CloseableHttpClient client = CLIENTS.remove(key);
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Creates a new pooled client for the given configuration, not kept in the registry.
+     * The builder creates its pooling connection manager from the limits, time to live
+     * and TLS settings.
+     * @param key Effective connection configuration.
+     * @return New pooled client, to be closed by the caller.
+     */
+    static CloseableHttpClient create(final HttpClientPool.Key key) {
+        return HttpClients.custom()
+            .setSSLSocketFactory(HttpClientPool.sslSocketFactory(key.insecure))
+            .setMaxConnTotal(key.maxConnections)
+            .setMaxConnPerRoute(key.maxRouteConnections)
+            .setConnectionTimeToLive(CONNECTION_TTL, TimeUnit.MINUTES)
+            .setRoutePlanner(
+                key.proxy == null
+                    ? new SystemDefaultRoutePlanner(ProxySelector.getDefault())
+                    : new DefaultProxyRoutePlanner(key.proxy)
+            )
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(key.connectTimeout)
+                .setSocketTimeout(key.socketTimeout)
+                .setRedirectsEnabled(key.redirectsEnabled)
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(IDLE_EVICTION, TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * Creates the TLS socket factory.
+     * @param insecure Whether certificate and host name verification are skipped.
+     * @return TLS socket factory.
+     */
+    private static SSLConnectionSocketFactory sslSocketFactory(final boolean insecure) {
+        final SSLConnectionSocketFactory factory;
+        if (insecure) {
+            try {
+                factory = new SSLConnectionSocketFactory(
+                    new SSLContextBuilder()
+                        .loadTrustMaterial(null, TrustAllStrategy.INSTANCE)
+                        .build(),
+                    SSLProtocols.supported(),
+                    null,
+                    NoopHostnameVerifier.INSTANCE
+                );
+            } catch (final NoSuchAlgorithmException | KeyStoreException
+                           | KeyManagementException cantHappen) {
+                throw new IllegalStateException(cantHappen);
+            }
+        } else {
+            factory = new SSLConnectionSocketFactory(
+                SSLContexts.createSystemDefault(),
+                SSLProtocols.supported(),
+                null,
+                SSLConnectionSocketFactory.getDefaultHostnameVerifier()
+            );
+        }
+        return factory;
+    }
+
+    /**
+     * Effective connection configuration a pooled client is created for.
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    static final class Key {
+
+        /**
+         * Connect timeout in milliseconds.
+         */
+        private final int connectTimeout;
+
+        /**
+         * Socket timeout in milliseconds.
+         */
+        private final int socketTimeout;
+
+        /**
+         * Whether redirects are followed.
+         */
+        private final boolean redirectsEnabled;
+
+        /**
+         * Whether TLS verification is skipped.
+         */
+        private final boolean insecure;
+
+        /**
+         * Explicit proxy, {@literal null} to use the system proxy selector.
+         */
+        private final HttpHost proxy;
+
+        /**
+         * Maximum number of connections in the pool.
+         */
+        private final int maxConnections;
+
+        /**
+         * Maximum number of connections per route.
+         */
+        private final int maxRouteConnections;
+
+        /**
+         * Constructor.
+         * @param connectTimeout Connect timeout in milliseconds.
+         * @param socketTimeout Socket timeout in milliseconds.
+         * @param redirectsEnabled Whether redirects are followed.
+         * @param insecure Whether TLS verification is skipped.
+         * @param proxy Explicit proxy, {@literal null} to use the system proxy selector.
+         * @param maxConnections Maximum number of connections in the pool.
+         * @param maxRouteConnections Maximum number of connections per route.
+         */
+        Key(
+            final int connectTimeout, final int socketTimeout, final boolean redirectsEnabled,
+            final boolean insecure, @Nullable final HttpHost proxy,
+            final int maxConnections, final int maxRouteConnections
+        ) {
+            this.connectTimeout = connectTimeout;
+            this.socketTimeout = socketTimeout;
+            this.redirectsEnabled = redirectsEnabled;
+            this.insecure = insecure;
+            this.proxy = proxy;
+            this.maxConnections = maxConnections;
+            this.maxRouteConnections = maxRouteConnections;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof HttpClientPool.Key
+                && this.fields().equals(((HttpClientPool.Key) other).fields());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.fields().hashCode();
+        }
+
+        /**
+         * All the fields identifying the configuration.
+         * @return Field values.
+         */
+        private List<Object> fields() {
+            return Arrays.asList(
+                this.connectTimeout, this.socketTimeout, this.redirectsEnabled, this.insecure,
+                this.proxy, this.maxConnections, this.maxRouteConnections
+            );
+        }
+    }
+}
@@ -15,22 +15,22 @@
  */
 package io.github.download.maven.plugin.internal;
 
+import io.github.download.maven.plugin.internal.cache.Validators;
+import io.github.download.maven.plugin.internal.checksum.Digester;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.ProxySelector;
 import java.net.URI;
-import java.nio.file.Files;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.NTCredentials;
@@ -38,20 +38,12 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.AuthCache;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.cache.HttpCacheContext;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DecompressingEntity;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.conn.routing.HttpRoutePlanner;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.conn.ssl.TrustAllStrategy;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
-import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
-import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
@@ -65,24 +57,36 @@ import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
  * Use {@link HttpFileRequester.Builder} to create an instance.
  */
 @SuppressWarnings(
-    {"checkstyle:JavadocVariable", "checkstyle:EmptyLineSeparator", "checkstyle:HiddenField"}
+    {
+        "checkstyle:JavadocVariable", "checkstyle:EmptyLineSeparator", "checkstyle:HiddenField",
+        "checkstyle:ClassFanOutComplexity"
+    }
 )
 public final class HttpFileRequester {
 
     /**
-     * Buffer size used for HTTP file download operations within {@link HttpFileRequester}.
+     * Prefix of weak entity tags, which can't be used to resume a download.
      */
-    private static final int BUFFER_SIZE = 8 * 11024;
+    private static final String WEAK_ETAG_PREFIX = "W/";
 
     private ProgressReport progressReport;
     private int connectTimeout;
     private int socketTimeout;
-    private HttpRoutePlanner routePlanner;
+    private HttpHost proxy;
     private CredentialsProvider credentialsProvider;
     private boolean redirectsEnabled;
     private URI uri;
     private boolean preemptiveAuth;
     private boolean insecure;
+    private int maxConnections;
+    private int maxRouteConnections;
+    private int segments;
+    private long segmentSize;
+    private Digester digester;
+    private Validators conditions;
+    private boolean multiplexing;
+    private Function<HttpClientPool.Key, CloseableHttpClient> clients;
+    private Log log;
 
     /**
      * Private constructor.
@@ -92,40 +96,338 @@ public final class HttpFileRequester {
 
     /**
      * Downloads the resource with the given URI to the specified local file system location.
+     * <p>The content is written to a partial file next to the output file and moved
+     * in place once complete. If a previous attempt left partial content with a validator,
+     * the download continues from where it stopped.</p>
+     * <p>If validators of a cached copy were given, the content is only downloaded
+     * when it has been modified.</p>
+     * @param outputFile The output file.
+     * @param headers List of headers.
+     * @return Validators of the downloaded content; empty if the server answered
+     *  the cached copy is not modified, in which case the output file is left untouched.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    public Optional<Validators> download(final File outputFile, final List<Header> headers)
+        throws IOException {
+        final PartialDownload partial = new PartialDownload(outputFile, this.uri);
+        final long resumable = partial.resumableLength();
+        final SegmentedDownload segmented = new SegmentedDownload(
+            this.httpClient(), this::createContext, this.uri, headers
+        );
+        final boolean unconditional = resumable == 0L && this.conditions.isEmpty();
+        final Optional<Validators> result;
+        if (this.segments > 1 && unconditional && !this.multiplexed()
+            && segmented.probe(2L * this.segmentSize)) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug(String.format("Downloading %s in up to %d segments", this.uri, this.segments));
+            }
+            partial.start(null);
+            segmented.download(partial.file(), this.segments, this.segmentSize, this.progressReport);
+            result = Optional.of(segmented.validators());
+        } else {
+            result = this.fetch(partial, headers);
+        }
+        if (result.isPresent()) {
+            partial.complete();
+        } else {
+            this.log.info(String.format("%s is not modified, keeping the cached copy", this.uri));
+        }
+        return result;
+    }
+
+    /**
+     * Downloads the resource with the given URI as a single stream to the given destination,
+     * which consumes the content in order as it arrives. The download is neither split in
+     * segments nor resumed, and the destination is closed once the content is over.
+     * <p>If validators of a cached copy were given, the content is only downloaded
+     * when it has been modified.</p>
+     * @param out Destination of the content.
+     * @param headers List of headers.
+     * @return Validators of the downloaded content; empty if the server answered
+     *  the cached copy is not modified, in which case nothing is written to the destination.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    public Optional<Validators> stream(final OutputStream out, final List<Header> headers) throws IOException {
+        final HttpGet httpGet = new HttpGet(this.uri);
+        headers.forEach(httpGet::setHeader);
+        this.condition(httpGet);
+        final Optional<Validators> result = this.exchange(httpGet, head -> this.open(this.uri, out, head));
+        if (!result.isPresent()) {
+            this.log.info(String.format("%s is not modified, keeping the cached copy", this.uri));
+        }
+        return result;
+    }
+
+    /**
+     * Creates the remote view of the resource as a zip archive, fetched in byte ranges
+     * into a sparse copy of the archive next to the output file.
      * @param outputFile The output file.
      * @param headers List of headers.
+     * @return Zip archive of the resource.
+     */
+    SparseZip sparseZip(final File outputFile, final List<Header> headers) {
+        return new SparseZip(
+            outputFile,
+            new SegmentedDownload(this.httpClient(), this::createContext, this.uri, headers),
+            this.maxRouteConnections, this.progressReport, this.log
+        );
+    }
+
+    /**
+     * Fetches the resource as a single stream into the partial file, continuing
+     * the partial content if possible.
+     * @param partial Partial content of the output file.
+     * @param headers List of headers.
+     * @return Validators of the fetched content; empty if not modified.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    private Optional<Validators> fetch(final PartialDownload partial, final List<Header> headers)
+        throws IOException {
+        final long resumable = partial.resumableLength();
+        Optional<Validators> result;
+        try {
+            result = this.fetch(partial, headers, resumable);
+        } catch (final DownloadFailureException ex) {
+            if (resumable == 0L || ex.getHttpCode() != HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                throw ex;
+            }
+            partial.discard();
+            result = this.fetch(partial, headers, 0L);
+        }
+        return result;
+    }
+
+    /**
+     * Fetches the resource as a single stream into the partial file.
+     * @param partial Partial content of the output file.
+     * @param headers List of headers.
+     * @param offset Number of bytes of partial content to continue from.
+     * @return Validators of the fetched content; empty if not modified.
      * @throws IOException Thrown if I/O operations don't succeed.
      */
-    public void download(final File outputFile, final List<Header> headers) throws IOException {
-        try (CloseableHttpClient httpClient = this.createHttpClientBuilder().build()) {
-            final HttpCacheContext clientContext = HttpCacheContext.create();
-            clientContext.setCredentialsProvider(this.credentialsProvider);
-            if (this.preemptiveAuth) {
-                final AuthCache authCache = new BasicAuthCache();
-                authCache.put(
-                    new HttpHost(this.uri.getHost(), this.uri.getPort()), new BasicScheme());
-                clientContext.setAuthCache(authCache);
+    private Optional<Validators> fetch(
+        final PartialDownload partial, final List<Header> headers, final long offset
+    ) throws IOException {
+        final HttpGet httpGet = new HttpGet(this.uri);
+        headers.forEach(httpGet::setHeader);
+        if (offset > 0L) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug(String.format("Resuming download of %s from byte %d", this.uri, offset));
             }
-            final HttpGet httpGet = new HttpGet(this.uri);
-            headers.forEach(httpGet::setHeader);
-            httpClient.execute(
+            httpGet.setHeader(HttpHeaders.ACCEPT_ENCODING, SegmentedDownload.IDENTITY_ENCODING);
+            httpGet.setHeader(
+                HttpHeaders.RANGE, String.format("%s=%d-", SegmentedDownload.BYTES_UNIT, offset)
+            );
+            partial.validator().ifPresent(validator -> httpGet.setHeader(HttpHeaders.IF_RANGE, validator));
+        } else {
+            this.condition(httpGet);
+        }
+        return this.exchange(httpGet, head -> this.open(this.uri, partial, offset, head));
+    }
+
+    /**
+     * Adds the conditions of the request, so that the content is only sent
+     * if the cached copy has been modified.
+     * @param httpGet Request.
+     */
+    private void condition(final HttpGet httpGet) {
+        this.conditions.etag().ifPresent(etag -> httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, etag));
+        this.conditions.lastModified().ifPresent(
+            date -> httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, date)
+        );
+    }
+
+    /**
+     * Sends the request, over the multiplexed HTTP/2 transport if enabled, and copies
+     * the content of the response to the destination opened from its head.
+     * @param httpGet Request.
+     * @param opener Opens the destination of the content from the response head.
+     * @return Validators of the fetched content; empty if not modified.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    private Optional<Validators> exchange(final HttpGet httpGet, final Http2ResponseConsumer.Opener opener)
+        throws IOException {
+        final Optional<Validators> result;
+        if (this.multiplexed()) {
+            final Http2ResponseConsumer consumer = new Http2ResponseConsumer(opener);
+            final HttpResponse head = new Http2Transport(
+                new Http2Transport.Config(
+                    this.connectTimeout, this.socketTimeout, this.redirectsEnabled, this.insecure
+                ),
+                this.credentialsProvider,
+                this.preemptiveAuth
+            ).get(this.uri, httpGet.getAllHeaders(), consumer);
+            final Optional<ContentSink> sink = consumer.sink();
+            if (sink.isPresent()) {
+                sink.get().complete();
+            }
+            result = sink.map(ignored -> HttpFileRequester.validators(head));
+        } else {
+            result = this.httpClient().execute(
                 httpGet,
-                response -> this.handleResponse(this.uri, outputFile, response),
-                clientContext
+                response -> {
+                    final Optional<ContentSink> sink = opener.open(response);
+                    if (sink.isPresent()) {
+                        sink.get().copy(response.getEntity());
+                    }
+                    return sink.map(ignored -> HttpFileRequester.validators(response));
+                },
+                this.createContext()
             );
         }
+        return result;
     }
 
     /**
-     * Handles response from the server.
+     * Checks whether the resource is fetched over the multiplexed HTTP/2 transport.
+     * @return True if HTTP/2 was requested and the resource is not accessed through a proxy.
+     */
+    private boolean multiplexed() {
+        final boolean result = this.multiplexing && Http2Transport.supports(this.uri, this.proxy);
+        if (this.multiplexing && !result && this.log.isDebugEnabled()) {
+            this.log.debug(String.format("Fetching %s over HTTP/1.1 through a proxy", this.uri));
+        }
+        return result;
+    }
+
+    /**
+     * Creates the execution context of a request, carrying credentials
+     * and the preemptive authentication cache.
+     * @return New request context.
+     */
+    private HttpCacheContext createContext() {
+        final HttpCacheContext clientContext = HttpCacheContext.create();
+        clientContext.setCredentialsProvider(this.credentialsProvider);
+        if (this.preemptiveAuth) {
+            final AuthCache authCache = new BasicAuthCache();
+            authCache.put(
+                new HttpHost(this.uri.getHost(), this.uri.getPort()), new BasicScheme());
+            clientContext.setAuthCache(authCache);
+        }
+        return clientContext;
+    }
+
+    /**
+     * Opens the destination of the content of a response.
      * @param uri Request uri.
-     * @param outputFile Output file for the download request.
-     * @param response Response from the server.
-     * @return Original Response object.
+     * @param partial Partial content of the output file.
+     * @param offset Number of bytes of partial content requested to continue from.
+     * @param response Response from the server, only its status line and headers are used.
+     * @return Destination of the content; empty if not modified.
      * @throws IOException Thrown if I/O operations don't succeed
      */
-    private Object handleResponse(final URI uri, final File outputFile, final HttpResponse response)
+    private Optional<ContentSink> open(
+        final URI uri, final PartialDownload partial, final long offset, final HttpResponse response
+    ) throws IOException {
+        HttpFileRequester.checkStatus(response);
+        Optional<ContentSink> result = Optional.empty();
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_MODIFIED) {
+            final long start = this.start(uri, partial, offset, response);
+            final String length = HttpFileRequester.header(response, HttpHeaders.CONTENT_LENGTH);
+            final ContentSink sink = new ContentSink(partial, this.digester, this.progressReport);
+            sink.open(uri, start, length == null ? -1L : Long.parseLong(length));
+            result = Optional.of(sink);
+        }
+        return result;
+    }
+
+    /**
+     * Opens a stream as the destination of the content of a response.
+     * @param uri Request uri.
+     * @param out Destination of the content.
+     * @param response Response from the server, only its status line and headers are used.
+     * @return Destination of the content; empty if not modified.
+     * @throws IOException Thrown if I/O operations don't succeed
+     */
+    private Optional<ContentSink> open(final URI uri, final OutputStream out, final HttpResponse response)
         throws IOException {
+        HttpFileRequester.checkStatus(response);
+        Optional<ContentSink> result = Optional.empty();
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_MODIFIED) {
+            final String length = HttpFileRequester.header(response, HttpHeaders.CONTENT_LENGTH);
+            this.digester.reset();
+            final ContentSink sink = new ContentSink(out, this.digester, this.progressReport);
+            sink.open(uri, 0L, length == null ? -1L : Long.parseLong(length));
+            result = Optional.of(sink);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the validators of the content of a response.
+     * @param response Response from the server.
+     * @return Validators.
+     */
+    static Validators validators(final HttpResponse response) {
+        return new Validators(
+            HttpFileRequester.header(response, HttpHeaders.ETAG),
+            HttpFileRequester.header(response, HttpHeaders.LAST_MODIFIED)
+        );
+    }
+
+    /**
+     * Determines where the content of the response starts: either it continues the partial
+     * content, or the partial content is started over. The digests of the content are
+     * restarted accordingly.
+     * @param uri Request uri.
+     * @param partial Partial content of the output file.
+     * @param offset Number of bytes of partial content requested to continue from.
+     * @param response Response from the server.
+     * @return Position in the partial file the response content is written from.
+     * @throws IOException Thrown if I/O operations don't succeed
+     */
+    private long start(
+        final URI uri, final PartialDownload partial, final long offset, final HttpResponse response
+    ) throws IOException {
+        final long start;
+        if (offset > 0L && response.getStatusLine().getStatusCode() == HttpStatus.SC_PARTIAL_CONTENT) {
+            final Header range = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+            final String expected = String.format("%s %d-", SegmentedDownload.BYTES_UNIT, offset);
+            if (range == null || !range.getValue().startsWith(expected)) {
+                partial.discard();
+                throw new IOException(
+                    String.format("Unexpected content range of %s, restarting the download", uri)
+                );
+            }
+            partial.truncate(offset);
+            start = offset;
+        } else {
+            partial.start(HttpFileRequester.validator(response, response.getEntity()));
+            start = 0L;
+        }
+        this.digest(partial, start);
+        return start;
+    }
+
+    /**
+     * Restarts the digests of the content with the partial content being continued.
+     * @param partial Partial content of the output file.
+     * @param start Number of bytes of partial content continued.
+     * @throws IOException Thrown if I/O operations don't succeed
+     */
+    private void digest(final PartialDownload partial, final long start) throws IOException {
+        this.digester.reset();
+        if (start > 0L) {
+            this.digester.update(partial.file());
+        }
+    }
+
+    /**
+     * Gets the value of a response header.
+     * @param response Response from the server.
+     * @param name Header name.
+     * @return Header value; {@literal null} if absent.
+     */
+    private static String header(final HttpResponse response, final String name) {
+        return Optional.ofNullable(response.getFirstHeader(name)).map(Header::getValue).orElse(null);
+    }
+
+    /**
+     * Checks the status of the response is a success.
+     * @param response Response from the server.
+     * @throws DownloadFailureException If the status is an error or a redirect.
+     */
+    private static void checkStatus(final HttpResponse response) {
         final int statusCode = response.getStatusLine().getStatusCode();
         if (statusCode >= HttpCodes.BAD_REQUEST.getCode()) {
             throw new DownloadFailureException(
@@ -142,55 +444,43 @@ public final class HttpFileRequester {
                 )
             );
         }
-        final HttpEntity entity = response.getEntity();
-        if (entity != null) {
-            this.progressReport.initiate(uri, entity.getContentLength());
-            try (
-                InputStream in = entity.getContent(); OutputStream out =
-                    Files.newOutputStream(outputFile.toPath())
-            ) {
-                final byte[] tmp = new byte[BUFFER_SIZE];
-                int bytesRead;
-                while ((bytesRead = in.read(tmp)) != -1) {
-                    out.write(tmp, 0, bytesRead);
-                    this.progressReport.update(bytesRead);
-                }
-                out.flush();
-                this.progressReport.completed();
-            } catch (final IOException ex) {
-                this.progressReport.error(ex);
-                throw ex;
-            }
-        }
-        return entity;
     }
 
     /**
-     * Creates and configures an instance of HttpClientBuilder.
-     * @return A configured HttpClientBuilder instance
+     * Gets the validator a download of the response can be resumed with:
+     * its strong entity tag, or else its last modification date.
+     * @param response Response from the server.
+     * @param entity Response entity.
+     * @return Validator; {@literal null} if the download can't be resumed.
      */
-    private HttpClientBuilder createHttpClientBuilder() {
-        final HttpClientBuilder httpClientBuilder = HttpClients.custom()
-            .setDefaultCredentialsProvider(this.credentialsProvider)
-            .setRoutePlanner(this.routePlanner)
-            .setDefaultRequestConfig(RequestConfig.custom()
-                .setConnectTimeout(this.connectTimeout)
-                .setSocketTimeout(this.socketTimeout)
-                .setRedirectsEnabled(this.redirectsEnabled)
-                .build());
-        if (this.insecure) {
-            try {
-                httpClientBuilder.setSSLContext(
-                        new SSLContextBuilder()
-                            .loadTrustMaterial(null, TrustAllStrategy.INSTANCE)
-                            .build())
-                    .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
-            } catch (final NoSuchAlgorithmException | KeyStoreException
-                           | KeyManagementException cantHappen) {
-                throw new RuntimeException(cantHappen);
-            }
+    private static String validator(final HttpResponse response, final HttpEntity entity) {
+        final Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        final Header modified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        final String result;
+        if (entity instanceof DecompressingEntity) {
+            // byte ranges apply to the encoded content, not to the decoded one written to disk
+            result = null;
+        } else if (etag != null && !etag.getValue().startsWith(WEAK_ETAG_PREFIX)) {
+            result = etag.getValue();
+        } else if (modified != null) {
+            result = modified.getValue();
+        } else {
+            result = null;
         }
-        return httpClientBuilder;
+        return result;
+    }
+
+    /**
+     * Gets the client matching the configuration of this requester.
+     * @return HTTP client, must not be closed.
+     */
+    private CloseableHttpClient httpClient() {
+        return this.clients.apply(
+            new HttpClientPool.Key(
+                this.connectTimeout, this.socketTimeout, this.redirectsEnabled, this.insecure,
+                this.proxy, this.maxConnections, this.maxRouteConnections
+            )
+        );
     }
 
     /**
@@ -217,6 +507,14 @@ public final class HttpFileRequester {
         private SecDispatcher secDispatcher;
         private boolean preemptiveAuth;
         private boolean insecure;
+        private int maxConnections = 20;
+        private int maxRouteConnections = 10;
+        private int segments = 1;
+        private long segmentSize = 10L * 1024L * 1024L;
+        private Digester digester;
+        private Validators conditions = Validators.NONE;
+        private boolean multiplexing;
+        private Function<HttpClientPool.Key, CloseableHttpClient> clients = HttpClientPool::client;
 
         public HttpFileRequester.Builder withUri(final URI uri) {
             this.uri = uri;
@@ -313,6 +611,73 @@ public final class HttpFileRequester {
             return this;
         }
 
+        public HttpFileRequester.Builder withMaxConnections(final int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public HttpFileRequester.Builder withMaxRouteConnections(final int maxRouteConnections) {
+            this.maxRouteConnections = maxRouteConnections;
+            return this;
+        }
+
+        public HttpFileRequester.Builder withSegments(final int segments) {
+            this.segments = segments;
+            return this;
+        }
+
+        public HttpFileRequester.Builder withSegmentSize(final long segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Sets the digester fed with the content as it is streamed to the output file,
+         * so that its checksums don't require reading the file again.
+         * @param digester Digester of the content.
+         * @return This builder.
+         */
+        public HttpFileRequester.Builder withDigester(final Digester digester) {
+            this.digester = digester;
+            return this;
+        }
+
+        /**
+         * Sets the validators of a cached copy of the resource, so that it is
+         * requested only if it has been modified since.
+         * @param conditions Validators of the cached copy.
+         * @return This builder.
+         */
+        public HttpFileRequester.Builder withConditions(final Validators conditions) {
+            this.conditions = conditions;
+            return this;
+        }
+
+        /**
+         * Sets whether the resource is fetched over HTTP/2, multiplexed with the other
+         * downloads from the same origin over a single connection. Resources accessed
+         * through a proxy are still fetched over HTTP/1.1.
+         * @param enabled Whether HTTP/2 is used.
+         * @return This builder.
+         */
+        public HttpFileRequester.Builder withMultiplexing(final boolean enabled) {
+            this.multiplexing = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the clients of the requests by their connection configuration, the
+         * shared pooled clients by default. The clients are not closed by the requester.
+         * @param clients Clients by connection configuration.
+         * @return This builder.
+         */
+        public HttpFileRequester.Builder withClients(
+            final Function<HttpClientPool.Key, CloseableHttpClient> clients
+        ) {
+            this.clients = clients;
+            return this;
+        }
+
         /**
          * Builds an instance of {@code HttpFileRequester} using the configured properties.
          * @return A newly constructed {@code HttpFileRequester}
@@ -329,6 +694,15 @@ public final class HttpFileRequester {
             instance.redirectsEnabled = this.redirectsEnabled;
             instance.preemptiveAuth = this.preemptiveAuth;
             instance.insecure = this.insecure;
+            instance.maxConnections = this.maxConnections;
+            instance.maxRouteConnections = this.maxRouteConnections;
+            instance.segments = this.segments;
+            instance.segmentSize = Math.max(1L, this.segmentSize);
+            instance.digester = Optional.ofNullable(this.digester).orElseGet(Digester::none);
+            instance.conditions = this.conditions;
+            instance.multiplexing = this.multiplexing;
+            instance.clients = this.clients;
+            instance.log = this.log;
             instance.credentialsProvider = new BasicCredentialsProvider();
             if (StringUtils.isNotBlank(this.serverId)) {
                 Objects.requireNonNull(this.mavenSession);
@@ -368,7 +742,7 @@ public final class HttpFileRequester {
             }
             if (StringUtils.isNotBlank(this.proxyHost)) {
                 final HttpHost host = new HttpHost(this.proxyHost, this.proxyPort);
-                instance.routePlanner = new DefaultProxyRoutePlanner(host);
+                instance.proxy = host;
                 final boolean isProxyAuth = StringUtils.isNotBlank(this.proxyUserName)
                     && StringUtils.isNotBlank(this.proxyPassword);
                 if (isProxyAuth) {
@@ -389,8 +763,6 @@ public final class HttpFileRequester {
                         new AuthScope(host.getHostName(), host.getPort()), credentials
                     );
                 }
-            } else {
-                instance.routePlanner = new SystemDefaultRoutePlanner(ProxySelector.getDefault());
             }
             return instance;
         }
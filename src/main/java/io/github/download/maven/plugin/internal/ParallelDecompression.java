@@ -0,0 +1,793 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+/**
+ * Decompressed content of a compressed tar archive, decompressed ahead of its reader
+ * by threads of their own.
+ * <p>Archives made of independent members, such as BGZF gzip members, zstd frames or
+ * xz blocks, have their members decompressed in parallel, and delivered in order.
+ * Other archives are decompressed by a single thread, running ahead of the reader.</p>
+ */
+final class ParallelDecompression extends InputStream {
+
+    /**
+     * Number of bytes decompressed at a time from an archive without independent members.
+     */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Number of compressed bytes of consecutive members decompressed by the same task.
+     */
+    private static final long GROUP_SIZE = 1024L * 1024L;
+
+    /**
+     * Maximum number of decompressed bytes held for the reader.
+     */
+    private static final long MAX_BUFFERED = 256L * 1024L * 1024L;
+
+    /**
+     * Magic number of a zstd frame.
+     */
+    private static final int ZSTD_MAGIC = 0xFD2FB528;
+
+    /**
+     * Magic number of a skippable zstd frame, without its last four bits.
+     */
+    private static final int ZSTD_SKIPPABLE_MAGIC = 0x184D2A50;
+
+    /**
+     * Mask of the magic number of a skippable zstd frame.
+     */
+    private static final int ZSTD_SKIPPABLE_MASK = 0xFFFFFFF0;
+
+    /**
+     * Length of the header of a skippable zstd frame.
+     */
+    private static final int ZSTD_SKIPPABLE_HEADER = 8;
+
+    /**
+     * Frame header descriptor flag of a single segment zstd frame, without window descriptor.
+     */
+    private static final int ZSTD_SINGLE_SEGMENT = 0x20;
+
+    /**
+     * Frame header descriptor flag of a zstd frame ending with a checksum.
+     */
+    private static final int ZSTD_CHECKSUM = 0x04;
+
+    /**
+     * Frame header descriptor bits of the length of the dictionary id of a zstd frame.
+     */
+    private static final int ZSTD_DICTIONARY_ID = 0x03;
+
+    /**
+     * Lengths of the dictionary id of a zstd frame, by frame header descriptor bits.
+     */
+    private static final int[] ZSTD_DICTIONARY_ID_LENGTHS = {0, 1, 2, 4};
+
+    /**
+     * Offset added to the content size of a zstd frame recorded on two bytes.
+     */
+    private static final long ZSTD_CONTENT_SIZE_OFFSET = 256L;
+
+    /**
+     * Shift of the frame header descriptor bits of the length of the content size of a zstd frame.
+     */
+    private static final int ZSTD_CONTENT_SIZE_SHIFT = 6;
+
+    /**
+     * Lengths of the content size of a zstd frame, by frame header descriptor bits.
+     */
+    private static final int[] ZSTD_CONTENT_SIZE_LENGTHS = {0, 2, 4, 8};
+
+    /**
+     * Length of the header of a zstd block.
+     */
+    private static final int ZSTD_BLOCK_HEADER = 3;
+
+    /**
+     * Bits of the type of a zstd block, once shifted.
+     */
+    private static final int ZSTD_BLOCK_TYPE = 0x03;
+
+    /**
+     * Type of a zstd block repeating a single byte.
+     */
+    private static final int ZSTD_RLE_BLOCK = 1;
+
+    /**
+     * Reserved type of a zstd block.
+     */
+    private static final int ZSTD_RESERVED_BLOCK = 3;
+
+    /**
+     * Shift of the size of a zstd block in its header.
+     */
+    private static final int ZSTD_BLOCK_SIZE_SHIFT = 3;
+
+    /**
+     * Magic number of a gzip member, as read in little-endian order.
+     */
+    private static final int GZIP_MAGIC = 0x8B1F;
+
+    /**
+     * Position of the flags of a gzip member header.
+     */
+    private static final int GZIP_FLAGS = 3;
+
+    /**
+     * Flag of a gzip member header having extra fields.
+     */
+    private static final int GZIP_FEXTRA = 0x04;
+
+    /**
+     * Length of the header of a BGZF member, up to its size.
+     */
+    private static final int BGZF_HEADER_LENGTH = 18;
+
+    /**
+     * Position of the id of the BGZF extra subfield.
+     */
+    private static final int BGZF_SUBFIELD_ID = 12;
+
+    /**
+     * Id of the BGZF extra subfield, "BC" as read in little-endian order.
+     */
+    private static final short BGZF_ID = 0x4342;
+
+    /**
+     * Position of the length of the BGZF extra subfield.
+     */
+    private static final int BGZF_SUBFIELD_LENGTH = 14;
+
+    /**
+     * Position of the size of a BGZF member, minus one.
+     */
+    private static final int BGZF_BLOCK_SIZE = 16;
+
+    /**
+     * Maximum size of the decompressed content of a BGZF member.
+     */
+    private static final long BGZF_MAX_CONTENT = 64L * 1024L;
+
+    /**
+     * Mask of an unsigned byte.
+     */
+    private static final int UNSIGNED_BYTE = 0xFF;
+
+    /**
+     * Mask of an unsigned 16-bit field.
+     */
+    private static final int UNSIGNED_SHORT = 0xFFFF;
+
+    /**
+     * Mask of an unsigned 32-bit field.
+     */
+    private static final long UNSIGNED_INT = 0xFFFFFFFFL;
+
+    /**
+     * Threads decompressing the archive.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Tasks decompressing the successive parts of the archive.
+     */
+    private final Iterator<Callable<byte[]>> tasks;
+
+    /**
+     * Maximum number of parts decompressed ahead of the reader.
+     */
+    private final int window;
+
+    /**
+     * Resource released once the archive is read.
+     */
+    private final Closeable resource;
+
+    /**
+     * Parts being decompressed, in order.
+     */
+    private final Deque<Future<byte[]>> pending;
+
+    /**
+     * Part being read, {@literal null} once the end is reached.
+     */
+    private byte[] part;
+
+    /**
+     * Position in the part being read.
+     */
+    private int position;
+
+    /**
+     * Constructor.
+     * @param threads Number of threads decompressing the archive.
+     * @param tasks Tasks decompressing the successive parts of the archive, each giving
+     *  the decompressed bytes of its part, or {@literal null} past the end of the archive.
+     * @param window Maximum number of parts decompressed ahead of the reader.
+     * @param resource Resource released once the archive is read.
+     */
+    private ParallelDecompression(
+        final int threads, final Iterator<Callable<byte[]>> tasks, final int window, final Closeable resource
+    ) {
+        super();
+        this.pool = Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+                final Thread thread = new Thread(runnable, "decompress");
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        this.tasks = tasks;
+        this.window = window;
+        this.resource = resource;
+        this.pending = new ArrayDeque<>(window);
+        this.part = new byte[0];
+    }
+
+    /**
+     * Opens a compressed archive for reading its decompressed content.
+     * @param file The compressed archive.
+     * @param compression Compression of the archive.
+     * @param threads Maximum number of threads decompressing members in parallel.
+     * @return Decompressed content.
+     * @throws IOException If the archive could not be opened.
+     */
+    static InputStream open(final File file, final TarStreamUnArchiver.Compression compression, final int threads)
+        throws IOException {
+        InputStream result = null;
+        if (threads > 1 && compression == TarStreamUnArchiver.Compression.XZ) {
+            result = ParallelDecompression.blocks(file, threads);
+        }
+        if (result == null) {
+            final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                if (threads > 1) {
+                    result = ParallelDecompression.members(channel, compression, threads);
+                }
+                if (result == null) {
+                    result = ParallelDecompression.sequential(channel, compression);
+                }
+            } catch (final IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] one = new byte[1];
+        final int read = this.read(one, 0, 1);
+        final int result;
+        if (read < 0) {
+            result = -1;
+        } else {
+            result = one[0] & UNSIGNED_BYTE;
+        }
+        return result;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int count) throws IOException {
+        while (this.part != null && this.position == this.part.length) {
+            this.part = this.next();
+            this.position = 0;
+        }
+        final int result;
+        if (this.part == null) {
+            result = -1;
+        } else {
+            result = Math.min(count, this.part.length - this.position);
+            System.arraycopy(this.part, this.position, bytes, offset, result);
+            this.position += result;
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.pool.shutdownNow();
+        this.resource.close();
+    }
+
+    /**
+     * Waits for the next part of the archive, keeping the following ones decompressing.
+     * @return Decompressed bytes of the part, {@literal null} past the end of the archive.
+     * @throws IOException If the part could not be decompressed.
+     */
+    private byte[] next() throws IOException {
+        while (this.pending.size() < this.window && this.tasks.hasNext()) {
+            this.pending.add(this.pool.submit(this.tasks.next()));
+        }
+        byte[] result = null;
+        if (!this.pending.isEmpty()) {
+            try {
+                result = this.pending.poll().get();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing", ex);
+            } catch (final ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                throw new IOException(ex.getCause().getMessage(), ex.getCause());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decompresses an archive by a single thread, running ahead of the reader.
+     * @param channel The compressed archive.
+     * @param compression Compression of the archive.
+     * @return Decompressed content.
+     * @throws IOException If the archive could not be opened.
+     */
+    private static InputStream sequential(
+        final FileChannel channel, final TarStreamUnArchiver.Compression compression
+    ) throws IOException {
+        final InputStream decompressed = compression.decompress(
+            new BufferedInputStream(new ParallelDecompression.Slice(channel, 0L, channel.size()), CHUNK_SIZE)
+        );
+        final Callable<byte[]> chunk = () -> {
+            final byte[] bytes = new byte[CHUNK_SIZE];
+            int length = 0;
+            int read = 0;
+            while (read >= 0 && length < bytes.length) {
+                read = decompressed.read(bytes, length, bytes.length - length);
+                length += Math.max(read, 0);
+            }
+            final byte[] result;
+            if (length == 0) {
+                result = null;
+            } else {
+                result = Arrays.copyOf(bytes, length);
+            }
+            return result;
+        };
+        return new ParallelDecompression(
+            1, Collections.nCopies(Integer.MAX_VALUE, chunk).iterator(), 2,
+            () -> {
+                decompressed.close();
+                channel.close();
+            }
+        );
+    }
+
+    /**
+     * Decompresses the members of a gzip or zstd archive in parallel, in groups of consecutive members.
+     * As each group is held decompressed until read, the decompressed size of the members must be
+     * known, and the groups decompressed ahead of the reader must fit in {@link #MAX_BUFFERED} bytes,
+     * as for xz blocks.
+     * @param channel The compressed archive.
+     * @param compression Compression of the archive.
+     * @param threads Number of threads decompressing the members.
+     * @return Decompressed content; {@literal null} if the archive does not have several
+     *  members that can be found without decompressing it, or if they are too big to be held
+     *  while decompressed.
+     * @throws IOException If the archive could not be read.
+     */
+    private static InputStream members(
+        final FileChannel channel, final TarStreamUnArchiver.Compression compression, final int threads
+    ) throws IOException {
+        final List<Long> sizes = new ArrayList<>(0);
+        final List<Long> starts = ParallelDecompression.positions(channel, compression, sizes);
+        final int window = 2 * threads;
+        final List<Callable<byte[]>> groups = new ArrayList<>(0);
+        boolean bounded = true;
+        long first = 0L;
+        long content = 0L;
+        for (int idx = 1; bounded && idx <= starts.size(); ++idx) {
+            final long end = idx < starts.size() ? starts.get(idx) : channel.size();
+            content += sizes.get(idx - 1);
+            bounded = sizes.get(idx - 1) >= 0L && content <= MAX_BUFFERED / window;
+            if (end - first >= GROUP_SIZE || idx == starts.size()) {
+                groups.add(ParallelDecompression.group(channel, compression, first, end, content));
+                first = end;
+                content = 0L;
+            }
+        }
+        InputStream result = null;
+        if (bounded && groups.size() > 1) {
+            result = new ParallelDecompression(threads, groups.iterator(), window, channel);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the members of a gzip or zstd archive.
+     * @param channel The compressed archive.
+     * @param compression Compression of the archive.
+     * @param sizes Receives the maximum decompressed sizes of the members, in order;
+     *  negative for a member that does not record it.
+     * @return Positions of the members; empty if they cannot be found without decompressing the archive.
+     * @throws IOException If the archive could not be read.
+     */
+    private static List<Long> positions(
+        final FileChannel channel, final TarStreamUnArchiver.Compression compression, final List<Long> sizes
+    ) throws IOException {
+        final List<Long> starts;
+        if (compression == TarStreamUnArchiver.Compression.GZIP) {
+            starts = ParallelDecompression.gzipMembers(channel);
+            sizes.addAll(Collections.nCopies(starts.size(), BGZF_MAX_CONTENT));
+        } else if (compression == TarStreamUnArchiver.Compression.ZSTD) {
+            starts = ParallelDecompression.zstdFrames(channel, sizes);
+        } else {
+            starts = Collections.emptyList();
+        }
+        return starts;
+    }
+
+    /**
+     * Task decompressing a group of consecutive members of a gzip or zstd archive.
+     * @param channel The compressed archive.
+     * @param compression Compression of the archive.
+     * @param start Position of the first member.
+     * @param end Position following the last member.
+     * @param limit Maximum size of the decompressed members.
+     * @return Task giving the decompressed bytes of the members.
+     */
+    private static Callable<byte[]> group(
+        final FileChannel channel, final TarStreamUnArchiver.Compression compression,
+        final long start, final long end, final long limit
+    ) {
+        return () -> ParallelDecompression.readAll(
+            compression.decompress(
+                new BufferedInputStream(new ParallelDecompression.Slice(channel, start, end - start))
+            ),
+            limit
+        );
+    }
+
+    /**
+     * Decompresses the blocks of an xz archive in parallel.
+     * @param file The compressed archive.
+     * @param threads Number of threads decompressing the blocks.
+     * @return Decompressed content; {@literal null} if the archive has a single block,
+     *  or if its blocks are too big to be held while decompressed.
+     * @throws IOException If the archive could not be read.
+     */
+    private static InputStream blocks(final File file, final int threads) throws IOException {
+        final int count;
+        final long largest;
+        try (SeekableXZInputStream index = new SeekableXZInputStream(new SeekableFileInputStream(file))) {
+            count = index.getBlockCount();
+            largest = index.getLargestBlockSize();
+        }
+        final int window = (int) Math.min(threads, MAX_BUFFERED / Math.max(1L, largest));
+        InputStream result = null;
+        if (count > 1 && window > 1) {
+            final List<Callable<byte[]>> blocks = IntStream.range(0, count).<Callable<byte[]>>mapToObj(
+                block -> () -> {
+                    try (SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(file))) {
+                        xz.seekToBlock(block);
+                        final byte[] bytes = new byte[(int) xz.getBlockSize(block)];
+                        new DataInputStream(xz).readFully(bytes);
+                        return bytes;
+                    }
+                }
+            ).collect(Collectors.toList());
+            result = new ParallelDecompression(threads, blocks.iterator(), window, () -> { });
+        }
+        return result;
+    }
+
+    /**
+     * Finds the members of a gzip archive made of BGZF members, which record their own size.
+     * @param channel The compressed archive.
+     * @return Positions of the members; empty if a member does not record its size.
+     * @throws IOException If the archive could not be read.
+     */
+    private static List<Long> gzipMembers(final FileChannel channel) throws IOException {
+        final List<Long> result = new ArrayList<>(0);
+        final ByteBuffer header = ByteBuffer.allocate(BGZF_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        long position = 0L;
+        boolean bgzf = true;
+        while (bgzf && position < channel.size()) {
+            header.clear();
+            bgzf = ParallelDecompression.readFully(channel, header, position)
+                && ParallelDecompression.isBgzf(header);
+            if (bgzf) {
+                result.add(position);
+                position += (header.getShort(BGZF_BLOCK_SIZE) & UNSIGNED_SHORT) + 1L;
+            }
+        }
+        if (!bgzf) {
+            result.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Tells whether a gzip member header is the one of a BGZF member, having
+     * its size recorded in a BC extra subfield.
+     * @param header Header of the gzip member.
+     * @return True if the member records its size.
+     */
+    private static boolean isBgzf(final ByteBuffer header) {
+        final boolean extra = (header.getShort(0) & UNSIGNED_SHORT) == GZIP_MAGIC
+            && (header.get(GZIP_FLAGS) & GZIP_FEXTRA) != 0;
+        return extra && header.getShort(BGZF_SUBFIELD_ID) == BGZF_ID
+            && header.getShort(BGZF_SUBFIELD_LENGTH) == Short.BYTES;
+    }
+
+    /**
+     * Finds the frames of a zstd archive by walking their headers and block headers.
+     * @param channel The compressed archive.
+     * @param sizes Receives the content sizes recorded in the headers of the frames, in order;
+     *  negative for a frame that does not record it.
+     * @return Positions of the frames; empty if the archive could not be walked.
+     * @throws IOException If the archive could not be read.
+     */
+    private static List<Long> zstdFrames(final FileChannel channel, final List<Long> sizes) throws IOException {
+        final List<Long> result = new ArrayList<>(0);
+        final ByteBuffer header = ByteBuffer.allocate(ZSTD_SKIPPABLE_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        long position = 0L;
+        while (position >= 0L && position < channel.size()) {
+            header.clear();
+            if (!ParallelDecompression.readFully(channel, header, position)) {
+                position = -1L;
+            } else if (header.getInt(0) == ZSTD_MAGIC) {
+                final int descriptor = header.get(Integer.BYTES) & UNSIGNED_BYTE;
+                result.add(position);
+                sizes.add(ParallelDecompression.zstdContentSize(channel, position, descriptor));
+                position = ParallelDecompression.zstdFrameEnd(channel, position, descriptor);
+            } else if ((header.getInt(0) & ZSTD_SKIPPABLE_MASK) == ZSTD_SKIPPABLE_MAGIC) {
+                position += ZSTD_SKIPPABLE_HEADER + (header.getInt(Integer.BYTES) & UNSIGNED_INT);
+            } else {
+                position = -1L;
+            }
+        }
+        if (position < 0L) {
+            result.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Finds the end of a zstd frame by walking its block headers.
+     * @param channel The compressed archive.
+     * @param start Position of the frame.
+     * @param descriptor Frame header descriptor.
+     * @return Position following the frame; negative if the frame is not valid.
+     * @throws IOException If the archive could not be read.
+     */
+    private static long zstdFrameEnd(final FileChannel channel, final long start, final int descriptor)
+        throws IOException {
+        long position = ParallelDecompression.zstdContentSizeField(start, descriptor)
+            + ParallelDecompression.zstdContentSizeLength(descriptor);
+        final ByteBuffer block = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        boolean last = false;
+        while (!last && position >= 0L) {
+            block.clear();
+            block.limit(ZSTD_BLOCK_HEADER);
+            if (ParallelDecompression.readFully(channel, block, position)) {
+                final int value = block.getShort(0) & UNSIGNED_SHORT
+                    | (block.get(Short.BYTES) & UNSIGNED_BYTE) << Short.SIZE;
+                last = (value & 1) != 0;
+                final int type = value >>> 1 & ZSTD_BLOCK_TYPE;
+                position += ZSTD_BLOCK_HEADER;
+                if (type == ZSTD_RLE_BLOCK) {
+                    position += 1L;
+                } else if (type == ZSTD_RESERVED_BLOCK) {
+                    position = -1L;
+                } else {
+                    position += value >>> ZSTD_BLOCK_SIZE_SHIFT;
+                }
+            } else {
+                position = -1L;
+            }
+        }
+        if (position >= 0L && (descriptor & ZSTD_CHECKSUM) != 0) {
+            position += Integer.BYTES;
+        }
+        return position;
+    }
+
+    /**
+     * Reads the content size recorded in the header of a zstd frame.
+     * @param channel The compressed archive.
+     * @param start Position of the frame.
+     * @param descriptor Frame header descriptor.
+     * @return Content size; negative if the frame does not record it, or if it is truncated.
+     * @throws IOException If the archive could not be read.
+     */
+    private static long zstdContentSize(final FileChannel channel, final long start, final int descriptor)
+        throws IOException {
+        final int length = ParallelDecompression.zstdContentSizeLength(descriptor);
+        final ByteBuffer field = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        final Buffer window = field;
+        window.limit(length);
+        final long position = ParallelDecompression.zstdContentSizeField(start, descriptor);
+        long size = -1L;
+        if (length > 0 && ParallelDecompression.readFully(channel, field, position)) {
+            window.limit(Long.BYTES);
+            size = field.getLong(0);
+            if (length == Short.BYTES) {
+                size += ZSTD_CONTENT_SIZE_OFFSET;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the position of the content size in the header of a zstd frame.
+     * @param start Position of the frame.
+     * @param descriptor Frame header descriptor.
+     * @return Position of the content size.
+     */
+    private static long zstdContentSizeField(final long start, final int descriptor) {
+        final long windowLength;
+        if ((descriptor & ZSTD_SINGLE_SEGMENT) == 0) {
+            windowLength = 1L;
+        } else {
+            windowLength = 0L;
+        }
+        return start + Integer.BYTES + 1L + windowLength + ZSTD_DICTIONARY_ID_LENGTHS[descriptor & ZSTD_DICTIONARY_ID];
+    }
+
+    /**
+     * Gets the length of the content size in the header of a zstd frame.
+     * @param descriptor Frame header descriptor.
+     * @return Length in bytes; {@literal 0} if the frame does not record its content size.
+     */
+    private static int zstdContentSizeLength(final int descriptor) {
+        int length = ZSTD_CONTENT_SIZE_LENGTHS[descriptor >>> ZSTD_CONTENT_SIZE_SHIFT];
+        if (length == 0 && (descriptor & ZSTD_SINGLE_SEGMENT) != 0) {
+            length = 1;
+        }
+        return length;
+    }
+
+    /**
+     * Reads bytes of the archive at a given position.
+     * @param channel The compressed archive.
+     * @param buffer Receives the bytes, up to its limit.
+     * @param position Position of the bytes.
+     * @return True if the buffer was filled; false if the archive ended before.
+     * @throws IOException If the archive could not be read.
+     */
+    private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+        throws IOException {
+        int read = 0;
+        while (read >= 0 && buffer.hasRemaining()) {
+            read = channel.read(buffer, position + buffer.position());
+        }
+        return !buffer.hasRemaining();
+    }
+
+    /**
+     * Reads a decompressed stream to its end.
+     * @param decompressed The decompressed stream, closed once read.
+     * @param limit Maximum number of bytes to read, recorded by the compressed members.
+     * @return Its bytes.
+     * @throws IOException If the stream could not be read, or if it holds more bytes than the limit.
+     */
+    private static byte[] readAll(final InputStream decompressed, final long limit) throws IOException {
+        try (InputStream in = decompressed) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(limit, CHUNK_SIZE));
+            final byte[] bytes = new byte[CHUNK_SIZE];
+            int read = in.read(bytes);
+            while (read >= 0) {
+                out.write(bytes, 0, read);
+                if (out.size() > limit) {
+                    throw new IOException("Members of the archive are larger than recorded");
+                }
+                read = in.read(bytes);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Range of the compressed archive, read at its own position, so that ranges can be
+     * read by several threads at the same time.
+     */
+    private static final class Slice extends InputStream {
+
+        /**
+         * The compressed archive.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Position of the next byte to read.
+         */
+        private long position;
+
+        /**
+         * Number of bytes left to read.
+         */
+        private long remaining;
+
+        /**
+         * Constructor.
+         * @param channel The compressed archive.
+         * @param position Position of the range.
+         * @param length Length of the range.
+         */
+        Slice(final FileChannel channel, final long position, final long length) {
+            super();
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            final int read = this.read(one, 0, 1);
+            final int result;
+            if (read < 0) {
+                result = -1;
+            } else {
+                result = one[0] & UNSIGNED_BYTE;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int count) throws IOException {
+            int result = -1;
+            if (this.remaining > 0L) {
+                result = this.channel.read(
+                    ByteBuffer.wrap(bytes, offset, (int) Math.min(count, this.remaining)), this.position
+                );
+                if (result < 0) {
+                    throw new EOFException("Unexpected end of the archive");
+                }
+                this.position += result;
+                this.remaining -= result;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.codehaus.plexus.archiver.AbstractUnArchiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResource;
+
+/**
+ * UnArchiver of zip archives extracting their entries in parallel, as each entry
+ * is compressed on its own and read from its own position of the archive.
+ * <p>Entries are selected and extracted as by the plexus zip UnArchiver, honoring
+ * file selectors, file mappers and file modes. Directories are created first,
+ * then files are extracted by a pool of threads, and symbolic links are made last.
+ * The throughput of the extraction is logged once done.</p>
+ */
+final class ParallelZipUnArchiver extends AbstractUnArchiver {
+
+    /**
+     * Number of bytes in a megabyte.
+     */
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    /**
+     * Number of threads extracting the files.
+     */
+    private final int threads;
+
+    /**
+     * Constructor.
+     * @param threads Number of threads extracting the files.
+     */
+    ParallelZipUnArchiver(final int threads) {
+        super();
+        this.threads = threads;
+    }
+
+    @Override
+    protected void execute() {
+        final File source = this.getSourceFile();
+        try (ZipFile zip = ParallelZipUnArchiver.open(source)) {
+            this.unpack(zip, "", this.getDestDirectory());
+        } catch (final IOException ex) {
+            throw new ArchiverException(String.format("Error while expanding %s", source.getAbsolutePath()), ex);
+        }
+    }
+
+    /**
+     * Extracts the entry of the given path, looked up in the central directory, or,
+     * if there is no file at that path, the entries whose path starts with it, as the
+     * plexus zip UnArchivers do.
+     * @param path Path of the entries to extract, relative to the root of the archive.
+     * @param output Directory to extract the entries to.
+     */
+    @Override
+    protected void execute(final String path, final File output) {
+        final File source = this.getSourceFile();
+        try (ZipFile zip = ParallelZipUnArchiver.open(source)) {
+            final ZipArchiveEntry entry = zip.getEntry(path);
+            if (entry == null || entry.isDirectory()) {
+                this.unpack(zip, path, output);
+            } else if (this.isSelected(entry.getName(), new ParallelZipUnArchiver.EntryResource(zip, entry))) {
+                this.extract(zip, entry, output);
+            }
+        } catch (final IOException ex) {
+            throw new ArchiverException(String.format("Error while expanding %s", source.getAbsolutePath()), ex);
+        }
+    }
+
+    /**
+     * Opens an archive, reading the names of its entries as UTF-8, or from their unicode extra fields.
+     * @param source The archive.
+     * @return The opened archive.
+     * @throws IOException If the central directory of the archive could not be read.
+     */
+    private static ZipFile open(final File source) throws IOException {
+        return ZipFile.builder().setFile(source).setCharset(StandardCharsets.UTF_8)
+            .setUseUnicodeExtraFields(true).get();
+    }
+
+    /**
+     * Unpacks the entries of the archive whose path starts with a prefix.
+     * @param zip The archive.
+     * @param prefix Prefix of the paths of the entries to unpack; empty for all entries.
+     * @param output Directory to unpack the entries to.
+     * @throws IOException If an entry could not be extracted.
+     */
+    private void unpack(final ZipFile zip, final String prefix, final File output) throws IOException {
+        final long start = System.nanoTime();
+        final AtomicLong bytes = new AtomicLong();
+        final List<ZipArchiveEntry> directories = new ArrayList<>(0);
+        final List<ZipArchiveEntry> files = new ArrayList<>(0);
+        final List<ZipArchiveEntry> links = new ArrayList<>(0);
+        for (final ZipArchiveEntry entry : Collections.list(zip.getEntriesInPhysicalOrder())) {
+            if (!entry.getName().startsWith(prefix)
+                || !this.isSelected(entry.getName(), new ParallelZipUnArchiver.EntryResource(zip, entry))) {
+                this.getLogger().debug("Skipping {}", entry.getName());
+            } else if (entry.isUnixSymlink()) {
+                links.add(entry);
+            } else if (entry.isDirectory()) {
+                directories.add(entry);
+            } else {
+                files.add(entry);
+            }
+        }
+        this.extractEach(zip, directories, output);
+        this.extractAll(zip, files, output, bytes);
+        this.extractEach(zip, links, output);
+        this.report(directories.size() + files.size() + links.size(), bytes.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Reports the throughput of the extraction.
+     * @param count Number of entries extracted.
+     * @param bytes Number of bytes extracted.
+     * @param nanos Duration of the extraction in nanoseconds.
+     */
+    private void report(final int count, final long bytes, final long nanos) {
+        final long millis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(nanos));
+        this.getLogger().info(
+            String.format(
+                "Unpacked %d entries (%d bytes) of %s in %d ms (%.1f MB/s) on %d threads",
+                count, bytes, this.getSourceFile().getName(), millis,
+                bytes / MEGABYTE * TimeUnit.SECONDS.toMillis(1L) / millis, this.threads
+            )
+        );
+    }
+
+    /**
+     * Extracts entries of the archive one after the other.
+     * @param zip The archive.
+     * @param entries Entries to extract.
+     * @param output Directory to extract the entries to.
+     * @throws IOException If an entry could not be extracted.
+     */
+    private void extractEach(final ZipFile zip, final List<ZipArchiveEntry> entries, final File output)
+        throws IOException {
+        for (final ZipArchiveEntry entry : entries) {
+            this.extract(zip, entry, output);
+        }
+    }
+
+    /**
+     * Extracts files of the archive with the pool of threads.
+     * @param zip The archive.
+     * @param files Entries of the files to extract.
+     * @param output Directory to extract the files to.
+     * @param bytes Receives the number of bytes extracted.
+     * @throws IOException If a file could not be extracted.
+     */
+    private void extractAll(
+        final ZipFile zip, final List<ZipArchiveEntry> files, final File output, final AtomicLong bytes
+    ) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(this.threads, files.size()))
+        );
+        try {
+            final List<Future<Void>> extractions = new ArrayList<>(files.size());
+            for (final ZipArchiveEntry entry : files) {
+                extractions.add(
+                    executor.submit(
+                        () -> {
+                            this.extract(zip, entry, output);
+                            bytes.addAndGet(entry.getSize());
+                            return null;
+                        }
+                    )
+                );
+            }
+            for (final Future<Void> extraction : extractions) {
+                ParallelZipUnArchiver.await(extraction);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts an entry of the archive.
+     * @param zip The archive.
+     * @param entry Entry to extract.
+     * @param output Directory to extract the entry to.
+     * @throws IOException If the entry could not be extracted.
+     */
+    private void extract(final ZipFile zip, final ZipArchiveEntry entry, final File output) throws IOException {
+        try (InputStream in = zip.getInputStream(entry)) {
+            this.extractFile(
+                this.getSourceFile(), output, in, entry.getName(), new Date(entry.getTime()),
+                entry.isDirectory(), entry.getUnixMode() == 0 ? null : entry.getUnixMode(),
+                entry.isUnixSymlink() ? zip.getUnixSymlink(entry) : null,
+                this.getFileMappers()
+            );
+        }
+    }
+
+    /**
+     * Waits for the extraction of a file.
+     * @param extraction Extraction of the file.
+     * @throws IOException If the file could not be extracted.
+     */
+    static void await(final Future<Void> extraction) throws IOException {
+        try {
+            extraction.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while unpacking", ex);
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException(ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+
+    /**
+     * Entry of the archive, as presented to the file selectors.
+     */
+    private static final class EntryResource extends AbstractPlexusIoResource {
+
+        /**
+         * The archive.
+         */
+        private final ZipFile zip;
+
+        /**
+         * Entry of the archive.
+         */
+        private final ZipArchiveEntry entry;
+
+        /**
+         * Constructor.
+         * @param zip The archive.
+         * @param entry Entry of the archive.
+         */
+        EntryResource(final ZipFile zip, final ZipArchiveEntry entry) {
+            super(
+                entry.getName(), entry.getTime(), entry.isDirectory() ? 0L : entry.getSize(),
+                !entry.isDirectory() && !entry.isUnixSymlink(), entry.isDirectory(), true
+            );
+            this.zip = zip;
+            this.entry = entry;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return this.entry.isUnixSymlink();
+        }
+
+        @Override
+        public InputStream getContents() throws IOException {
+            return this.zip.getInputStream(this.entry);
+        }
+
+        @Override
+        public URL getURL() {
+            return null;
+        }
+    }
+}
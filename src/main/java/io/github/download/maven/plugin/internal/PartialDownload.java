@@ -0,0 +1,235 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.Properties;
+import javax.annotation.Nullable;
+
+/**
+ * Partially downloaded content of a file, kept next to the output file so that
+ * an interrupted transfer can be continued with a range request, by a retry or
+ * by a later build.
+ * <p>The content is written to {@code <output>.part}. The resource it comes from,
+ * its validator (a strong ETag or Last-Modified date) and the number of bytes
+ * written are recorded in {@code <output>.part.properties}. Content without
+ * a validator is never resumed.</p>
+ */
+final class PartialDownload {
+
+    /**
+     * Suffix of the file holding the partial content.
+     */
+    private static final String DATA_SUFFIX = ".part";
+
+    /**
+     * Suffix of the file holding the state of the partial content.
+     */
+    private static final String STATE_SUFFIX = ".part.properties";
+
+    /**
+     * State property with the URI of the resource.
+     */
+    private static final String URI_PROPERTY = "uri";
+
+    /**
+     * State property with the validator of the resource.
+     */
+    private static final String VALIDATOR_PROPERTY = "validator";
+
+    /**
+     * State property with the number of bytes written.
+     */
+    private static final String LENGTH_PROPERTY = "length";
+
+    /**
+     * Final output file.
+     */
+    private final File output;
+
+    /**
+     * File holding the partial content.
+     */
+    private final File data;
+
+    /**
+     * File holding the state of the partial content.
+     */
+    private final File state;
+
+    /**
+     * URI of the resource being downloaded.
+     */
+    private final URI uri;
+
+    /**
+     * Constructor.
+     * @param output Final output file.
+     * @param uri URI of the resource being downloaded.
+     */
+    PartialDownload(final File output, final URI uri) {
+        this.output = output;
+        this.data = new File(output.getPath() + DATA_SUFFIX);
+        this.state = new File(output.getPath() + STATE_SUFFIX);
+        this.uri = uri;
+    }
+
+    /**
+     * File the content is written to until the download completes.
+     * @return Partial content file.
+     */
+    File file() {
+        return this.data;
+    }
+
+    /**
+     * Validator of the partial content, to be sent with {@code If-Range}.
+     * @return Validator; empty if the partial content can't be resumed.
+     * @throws IOException If the state could not be read.
+     */
+    Optional<String> validator() throws IOException {
+        return this.load().map(props -> props.getProperty(VALIDATOR_PROPERTY));
+    }
+
+    /**
+     * Number of bytes that can be resumed.
+     * @return Length of the partial content; 0 if there is nothing to resume.
+     * @throws IOException If the state could not be read.
+     */
+    long resumableLength() throws IOException {
+        final Optional<Properties> props = this.load();
+        final long result;
+        if (props.isPresent() && this.data.isFile()) {
+            result = Math.min(
+                this.data.length(),
+                Long.parseLong(props.get().getProperty(LENGTH_PROPERTY, Long.toString(Long.MAX_VALUE)))
+            );
+        } else {
+            result = 0L;
+        }
+        return result;
+    }
+
+    /**
+     * Starts writing the content from the beginning.
+     * @param validator Validator of the resource; {@literal null} if the content
+     *  can't be resumed.
+     * @throws IOException If the state could not be written.
+     */
+    void start(@Nullable final String validator) throws IOException {
+        Files.deleteIfExists(this.state.toPath());
+        if (validator != null) {
+            final Properties props = new Properties();
+            props.setProperty(URI_PROPERTY, this.uri.toString());
+            props.setProperty(VALIDATOR_PROPERTY, validator);
+            this.store(props);
+        }
+    }
+
+    /**
+     * Records the number of bytes of the partial content written so far.
+     * @param length Number of bytes written.
+     * @throws IOException If the state could not be written.
+     */
+    void written(final long length) throws IOException {
+        final Optional<Properties> props = this.load();
+        if (props.isPresent()) {
+            props.get().setProperty(LENGTH_PROPERTY, Long.toString(length));
+            this.store(props.get());
+        }
+    }
+
+    /**
+     * Cuts the partial content to the number of bytes being continued.
+     * @param length Number of bytes kept.
+     * @throws IOException If the partial content could not be truncated.
+     */
+    void truncate(final long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.data.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    /**
+     * Drops the partial content.
+     * @throws IOException If the files could not be deleted.
+     */
+    void discard() throws IOException {
+        Files.deleteIfExists(this.state.toPath());
+        Files.deleteIfExists(this.data.toPath());
+    }
+
+    /**
+     * Publishes the complete content as the output file.
+     * @throws IOException If the content could not be moved.
+     */
+    void complete() throws IOException {
+        if (this.data.isFile()) {
+            try {
+                Files.move(
+                    this.data.toPath(), this.output.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+                );
+            } catch (final AtomicMoveNotSupportedException ex) {
+                Files.move(
+                    this.data.toPath(), this.output.toPath(), StandardCopyOption.REPLACE_EXISTING
+                );
+            }
+        }
+        Files.deleteIfExists(this.state.toPath());
+    }
+
+    /**
+     * Loads the state of the partial content.
+     * @return State; empty if absent or recorded for another resource.
+     * @throws IOException If the state could not be read.
+     */
+    private Optional<Properties> load() throws IOException {
+        Optional<Properties> result = Optional.empty();
+        if (this.state.isFile()) {
+            final Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(this.state.toPath())) {
+                props.load(in);
+            }
+            if (this.uri.toString().equals(props.getProperty(URI_PROPERTY))
+                && props.getProperty(VALIDATOR_PROPERTY) != null) {
+                result = Optional.of(props);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores the state of the partial content.
+     * @param props State.
+     * @throws IOException If the state could not be written.
+     */
+    private void store(final Properties props) throws IOException {
+        try (OutputStream out = Files.newOutputStream(this.state.toPath())) {
+            props.store(out, null);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.net.URI;
+import java.util.Optional;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.shared.utils.StringUtils;
+import org.eclipse.aether.repository.Authentication;
+import org.eclipse.aether.repository.AuthenticationContext;
+import org.eclipse.aether.repository.Proxy;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.transfer.TransferListener;
+
+/**
+ * Access to the repository of a file to download, as set up in the Maven session:
+ * proxy, authentication and transfer progress.
+ * @since 2.0.1
+ */
+final class RepositoryAccess {
+
+    /**
+     * Maven session.
+     */
+    private final MavenSession session;
+
+    /**
+     * Logger.
+     */
+    private final Log log;
+
+    /**
+     * Constructor.
+     * @param session Maven session.
+     * @param log Logger.
+     */
+    RepositoryAccess(final MavenSession session, final Log log) {
+        this.session = session;
+        this.log = log;
+    }
+
+    /**
+     * Configures a file requester with the proxy and authentication of the session
+     * for the repository of a file, and with a progress report.
+     * @param fileRequesterBuilder The builder for HttpFileRequester to configure.
+     * @param serverId The server ID of the repository, may be blank.
+     * @param uri The URI of the file.
+     * @return The builder.
+     */
+    HttpFileRequester.Builder configure(
+        final HttpFileRequester.Builder fileRequesterBuilder, final String serverId, final URI uri
+    ) {
+        final RemoteRepository repository = createRemoteRepository(serverId, uri);
+        // set proxy if present
+        Optional.ofNullable(this.session.getRepositorySession().getProxySelector())
+            .map(selector -> selector.getProxy(repository))
+            .ifPresent(proxy -> this.addProxy(fileRequesterBuilder, repository, proxy));
+        Optional.ofNullable(this.session.getRepositorySession().getAuthenticationSelector())
+            .map(selector -> selector.getAuthentication(repository))
+            .ifPresent(auth -> this.addAuthentication(fileRequesterBuilder, repository, auth));
+        return fileRequesterBuilder
+            .withProgressReport(showTransferProgress(this.session)
+                ? new LoggingProgressReport(this.log)
+                : new SilentProgressReport(this.log));
+    }
+
+    /**
+     * Creates a remote repository with the given server ID and URI.
+     * @param serverId The server ID to associate with the remote repository. If blank, certain default
+     *  settings will be applied based on the URI's scheme and host.
+     * @param uri The URI of the remote repository.
+     * @return A configured instance of RemoteRepository.
+     */
+    private static RemoteRepository createRemoteRepository(final String serverId, final URI uri) {
+        return new RemoteRepository.Builder(
+            StringUtils.isBlank(serverId) ? null : serverId,
+            StringUtils.isBlank(serverId) ? uri.getScheme() : null,
+            StringUtils.isBlank(serverId) ? String.format("%s://%s", uri.getScheme(), uri.getHost()) : null
+        ).build();
+    }
+
+    /**
+     * Determines whether to show transfer progress. Progress is shown if the
+     * session is interactive and the transfer listener is null or not a QuietMavenTransferListener.
+     * @param session The current Maven session.
+     * @return Whether to show transfer progress.
+     */
+    private static boolean showTransferProgress(final MavenSession session) {
+        final boolean result;
+        if (session.getSettings().isInteractiveMode()) {
+            final TransferListener transferListener = session.getRequest().getTransferListener();
+            if (transferListener == null) {
+                result = true;
+            } else {
+                result = !"QuietMavenTransferListener".equals(transferListener.getClass().getSimpleName());
+            }
+        } else {
+            result = false;
+        }
+        return result;
+    }
+
+    /**
+     * Configures the provided HttpFileRequester.Builder with proxy settings derived
+     * from the specified Proxy and RemoteRepository.
+     * @param fileRequesterBuilder The builder for HttpFileRequester to configure with proxy settings.
+     * @param repository The remote repository for which the proxy settings should be applied.
+     * @param proxy The proxy whose settings (host, port, and authentication) will be used for the configuration.
+     */
+    private void addProxy(
+        final HttpFileRequester.Builder fileRequesterBuilder,
+        final RemoteRepository repository,
+        final Proxy proxy
+    ) {
+        fileRequesterBuilder.withProxyHost(proxy.getHost());
+        fileRequesterBuilder.withProxyPort(proxy.getPort());
+        final RemoteRepository proxyRepo = new RemoteRepository.Builder(repository)
+            .setProxy(proxy)
+            .build();
+        try (
+            AuthenticationContext ctx = AuthenticationContext.forProxy(
+                this.session.getRepositorySession(),
+                proxyRepo
+            )
+        ) {
+            if (ctx != null) {
+                fileRequesterBuilder.withProxyUserName(ctx.get(AuthenticationContext.USERNAME));
+                fileRequesterBuilder.withProxyPassword(ctx.get(AuthenticationContext.PASSWORD));
+                fileRequesterBuilder.withNtlmDomain(ctx.get(AuthenticationContext.NTLM_DOMAIN));
+                fileRequesterBuilder.withNtlmHost(ctx.get(AuthenticationContext.NTLM_WORKSTATION));
+            }
+        }
+    }
+
+    /**
+     * Configures the provided HttpFileRequester.Builder with authentication settings derived
+     * from the specified RemoteRepository and Authentication instances.
+     * @param fileRequesterBuilder The builder for HttpFileRequester to configure with authentication settings.
+     * @param repository The remote repository for which the authentication settings should be applied.
+     * @param authentication The authentication credentials to use for configuring the file requester.
+     */
+    private void addAuthentication(
+        final HttpFileRequester.Builder fileRequesterBuilder,
+        final RemoteRepository repository,
+        final Authentication authentication
+    ) {
+        final RemoteRepository authRepo = new RemoteRepository.Builder(repository)
+            .setAuthentication(authentication)
+            .build();
+        try (
+            AuthenticationContext authCtx = AuthenticationContext.forRepository(
+                this.session.getRepositorySession(),
+                authRepo
+            )
+        ) {
+            final String uname = authCtx.get(AuthenticationContext.USERNAME);
+            final String pass = authCtx.get(AuthenticationContext.PASSWORD);
+            final String ntlmDomain = authCtx.get(AuthenticationContext.NTLM_DOMAIN);
+            final String ntlmHost = authCtx.get(AuthenticationContext.NTLM_WORKSTATION);
+            this.log.debug("providing custom authentication");
+            this.log.debug(String.format("username: %s and password: ***", uname));
+            fileRequesterBuilder.withUsername(uname);
+            fileRequesterBuilder.withPassword(pass);
+            fileRequesterBuilder.withNtlmDomain(ntlmDomain);
+            fileRequesterBuilder.withNtlmHost(ntlmHost);
+        }
+    }
+}
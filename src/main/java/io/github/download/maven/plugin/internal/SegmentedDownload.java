@@ -0,0 +1,471 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import io.github.download.maven.plugin.internal.cache.Validators;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Download of a resource as several byte ranges fetched in parallel over pooled
+ * connections, each written at its own position of a preallocated file.
+ * Call {@link #probe(long)} first to learn whether the server serves the
+ * resource in ranges.
+ * <p>Each range is requested with {@code If-Range} and a strong validator of the
+ * probed resource, so that ranges of different versions are never mixed: a server
+ * answering with the full content, or with another range than the requested one,
+ * fails the download.</p>
+ */
+final class SegmentedDownload {
+
+    /**
+     * Range unit supported for segmented downloads.
+     */
+    static final String BYTES_UNIT = "bytes";
+
+    /**
+     * Content coding requested for ranges, so that they match the stored content.
+     */
+    static final String IDENTITY_ENCODING = "identity";
+
+    /**
+     * Prefix of weak entity tags, which cannot validate byte ranges.
+     */
+    private static final String WEAK_ETAG_PREFIX = "W/";
+
+    /**
+     * Minimum time between the last modification date and the date of a response
+     * for the modification date to be a strong validator, in milliseconds.
+     */
+    private static final long STRONG_DATE_DELAY = 1000L;
+
+    /**
+     * Buffer size used to copy a range to the file.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Shared HTTP client.
+     */
+    private final CloseableHttpClient client;
+
+    /**
+     * Creates the execution context of each request.
+     */
+    private final Supplier<? extends HttpContext> contexts;
+
+    /**
+     * Resource URI.
+     */
+    private final URI uri;
+
+    /**
+     * Additional request headers.
+     */
+    private final List<Header> headers;
+
+    /**
+     * Content length in bytes, known once probed.
+     */
+    private long length;
+
+    /**
+     * Entity tag of the resource, {@literal null} if not provided.
+     */
+    private Header etag;
+
+    /**
+     * Last modification date of the resource, {@literal null} if not provided.
+     */
+    private Header modified;
+
+    /**
+     * Strong validator of the resource sent with {@code If-Range},
+     * {@literal null} if the resource has none.
+     */
+    private String validator;
+
+    /**
+     * Constructor.
+     * @param client Shared HTTP client.
+     * @param contexts Creates the execution context of each request.
+     * @param uri Resource URI.
+     * @param headers Additional request headers.
+     */
+    SegmentedDownload(
+        final CloseableHttpClient client, final Supplier<? extends HttpContext> contexts,
+        final URI uri, final List<Header> headers
+    ) {
+        this.client = client;
+        this.contexts = contexts;
+        this.uri = uri;
+        this.headers = headers;
+    }
+
+    /**
+     * Checks with a {@code HEAD} request whether the server accepts byte ranges
+     * for the resource, whether it has a strong validator to request them with,
+     * and whether it is big enough to be split.
+     * @param minLength Minimum content length worth splitting.
+     * @return True if the resource should be fetched in segments.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    boolean probe(final long minLength) throws IOException {
+        final HttpHead httpHead = new HttpHead(this.uri);
+        this.headers.forEach(httpHead::setHeader);
+        httpHead.setHeader(HttpHeaders.ACCEPT_ENCODING, IDENTITY_ENCODING);
+        return this.client.execute(
+            httpHead,
+            response -> {
+                final Header acceptRanges = response.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+                final Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+                final boolean accepted = response.getStatusLine().getStatusCode() == HttpStatus.SC_OK
+                    && acceptRanges != null && BYTES_UNIT.equalsIgnoreCase(acceptRanges.getValue());
+                if (contentLength == null) {
+                    this.length = -1L;
+                } else {
+                    this.length = Long.parseLong(contentLength.getValue());
+                }
+                this.etag = response.getFirstHeader(HttpHeaders.ETAG);
+                this.modified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+                this.validator = SegmentedDownload.validator(
+                    this.etag, this.modified, response.getFirstHeader(HttpHeaders.DATE)
+                );
+                return accepted && this.validator != null && this.length >= minLength;
+            },
+            this.contexts.get()
+        );
+    }
+
+    /**
+     * Validators of the probed resource.
+     * @return Validators.
+     */
+    Validators validators() {
+        return new Validators(
+            Optional.ofNullable(this.etag).map(Header::getValue).orElse(null),
+            Optional.ofNullable(this.modified).map(Header::getValue).orElse(null)
+        );
+    }
+
+    /**
+     * Content length of the probed resource.
+     * @return Length in bytes, negative if unknown.
+     */
+    long length() {
+        return this.length;
+    }
+
+    /**
+     * Downloads the probed resource.
+     * @param file Output file.
+     * @param segments Maximum number of ranges fetched in parallel.
+     * @param segmentSize Minimum size of a range in bytes.
+     * @param progressReport Progress report of the whole download.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    void download(
+        final File file, final int segments, final long segmentSize, final ProgressReport progressReport
+    ) throws IOException {
+        final int count = (int) Math.min(segments, (this.length + segmentSize - 1L) / segmentSize);
+        final long size = (this.length + count - 1L) / count;
+        final List<SegmentedDownload.Range> ranges = new ArrayList<>(count);
+        for (long start = 0L; start < this.length; start += size) {
+            ranges.add(new SegmentedDownload.Range(start, Math.min(this.length, start + size) - 1L));
+        }
+        this.download(file, ranges, count, progressReport);
+    }
+
+    /**
+     * Downloads the given byte ranges of the probed resource, each written at its own
+     * position of the output file, which has the length of the resource. The rest
+     * of the output file is left unwritten.
+     * @param file Output file.
+     * @param ranges Byte ranges to download.
+     * @param parallel Maximum number of ranges fetched in parallel.
+     * @param progressReport Progress report of the whole download.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    void download(
+        final File file, final List<SegmentedDownload.Range> ranges, final int parallel,
+        final ProgressReport progressReport
+    ) throws IOException {
+        progressReport.initiate(this.uri, ranges.stream().mapToLong(SegmentedDownload.Range::size).sum());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallel, ranges.size())));
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            if (output.length() != this.length) {
+                output.setLength(this.length);
+            }
+            final FileChannel channel = output.getChannel();
+            final List<Future<Void>> parts = new ArrayList<>(ranges.size());
+            for (final SegmentedDownload.Range range : ranges) {
+                parts.add(
+                    executor.submit(
+                        () -> this.downloadRange(channel, progressReport, range.first(), range.last())
+                    )
+                );
+            }
+            SegmentedDownload.awaitAll(parts);
+            progressReport.completed();
+        } catch (final IOException ex) {
+            progressReport.error(ex);
+            throw ex;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Downloads a single byte range of the resource.
+     * @param channel Output file channel.
+     * @param progressReport Progress report of the whole download.
+     * @param first Position of the first byte of the range.
+     * @param last Position of the last byte of the range (inclusive).
+     * @return Nothing.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    private Void downloadRange(
+        final FileChannel channel, final ProgressReport progressReport, final long first, final long last
+    ) throws IOException {
+        final HttpGet httpGet = new HttpGet(this.uri);
+        this.headers.forEach(httpGet::setHeader);
+        httpGet.setHeader(HttpHeaders.ACCEPT_ENCODING, IDENTITY_ENCODING);
+        httpGet.setHeader(HttpHeaders.RANGE, String.format("%s=%d-%d", BYTES_UNIT, first, last));
+        httpGet.setHeader(HttpHeaders.IF_RANGE, this.validator);
+        return this.client.execute(
+            httpGet,
+            response -> {
+                final int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode >= HttpCodes.BAD_REQUEST.getCode()) {
+                    throw new DownloadFailureException(
+                        statusCode, response.getStatusLine().getReasonPhrase()
+                    );
+                }
+                if (statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+                    throw new IOException(
+                        String.format(
+                            "Range %d-%d of %s was not served as partial content (%d)",
+                            first, last, this.uri, statusCode
+                        )
+                    );
+                }
+                this.checkRange(response.getFirstHeader(HttpHeaders.CONTENT_RANGE), first, last);
+                long position = first;
+                try (InputStream in = response.getEntity().getContent()) {
+                    final byte[] tmp = new byte[BUFFER_SIZE];
+                    int bytesRead;
+                    while (position <= last && (bytesRead = in.read(tmp)) != -1) {
+                        final int count = (int) Math.min(bytesRead, last - position + 1L);
+                        final ByteBuffer buffer = ByteBuffer.wrap(tmp, 0, count);
+                        while (buffer.hasRemaining()) {
+                            position += channel.write(buffer, position);
+                        }
+                        synchronized (progressReport) {
+                            progressReport.update(count);
+                        }
+                    }
+                }
+                if (position != last + 1L) {
+                    throw new IOException(
+                        String.format(
+                            "Premature end of range %d-%d of %s at %d", first, last, this.uri, position
+                        )
+                    );
+                }
+                return null;
+            },
+            this.contexts.get()
+        );
+    }
+
+    /**
+     * Checks that the content range of a response is the requested range of the probed resource.
+     * @param range Content range of the response, {@literal null} if absent.
+     * @param first Position of the first byte of the requested range.
+     * @param last Position of the last byte of the requested range (inclusive).
+     * @throws IOException If another range, or a range of a resource of another length, was served.
+     */
+    private void checkRange(final Header range, final long first, final long last) throws IOException {
+        final String expected = String.format("%s %d-%d/", BYTES_UNIT, first, last);
+        final boolean matches = range != null && range.getValue().startsWith(expected)
+            && SegmentedDownload.sameLength(range.getValue().substring(expected.length()), this.length);
+        if (!matches) {
+            throw new IOException(
+                String.format(
+                    "Range %d-%d of %s was served with content range %s",
+                    first, last, this.uri, Optional.ofNullable(range).map(Header::getValue).orElse("none")
+                )
+            );
+        }
+    }
+
+    /**
+     * Checks the complete length of a content range.
+     * @param complete Complete length of the content range, {@code *} if unknown.
+     * @param length Length of the probed resource.
+     * @return True unless the content range is of a resource of another length.
+     */
+    private static boolean sameLength(final String complete, final long length) {
+        return "*".equals(complete) || String.valueOf(length).equals(complete.trim());
+    }
+
+    /**
+     * Selects the strong validator of a resource, sent with {@code If-Range}: its entity tag
+     * unless weak, else its last modification date if at least a second older than the response.
+     * @param etag Entity tag of the resource, {@literal null} if not provided.
+     * @param modified Last modification date of the resource, {@literal null} if not provided.
+     * @param date Date of the response, {@literal null} if not provided.
+     * @return Validator; {@literal null} if the resource has no strong validator.
+     */
+    private static String validator(final Header etag, final Header modified, final Header date) {
+        final String result;
+        if (etag != null && !etag.getValue().startsWith(WEAK_ETAG_PREFIX)) {
+            result = etag.getValue();
+        } else if (modified != null && date != null && SegmentedDownload.strong(modified, date)) {
+            result = modified.getValue();
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether a last modification date is a strong validator.
+     * @param modified Last modification date.
+     * @param date Date of the response.
+     * @return True if both dates are valid and the modification date is at least a second
+     *  older than the response.
+     */
+    private static boolean strong(final Header modified, final Header date) {
+        final Date changed = DateUtils.parseDate(modified.getValue());
+        final Date served = DateUtils.parseDate(date.getValue());
+        return changed != null && served != null && served.getTime() - changed.getTime() >= STRONG_DATE_DELAY;
+    }
+
+    /**
+     * Waits for all the range downloads to finish.
+     * @param parts Range downloads.
+     * @throws IOException The first failure of a range download.
+     */
+    private static void awaitAll(final List<Future<Void>> parts) throws IOException {
+        IOException failure = null;
+        for (final Future<Void> part : parts) {
+            try {
+                part.get();
+            } catch (final ExecutionException ex) {
+                if (failure == null) {
+                    failure = SegmentedDownload.asIoException(ex.getCause());
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(ex.getMessage());
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Unwraps the failure of a range download.
+     * @param cause Failure cause.
+     * @return I/O exception to report.
+     */
+    private static IOException asIoException(final Throwable cause) {
+        final IOException result;
+        if (cause instanceof IOException) {
+            result = (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else {
+            result = new IOException(cause);
+        }
+        return result;
+    }
+
+    /**
+     * Byte range of the resource.
+     */
+    static final class Range {
+
+        /**
+         * Position of the first byte of the range.
+         */
+        private final long first;
+
+        /**
+         * Position of the last byte of the range (inclusive).
+         */
+        private final long last;
+
+        /**
+         * Constructor.
+         * @param first Position of the first byte of the range.
+         * @param last Position of the last byte of the range (inclusive).
+         */
+        Range(final long first, final long last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * Position of the first byte of the range.
+         * @return Position.
+         */
+        long first() {
+            return this.first;
+        }
+
+        /**
+         * Position of the last byte of the range (inclusive).
+         * @return Position.
+         */
+        long last() {
+            return this.last;
+        }
+
+        /**
+         * Number of bytes of the range.
+         * @return Size in bytes.
+         */
+        long size() {
+            return this.last - this.first + 1L;
+        }
+    }
+}
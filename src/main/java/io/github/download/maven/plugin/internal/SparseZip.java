@@ -0,0 +1,364 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.components.io.fileselectors.FileInfo;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+
+/**
+ * Zip archive of a remote resource, of which only the central directory and the
+ * selected entries are fetched, in byte ranges, into a sparse copy of the archive.
+ * <p>The unselected entries of the copy are left unwritten, so it can only be used
+ * to unpack the selected ones.</p>
+ */
+final class SparseZip {
+
+    /**
+     * Signature of the end of central directory record.
+     */
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+
+    /**
+     * Length of the end of central directory record, without its comment.
+     */
+    private static final int EOCD_LENGTH = 22;
+
+    /**
+     * Maximum length of the comment of the archive.
+     */
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    /**
+     * Signature of the zip64 end of central directory locator.
+     */
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    /**
+     * Length of the zip64 end of central directory locator.
+     */
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+
+    /**
+     * Signature of the zip64 end of central directory record.
+     */
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+
+    /**
+     * Length of the zip64 end of central directory record, without its extensible data.
+     */
+    private static final int ZIP64_EOCD_LENGTH = 56;
+
+    /**
+     * Position of the size of the central directory in the end of central directory record.
+     */
+    private static final int EOCD_SIZE = 12;
+
+    /**
+     * Position of the offset of the central directory in the end of central directory record.
+     */
+    private static final int EOCD_OFFSET = 16;
+
+    /**
+     * Position of the offset of the zip64 end of central directory record in its locator.
+     */
+    private static final int ZIP64_LOCATOR_OFFSET = 8;
+
+    /**
+     * Position of the size of the central directory in the zip64 end of central directory record.
+     */
+    private static final int ZIP64_EOCD_SIZE = 40;
+
+    /**
+     * Position of the offset of the central directory in the zip64 end of central directory record.
+     */
+    private static final int ZIP64_EOCD_OFFSET = 48;
+
+    /**
+     * Mask of an unsigned 32-bit field.
+     */
+    private static final long UNSIGNED_INT = 0xFFFFFFFFL;
+
+    /**
+     * Sparse copy of the archive.
+     */
+    private final File file;
+
+    /**
+     * Download of the archive in byte ranges.
+     */
+    private final SegmentedDownload ranges;
+
+    /**
+     * Maximum number of ranges fetched in parallel.
+     */
+    private final int parallel;
+
+    /**
+     * Progress report of the download.
+     */
+    private final ProgressReport progressReport;
+
+    /**
+     * Logger.
+     */
+    private final Log log;
+
+    /**
+     * Constructor.
+     * @param outputFile The output file, next to which the sparse copy is written.
+     * @param ranges Download of the archive in byte ranges.
+     * @param parallel Maximum number of ranges fetched in parallel.
+     * @param progressReport Progress report of the download.
+     * @param log Logger.
+     */
+    SparseZip(
+        final File outputFile, final SegmentedDownload ranges, final int parallel,
+        final ProgressReport progressReport, final Log log
+    ) {
+        this.file = new File(outputFile.getParentFile(), String.format("%s.sparse", outputFile.getName()));
+        this.ranges = ranges;
+        this.parallel = parallel;
+        this.progressReport = progressReport;
+        this.log = log;
+    }
+
+    /**
+     * Sparse copy of the archive, holding the selected entries once fetched.
+     * @return File.
+     */
+    File file() {
+        return this.file;
+    }
+
+    /**
+     * Fetches the central directory of the archive, then the entries matching the selector.
+     * @param selector Selector of the entries to fetch, empty to fetch all of them.
+     * @return True if fetched; false if the server does not serve the archive in byte ranges,
+     *  if it is not a zip archive or if it could not be fetched, in which case nothing is left on disk.
+     */
+    boolean fetch(final Optional<FileSelector> selector) {
+        boolean result = false;
+        try {
+            if (this.ranges.probe(EOCD_LENGTH)) {
+                final Optional<SegmentedDownload.Range> directory = this.directory();
+                if (directory.isPresent()) {
+                    this.fetch(this.entries(selector, directory.get().first()));
+                    result = true;
+                }
+            }
+        } catch (final IOException ex) {
+            this.log.warn(String.format("Could not fetch %s in byte ranges: %s", this.file.getName(), ex.getMessage()));
+        } finally {
+            if (!result) {
+                this.file.delete();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fetches byte ranges of the archive into the sparse copy.
+     * @param fetched Byte ranges to fetch.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    private void fetch(final List<SegmentedDownload.Range> fetched) throws IOException {
+        if (!fetched.isEmpty()) {
+            this.ranges.download(this.file, fetched, this.parallel, this.progressReport);
+        }
+    }
+
+    /**
+     * Fetches a byte range of the archive into the sparse copy, unless it is empty.
+     * @param first Position of the first byte of the range.
+     * @param last Position of the last byte of the range (inclusive).
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    private void fetch(final long first, final long last) throws IOException {
+        if (first <= last) {
+            this.fetch(Collections.singletonList(new SegmentedDownload.Range(first, last)));
+        }
+    }
+
+    /**
+     * Fetches the central directory, located from the end of central directory record,
+     * or its zip64 counterpart, found in the end of the archive, fetched first.
+     * @return Byte range of the central directory; empty if not a zip archive.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    private Optional<SegmentedDownload.Range> directory() throws IOException {
+        final long length = this.ranges.length();
+        final long tail = Math.max(
+            0L, length - EOCD_LENGTH - MAX_COMMENT_LENGTH - ZIP64_LOCATOR_LENGTH - ZIP64_EOCD_LENGTH
+        );
+        this.fetch(tail, length - 1L);
+        final ByteBuffer end = this.read(tail, (int) (length - tail));
+        int eocd = end.limit() - EOCD_LENGTH;
+        while (eocd >= 0 && end.getInt(eocd) != EOCD_SIGNATURE) {
+            --eocd;
+        }
+        Optional<SegmentedDownload.Range> result = Optional.empty();
+        if (eocd >= 0) {
+            long size = end.getInt(eocd + EOCD_SIZE) & UNSIGNED_INT;
+            long offset = end.getInt(eocd + EOCD_OFFSET) & UNSIGNED_INT;
+            final Optional<ByteBuffer> record = this.zipRecord(end, eocd, tail);
+            if (record.isPresent()) {
+                size = record.get().getLong(ZIP64_EOCD_SIZE);
+                offset = record.get().getLong(ZIP64_EOCD_OFFSET);
+            }
+            if (offset + size <= length) {
+                result = Optional.of(new SegmentedDownload.Range(offset, offset + size - 1L));
+                this.fetch(offset, Math.min(tail, offset + size) - 1L);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fetches the zip64 end of central directory record, if the archive has one.
+     * @param end Fetched end of the archive.
+     * @param eocd Position of the end of central directory record in the fetched end.
+     * @param tail Position of the fetched end in the archive.
+     * @return Little-endian buffer of the zip64 record; empty if none.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    private Optional<ByteBuffer> zipRecord(final ByteBuffer end, final int eocd, final long tail)
+        throws IOException {
+        final int locator = eocd - ZIP64_LOCATOR_LENGTH;
+        Optional<ByteBuffer> result = Optional.empty();
+        if (locator >= 0 && end.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            final long position = end.getLong(locator + ZIP64_LOCATOR_OFFSET);
+            this.fetch(position, Math.min(tail, position + ZIP64_EOCD_LENGTH) - 1L);
+            final ByteBuffer record = this.read(position, ZIP64_EOCD_LENGTH);
+            if (record.getInt(0) == ZIP64_EOCD_SIGNATURE) {
+                result = Optional.of(record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lists the byte ranges of the entries matching the selector, from the fetched
+     * central directory. Each range goes from the local header of its entry to the
+     * next entry, and adjacent ranges are merged.
+     * @param selector Selector of the entries, empty to select all of them.
+     * @param directory Position of the central directory, ending the last entry.
+     * @return Byte ranges of the selected entries.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    private List<SegmentedDownload.Range> entries(final Optional<FileSelector> selector, final long directory)
+        throws IOException {
+        final List<ZipArchiveEntry> entries;
+        try (ZipFile zip = ZipFile.builder().setFile(this.file).setCharset(StandardCharsets.UTF_8)
+            .setUseUnicodeExtraFields(true).setIgnoreLocalFileHeader(true).get()) {
+            entries = Collections.list(zip.getEntriesInPhysicalOrder());
+        }
+        final List<SegmentedDownload.Range> result = new ArrayList<>(entries.size());
+        for (int idx = 0; idx < entries.size(); ++idx) {
+            final ZipArchiveEntry entry = entries.get(idx);
+            if (!selector.isPresent() || selector.get().isSelected(new SparseZip.EntryInfo(entry))) {
+                final long first = entry.getLocalHeaderOffset();
+                final long last;
+                if (idx + 1 < entries.size()) {
+                    last = entries.get(idx + 1).getLocalHeaderOffset() - 1L;
+                } else {
+                    last = directory - 1L;
+                }
+                final int previous = result.size() - 1;
+                if (previous >= 0 && result.get(previous).last() + 1L == first) {
+                    result.set(previous, new SegmentedDownload.Range(result.get(previous).first(), last));
+                } else {
+                    result.add(new SegmentedDownload.Range(first, last));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads bytes of the sparse copy.
+     * @param position Position of the first byte.
+     * @param count Number of bytes.
+     * @return Little-endian buffer of the bytes.
+     * @throws IOException Thrown if I/O operations don't succeed.
+     */
+    private ByteBuffer read(final long position, final int count) throws IOException {
+        final byte[] bytes = new byte[count];
+        try (RandomAccessFile input = new RandomAccessFile(this.file, "r")) {
+            input.seek(position);
+            input.readFully(bytes);
+        }
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Entry of the archive, as presented to the file selectors.
+     * Its content is not available, as it is not fetched yet.
+     */
+    private static final class EntryInfo implements FileInfo {
+
+        /**
+         * Entry of the archive.
+         */
+        private final ZipArchiveEntry entry;
+
+        /**
+         * Constructor.
+         * @param entry Entry of the archive.
+         */
+        EntryInfo(final ZipArchiveEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getName() {
+            return this.entry.getName();
+        }
+
+        @Override
+        public InputStream getContents() {
+            throw new UnsupportedOperationException("Content of a remote entry is not available");
+        }
+
+        @Override
+        public boolean isFile() {
+            return !this.entry.isDirectory() && !this.entry.isUnixSymlink();
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return this.entry.isDirectory();
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return this.entry.isUnixSymlink();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.codehaus.plexus.archiver.AbstractUnArchiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.components.io.resources.AbstractPlexusIoResource;
+
+/**
+ * UnArchiver of tar archives, possibly compressed, reading them from a stream,
+ * so that they can be unpacked while they are downloaded.
+ * <p>Entries are selected and extracted as by the plexus tar UnArchivers,
+ * honoring file selectors, file mappers and file modes. Decompression, parsing
+ * and writing of small files run on separate threads; archive files made of
+ * independent members are decompressed in parallel.</p>
+ */
+final class TarStreamUnArchiver extends AbstractUnArchiver {
+
+    /**
+     * Buffer size used to read the archive.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum size of a file read ahead of its writer.
+     */
+    private static final long MAX_QUEUED_SIZE = 256L * 1024L;
+
+    /**
+     * Maximum number of files read ahead of their writer.
+     */
+    private static final int MAX_QUEUED = 64;
+
+    /**
+     * Compression of the archive.
+     */
+    private final TarStreamUnArchiver.Compression compression;
+
+    /**
+     * Maximum number of threads decompressing an archive file.
+     */
+    private final int threads;
+
+    /**
+     * Constructor.
+     * @param compression Compression of the archive.
+     * @param threads Maximum number of threads decompressing an archive file,
+     *  if it is made of independent members.
+     */
+    TarStreamUnArchiver(final TarStreamUnArchiver.Compression compression, final int threads) {
+        super();
+        this.compression = compression;
+        this.threads = threads;
+    }
+
+    /**
+     * Unpacks the archive read from the given stream. The stream is read to its end,
+     * even past the end of the archive, so that its writer is never left blocked.
+     * @param archive Stream of the archive, not closed.
+     * @param source Name of the archive, used in messages.
+     * @throws IOException If the archive could not be read or unpacked.
+     */
+    void extract(final InputStream archive, final String source) throws IOException {
+        this.entries(
+            this.compression.decompress(new BufferedInputStream(archive, BUFFER_SIZE)), source,
+            "", this.getDestDirectory()
+        );
+        final byte[] padding = new byte[BUFFER_SIZE];
+        int read = archive.read(padding);
+        while (read != -1) {
+            read = archive.read(padding);
+        }
+    }
+
+    @Override
+    protected void execute() {
+        this.unpack("", this.getDestDirectory());
+    }
+
+    /**
+     * Extracts the entries whose path starts with the given one, as the plexus zip
+     * UnArchivers do. The archive is still read to its end, as it has no index.
+     * @param path Path of the entries to extract, relative to the root of the archive.
+     * @param output Directory to extract the entries to.
+     */
+    @Override
+    protected void execute(final String path, final File output) {
+        this.unpack(path, output);
+    }
+
+    /**
+     * Unpacks the entries of the archive file whose path starts with a prefix.
+     * @param prefix Prefix of the paths of the entries to unpack; empty for all entries.
+     * @param output Directory to unpack the entries to.
+     */
+    private void unpack(final String prefix, final File output) {
+        final File source = this.getSourceFile();
+        try (InputStream archive = ParallelDecompression.open(source, this.compression, this.threads)) {
+            this.entries(new BufferedInputStream(archive, BUFFER_SIZE), source.getName(), prefix, output);
+        } catch (final IOException ex) {
+            throw new ArchiverException(String.format("Error while expanding %s", source.getAbsolutePath()), ex);
+        }
+    }
+
+    /**
+     * Unpacks the entries of the decompressed archive. Small files are read ahead
+     * and written by a thread of their own, while the following entries are parsed;
+     * they are all written before any other entry is extracted, so that entries are
+     * extracted in the order of the archive.
+     * @param decompressed Decompressed archive.
+     * @param source Name of the archive, used in messages.
+     * @param prefix Prefix of the paths of the entries to unpack; empty for all entries.
+     * @param output Directory to unpack the entries to.
+     * @throws IOException If the archive could not be read or unpacked.
+     */
+    private void entries(final InputStream decompressed, final String source, final String prefix, final File output)
+        throws IOException {
+        final TarArchiveInputStream tar = new TarArchiveInputStream(decompressed);
+        final ExecutorService writer = Executors.newSingleThreadExecutor();
+        final Deque<Future<Void>> writes = new ArrayDeque<>(MAX_QUEUED);
+        try {
+            TarArchiveEntry entry = tar.getNextEntry();
+            while (entry != null) {
+                if (!entry.getName().startsWith(prefix)
+                    || !this.isSelected(entry.getName(), new TarStreamUnArchiver.EntryResource(entry))) {
+                    this.getLogger().debug("Skipping {}", entry.getName());
+                } else if (entry.isFile() && entry.getSize() <= MAX_QUEUED_SIZE) {
+                    TarStreamUnArchiver.await(writes, MAX_QUEUED - 1);
+                    final TarArchiveEntry file = entry;
+                    final byte[] content = new byte[(int) entry.getSize()];
+                    new DataInputStream(tar).readFully(content);
+                    writes.add(
+                        writer.submit(() -> this.extract(new ByteArrayInputStream(content), file, source, output))
+                    );
+                } else {
+                    TarStreamUnArchiver.await(writes, 0);
+                    this.extract(tar, entry, source, output);
+                }
+                entry = tar.getNextEntry();
+            }
+            TarStreamUnArchiver.await(writes, 0);
+        } catch (final ArchiverException ex) {
+            throw new IOException(String.format("Error while expanding %s", source), ex);
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts an entry of the archive.
+     * @param content Content of the entry.
+     * @param entry Entry of the archive.
+     * @param source Name of the archive.
+     * @param output Directory to extract the entry to.
+     * @return Nothing.
+     * @throws IOException If the entry could not be extracted.
+     */
+    private Void extract(final InputStream content, final TarArchiveEntry entry, final String source, final File output)
+        throws IOException {
+        this.extractFile(
+            new File(source), output, content, entry.getName(), entry.getModTime(),
+            entry.isDirectory(), entry.getMode() == 0 ? null : entry.getMode(),
+            entry.isSymbolicLink() ? entry.getLinkName() : null,
+            this.getFileMappers()
+        );
+        return null;
+    }
+
+    /**
+     * Waits for the oldest files read ahead to be written.
+     * @param writes Writes of the files read ahead, in order.
+     * @param left Number of writes left pending.
+     * @throws IOException If a file could not be written.
+     */
+    private static void await(final Deque<Future<Void>> writes, final int left) throws IOException {
+        while (writes.size() > left) {
+            ParallelZipUnArchiver.await(writes.poll());
+        }
+    }
+
+    /**
+     * Compression of a tar archive that can be unpacked from a stream.
+     */
+    enum Compression {
+
+        /**
+         * Uncompressed archive.
+         */
+        NONE(".tar") {
+            @Override
+            InputStream decompress(final InputStream archive) {
+                return archive;
+            }
+        },
+
+        /**
+         * Archive compressed with gzip, possibly in several members.
+         */
+        GZIP(".tar.gz", ".tgz") {
+            @Override
+            InputStream decompress(final InputStream archive) throws IOException {
+                return new GzipCompressorInputStream(archive, true);
+            }
+        },
+
+        /**
+         * Archive compressed with bzip2, possibly in several streams.
+         */
+        BZIP2(".tar.bz2", ".tbz2", ".tbz") {
+            @Override
+            InputStream decompress(final InputStream archive) throws IOException {
+                return new BZip2CompressorInputStream(archive, true);
+            }
+        },
+
+        /**
+         * Archive compressed with xz, possibly in several streams.
+         */
+        XZ(".tar.xz", ".txz") {
+            @Override
+            InputStream decompress(final InputStream archive) throws IOException {
+                return new XZCompressorInputStream(archive, true);
+            }
+        },
+
+        /**
+         * Archive compressed with zstd, possibly in several frames.
+         */
+        ZSTD(".tar.zst", ".tzst") {
+            @Override
+            InputStream decompress(final InputStream archive) throws IOException {
+                return new ZstdCompressorInputStream(archive);
+            }
+        };
+
+        /**
+         * Extensions of the archives with this compression.
+         */
+        private final String[] extensions;
+
+        /**
+         * Constructor.
+         * @param extensions Extensions of the archives with this compression.
+         */
+        Compression(final String... extensions) {
+            this.extensions = extensions;
+        }
+
+        /**
+         * Gets the compression of an archive from its name.
+         * @param name Name of the archive.
+         * @return Compression; empty if the file is not a tar archive that can be unpacked from a stream.
+         */
+        static Optional<TarStreamUnArchiver.Compression> forName(final String name) {
+            final String lower = name.toLowerCase(Locale.ROOT);
+            Optional<TarStreamUnArchiver.Compression> result = Optional.empty();
+            for (final TarStreamUnArchiver.Compression compression : TarStreamUnArchiver.Compression.values()) {
+                for (final String extension : compression.extensions) {
+                    if (lower.endsWith(extension)) {
+                        result = Optional.of(compression);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Decompresses an archive.
+         * @param archive Compressed archive.
+         * @return Uncompressed archive.
+         * @throws IOException If the compressed archive could not be read.
+         */
+        abstract InputStream decompress(InputStream archive) throws IOException;
+    }
+
+    /**
+     * Entry of the archive, as presented to the file selectors.
+     * Its content is not available, as the archive is read only once.
+     */
+    private static final class EntryResource extends AbstractPlexusIoResource {
+
+        /**
+         * Whether the entry is a symbolic link.
+         */
+        private final boolean symlink;
+
+        /**
+         * Constructor.
+         * @param entry Entry of the archive.
+         */
+        EntryResource(final TarArchiveEntry entry) {
+            super(
+                entry.getName(), entry.getModTime().getTime(), entry.isDirectory() ? 0L : entry.getSize(),
+                entry.isFile(), entry.isDirectory(), true
+            );
+            this.symlink = entry.isSymbolicLink();
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return this.symlink;
+        }
+
+        @Override
+        public InputStream getContents() {
+            throw new UnsupportedOperationException("Content of a streamed entry is not available");
+        }
+
+        @Override
+        public URL getURL() {
+            return null;
+        }
+    }
+}
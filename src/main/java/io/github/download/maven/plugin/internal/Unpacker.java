@@ -0,0 +1,323 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import io.github.download.maven.plugin.internal.cache.DownloadCache;
+import io.github.download.maven.plugin.internal.cache.Materialization;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import org.codehaus.plexus.archiver.UnArchiver;
+import org.codehaus.plexus.archiver.bzip2.BZip2UnArchiver;
+import org.codehaus.plexus.archiver.gzip.GZipUnArchiver;
+import org.codehaus.plexus.archiver.manager.ArchiverManager;
+import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
+import org.codehaus.plexus.archiver.snappy.SnappyUnArchiver;
+import org.codehaus.plexus.archiver.xz.XZUnArchiver;
+import org.codehaus.plexus.archiver.zip.AbstractZipUnArchiver;
+import org.codehaus.plexus.components.io.filemappers.FileMapper;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.fileselectors.IncludeExcludeFileSelector;
+
+/**
+ * Unpacks downloaded archives to the output directory.
+ */
+final class Unpacker {
+
+    /**
+     * Maven Archiver Manager.
+     */
+    private final ArchiverManager archiverManager;
+
+    /**
+     * Directory to unpack to.
+     */
+    private final File outputDirectory;
+
+    /**
+     * Mappers rewriting each target path, {@literal null} if none.
+     */
+    private final FileMapper[] fileMappers;
+
+    /**
+     * Patterns of the files to include.
+     */
+    private final String[] includes;
+
+    /**
+     * Patterns of the files to exclude.
+     */
+    private final String[] excludes;
+
+    /**
+     * Constructor.
+     * @param archiverManager Maven Archiver Manager.
+     * @param outputDirectory Directory to unpack to.
+     * @param fileMappers Mappers rewriting each target path, {@literal null} if none.
+     * @param includes Patterns of the files to include, empty to include all of them.
+     * @param excludes Patterns of the files to exclude, empty to exclude none.
+     */
+    Unpacker(
+        final ArchiverManager archiverManager, final File outputDirectory, final FileMapper[] fileMappers,
+        final String[] includes, final String[] excludes
+    ) {
+        this.archiverManager = archiverManager;
+        this.outputDirectory = outputDirectory;
+        this.fileMappers = fileMappers;
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Unpacks the given output file or cached file using an appropriate UnArchiver.
+     * @param outputFile The file intended to be unpacked.
+     * @param cachedFile An optional cached file that might be used instead of the output file.
+     * @throws NoSuchArchiverException If there is no suitable UnArchiver for the output file.
+     * @throws IllegalStateException If neither outputFile nor cachedFile exist for unpacking.
+     */
+    void unpack(final File outputFile, final Optional<File> cachedFile) throws NoSuchArchiverException {
+        final File source;
+        if (cachedFile.isPresent() && cachedFile.get().exists()) {
+            source = cachedFile.get();
+        } else if (outputFile.exists()) {
+            source = outputFile;
+        } else {
+            throw new IllegalStateException("No file to unpack");
+        }
+        this.extract(this.unarchiver(outputFile), source, outputFile, this.outputDirectory);
+        if (outputFile.exists()) {
+            outputFile.delete();
+        }
+    }
+
+    /**
+     * Unpacks the given output file or cached file, through the tree unpacked from the cached
+     * file if the download cache keeps the trees. Trees are kept for the same archive, name,
+     * includes, excludes and file mappers: the archive is only unpacked if the cache does not
+     * hold its tree yet. The files of the tree are then made in the output directory, skipping
+     * those already made from it.
+     * @param outputFile The file intended to be unpacked, deleted if present.
+     * @param cachedFile An optional cached file that might be used instead of the output file.
+     * @param trees The download cache, if it keeps the unpacked trees.
+     * @param materialization How the files of a tree are made in the output directory.
+     * @throws NoSuchArchiverException If there is no suitable UnArchiver for the output file.
+     * @throws IOException If the archive could not be unpacked or its tree made.
+     */
+    void unpack(
+        final File outputFile, final Optional<File> cachedFile, final Optional<DownloadCache> trees,
+        final Materialization materialization
+    ) throws NoSuchArchiverException, IOException {
+        if (trees.isPresent() && cachedFile.filter(File::isFile).isPresent()) {
+            final UnArchiver unarchiver = this.unarchiver(outputFile);
+            final File tree = trees.get().tree(
+                cachedFile.get(), this.options(outputFile),
+                directory -> this.extract(unarchiver, cachedFile.get(), outputFile, directory)
+            );
+            materialization.applyTree(tree, this.outputDirectory);
+            if (outputFile.exists()) {
+                outputFile.delete();
+            }
+        } else {
+            this.unpack(outputFile, cachedFile);
+        }
+    }
+
+    /**
+     * Unpacks the given archive to the output directory, leaving it in place.
+     * @param archive The archive to unpack.
+     * @throws NoSuchArchiverException If there is no suitable UnArchiver for the archive.
+     */
+    void unpack(final File archive) throws NoSuchArchiverException {
+        final UnArchiver unarchiver = this.unarchiver(archive);
+        unarchiver.setSourceFile(archive);
+        unarchiver.setDestDirectory(this.outputDirectory);
+        unarchiver.setFileMappers(this.fileMappers);
+        this.addFileSelectorIfNeeded(unarchiver);
+        unarchiver.extract();
+    }
+
+    /**
+     * Tells whether the given output file is an archive that can be unpacked while it is
+     * downloaded: a tar archive, possibly compressed with gzip, bzip2, xz or zstd.
+     * @param outputFile The file intended to be unpacked.
+     * @return True if it can be unpacked from a stream.
+     */
+    static boolean streamable(final File outputFile) {
+        return TarStreamUnArchiver.Compression.forName(outputFile.getName()).isPresent();
+    }
+
+    /**
+     * Starts unpacking the given output file while it is downloaded.
+     * @param outputFile The file intended to be unpacked, which is not written.
+     * @param copy File the archive is copied to while it is unpacked, if any.
+     * @return Stream to write the archive to as it is downloaded.
+     * @throws IOException If the copy of the archive could not be created.
+     * @throws IllegalStateException If the output file can't be unpacked from a stream.
+     */
+    UnpackingStream stream(final File outputFile, final Optional<File> copy) throws IOException {
+        final TarStreamUnArchiver unarchiver = new TarStreamUnArchiver(
+            TarStreamUnArchiver.Compression.forName(outputFile.getName())
+                .orElseThrow(() -> new IllegalStateException("Not a streamable archive")),
+            Runtime.getRuntime().availableProcessors()
+        );
+        unarchiver.setDestDirectory(this.outputDirectory);
+        unarchiver.setFileMappers(this.fileMappers);
+        this.addFileSelectorIfNeeded(unarchiver);
+        this.outputDirectory.mkdirs();
+        return new UnpackingStream(unarchiver, outputFile.getName(), copy);
+    }
+
+    /**
+     * Unpacks the given output file, if it is a zip archive, fetching only its central
+     * directory and the entries to unpack, which are unpacked from a sparse copy of the archive.
+     * The output file itself is not written.
+     * @param outputFile The file intended to be unpacked.
+     * @param zip Remote zip archive of the output file.
+     * @return True if unpacked; false if the output file is to be downloaded in full,
+     *  as it is not a zip archive or can't be fetched in byte ranges.
+     * @throws NoSuchArchiverException If there is no suitable UnArchiver for the output file.
+     */
+    boolean unpackRemotely(final File outputFile, final SparseZip zip) throws NoSuchArchiverException {
+        boolean result = false;
+        if (this.archiverManager.getUnArchiver(outputFile) instanceof AbstractZipUnArchiver) {
+            try {
+                result = zip.fetch(this.selector());
+                if (result) {
+                    this.unpack(outputFile, Optional.of(zip.file()));
+                }
+            } finally {
+                zip.file().delete();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets an appropriate UnArchiver of the given file. Zip archives are extracted,
+     * and compressed tar archives decompressed, by as many threads as there are processors.
+     * @param file The file intended to be unpacked.
+     * @return UnArchiver of the file.
+     * @throws NoSuchArchiverException If there is no suitable UnArchiver for the file.
+     */
+    private UnArchiver unarchiver(final File file) throws NoSuchArchiverException {
+        final Optional<TarStreamUnArchiver.Compression> tar = TarStreamUnArchiver.Compression.forName(file.getName());
+        UnArchiver result;
+        if (tar.isPresent()) {
+            result = new TarStreamUnArchiver(tar.get(), Runtime.getRuntime().availableProcessors());
+        } else {
+            result = this.archiverManager.getUnArchiver(file);
+        }
+        if (result instanceof AbstractZipUnArchiver) {
+            result = new ParallelZipUnArchiver(Runtime.getRuntime().availableProcessors());
+        }
+        return result;
+    }
+
+    /**
+     * Unpacks an archive to a directory.
+     * @param unarchiver UnArchiver of the output file.
+     * @param source The archive.
+     * @param outputFile The file intended to be unpacked, naming the file unpacked by a file unarchiver.
+     * @param directory Directory to unpack to.
+     */
+    private void extract(
+        final UnArchiver unarchiver, final File source, final File outputFile, final File directory
+    ) {
+        unarchiver.setSourceFile(source);
+        if (isFileUnArchiver(unarchiver)) {
+            final String name = outputFile.getName();
+            unarchiver.setDestFile(new File(directory, name.substring(0, name.lastIndexOf('.'))));
+        } else {
+            unarchiver.setDestDirectory(directory);
+        }
+        unarchiver.setFileMappers(this.fileMappers);
+        this.addFileSelectorIfNeeded(unarchiver);
+        unarchiver.extract();
+    }
+
+    /**
+     * Describes the options an archive is unpacked with: its name, which chooses its
+     * UnArchiver, the includes, the excludes and the file mappers, with their properties.
+     * @param outputFile The file intended to be unpacked.
+     * @return Description of the options.
+     * @throws IOException If the properties of a file mapper could not be read.
+     */
+    private String options(final File outputFile) throws IOException {
+        final StringBuilder options = new StringBuilder(outputFile.getName())
+            .append('\n').append(Arrays.toString(this.includes))
+            .append('\n').append(Arrays.toString(this.excludes));
+        for (final FileMapper mapper : Optional.ofNullable(this.fileMappers).orElse(new FileMapper[0])) {
+            options.append('\n').append(mapper.getClass().getName());
+            try {
+                for (final PropertyDescriptor property
+                    : Introspector.getBeanInfo(mapper.getClass(), Object.class).getPropertyDescriptors()) {
+                    if (property.getReadMethod() != null) {
+                        options.append(' ').append(property.getName()).append('=')
+                            .append(property.getReadMethod().invoke(mapper));
+                    }
+                }
+            } catch (final IntrospectionException | ReflectiveOperationException ex) {
+                throw new IOException(String.format("Could not describe %s", mapper.getClass().getName()), ex);
+            }
+        }
+        return options.toString();
+    }
+
+    /**
+     * Determines if the provided UnArchiver instance is of a supported file format
+     * that indicates it is a file unarchiver.
+     * @param unarchiver The UnArchiver instance to check.
+     * @return True if the unarchiver is an instance of supported types; false otherwise.
+     */
+    private static boolean isFileUnArchiver(final UnArchiver unarchiver) {
+        return unarchiver instanceof BZip2UnArchiver
+            || unarchiver instanceof GZipUnArchiver
+            || unarchiver instanceof SnappyUnArchiver
+            || unarchiver instanceof XZUnArchiver;
+    }
+
+    /**
+     * Adds a file selector to the provided UnArchiver if the includes or excludes
+     * arrays are not empty.
+     * @param unarchiver The UnArchiver where the file selector should be added.
+     */
+    private void addFileSelectorIfNeeded(final UnArchiver unarchiver) {
+        this.selector().ifPresent(selector -> unarchiver.setFileSelectors(new FileSelector[]{selector}));
+    }
+
+    /**
+     * Creates the file selector of the includes and excludes.
+     * @return File selector; empty if the includes and excludes arrays are empty.
+     */
+    private Optional<FileSelector> selector() {
+        Optional<FileSelector> result = Optional.empty();
+        if (this.includes.length != 0 || this.excludes.length != 0) {
+            final IncludeExcludeFileSelector fileSelector = new IncludeExcludeFileSelector();
+            if (this.includes.length != 0) {
+                fileSelector.setIncludes(this.includes);
+            }
+            if (this.excludes.length != 0) {
+                fileSelector.setExcludes(this.excludes);
+            }
+            result = Optional.of(fileSelector);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Stream of an archive being downloaded, unpacked as it is written by a thread of its own,
+ * and optionally copied to a file, such as the staging file of the download cache.
+ * <p>Closing the stream waits for the archive to be unpacked, and fails if it could not be.</p>
+ */
+final class UnpackingStream extends OutputStream {
+
+    /**
+     * Number of bytes of the archive buffered between the download and the unpacking.
+     */
+    private static final int PIPE_SIZE = 1024 * 1024;
+
+    /**
+     * End of the pipe the archive is written to.
+     */
+    private final PipedOutputStream pipe;
+
+    /**
+     * Stream to the copy of the archive, if any.
+     */
+    private final Optional<OutputStream> copy;
+
+    /**
+     * Unpacking of the archive.
+     */
+    private final FutureTask<Void> unpacking;
+
+    /**
+     * Whether the stream was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Starts unpacking an archive.
+     * @param unarchiver UnArchiver of the archive, configured with its destination.
+     * @param name Name of the archive.
+     * @param copy File the archive is copied to, if any.
+     * @throws IOException If the copy of the archive could not be created.
+     */
+    UnpackingStream(final TarStreamUnArchiver unarchiver, final String name, final Optional<File> copy)
+        throws IOException {
+        super();
+        this.pipe = new PipedOutputStream();
+        final InputStream archive = new PipedInputStream(this.pipe, PIPE_SIZE);
+        this.unpacking = new FutureTask<>(
+            () -> {
+                try (InputStream in = archive) {
+                    unarchiver.extract(in, name);
+                }
+                return null;
+            }
+        );
+        final Thread thread = new Thread(this.unpacking, String.format("unpack-%s", name));
+        thread.setDaemon(true);
+        thread.start();
+        if (copy.isPresent()) {
+            this.copy = Optional.of(Files.newOutputStream(copy.get().toPath()));
+        } else {
+            this.copy = Optional.empty();
+        }
+    }
+
+    @Override
+    public void write(final int value) throws IOException {
+        this.write(new byte[]{(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int count) throws IOException {
+        if (this.copy.isPresent()) {
+            this.copy.get().write(bytes, offset, count);
+        }
+        try {
+            this.pipe.write(bytes, offset, count);
+        } catch (final IOException ex) {
+            final IOException failure = this.unpacking.isDone() ? this.failure() : null;
+            if (failure != null) {
+                failure.addSuppressed(ex);
+                throw failure;
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!this.closed) {
+            this.closed = true;
+            try {
+                if (this.copy.isPresent()) {
+                    this.copy.get().close();
+                }
+            } finally {
+                this.pipe.close();
+            }
+            final IOException failure = this.failure();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Waits for the unpacking to be over and gets its failure.
+     * @return Failure of the unpacking; {@literal null} if it succeeded.
+     */
+    private IOException failure() {
+        IOException result = null;
+        try {
+            this.unpacking.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            result = new IOException("Interrupted while unpacking", ex);
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                result = (IOException) ex.getCause();
+            } else {
+                result = new IOException(ex.getCause().getMessage(), ex.getCause());
+            }
+        }
+        return result;
+    }
+}
@@ -15,12 +15,16 @@
  */
 package io.github.download.maven.plugin.internal;
 
+import io.github.download.maven.plugin.internal.cache.CacheEntryLock;
 import io.github.download.maven.plugin.internal.cache.DownloadCache;
+import io.github.download.maven.plugin.internal.cache.Materialization;
+import io.github.download.maven.plugin.internal.cache.Validators;
 import io.github.download.maven.plugin.internal.checksum.Checksums;
+import io.github.download.maven.plugin.internal.checksum.Digester;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,16 +33,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 import javax.inject.Inject;
-import org.apache.http.Header;
-import org.apache.http.config.RegistryBuilder;
-import org.apache.http.conn.socket.ConnectionSocketFactory;
-import org.apache.http.conn.socket.PlainConnectionSocketFactory;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.message.BasicHeader;
-import org.apache.http.ssl.SSLContexts;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -48,21 +45,9 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.shared.utils.StringUtils;
-import org.codehaus.plexus.archiver.UnArchiver;
-import org.codehaus.plexus.archiver.bzip2.BZip2UnArchiver;
-import org.codehaus.plexus.archiver.gzip.GZipUnArchiver;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
 import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
-import org.codehaus.plexus.archiver.snappy.SnappyUnArchiver;
-import org.codehaus.plexus.archiver.xz.XZUnArchiver;
 import org.codehaus.plexus.components.io.filemappers.FileMapper;
-import org.codehaus.plexus.components.io.fileselectors.FileSelector;
-import org.codehaus.plexus.components.io.fileselectors.IncludeExcludeFileSelector;
-import org.eclipse.aether.repository.Authentication;
-import org.eclipse.aether.repository.AuthenticationContext;
-import org.eclipse.aether.repository.Proxy;
-import org.eclipse.aether.repository.RemoteRepository;
-import org.eclipse.aether.transfer.TransferListener;
 import org.sonatype.plexus.build.incremental.BuildContext;
 import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
 
@@ -79,13 +64,8 @@ import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
 public final class WGetMojo extends AbstractMojo {
 
     /**
-     * Http connection pool.
-     */
-    private static final PoolingHttpClientConnectionManager CONN_POOL;
-
-    /**
-     * A map of file caches by their location paths.
-     * Ensures one cache instance per path and enables safe execution in parallel
+     * A map of file caches by their location paths, index and layout.
+     * Ensures one cache instance per configuration and enables safe execution in parallel
      * builds against the same cache.
      */
     private static final Map<String, DownloadCache> DOWNLOAD_CACHES = new ConcurrentHashMap<>();
@@ -96,10 +76,18 @@ public final class WGetMojo extends AbstractMojo {
      */
     private static final Map<String, Lock> FILE_LOCKS = new ConcurrentHashMap<>();
 
+    /**
+     * A map of locks by identities of the fetched resources.
+     * Ensures a resource requested concurrently by several executions is
+     * only downloaded by one of them, the others taking it from the cache.
+     */
+    private static final Map<String, Lock> FLIGHTS = new ConcurrentHashMap<>();
+
     /**
      * Represent the URL to fetch information from.
+     * Required unless {@link #downloads} are configured.
      */
-    @Parameter(alias = "url", property = "download.url", required = true)
+    @Parameter(alias = "url", property = "download.url")
     private URI uri;
 
     /**
@@ -170,6 +158,38 @@ public final class WGetMojo extends AbstractMojo {
     @Parameter(property = "download.unpackWhenChanged", defaultValue = "false")
     private boolean unpackWhenChanged;
 
+    /**
+     * Whether to unpack tar archives, possibly compressed with gzip, bzip2, xz or zstd, while they
+     * are downloaded rather than once they are. The archive is then not written to the output
+     * directory, and only written to the download cache if it is used.
+     * <p>The checksums of the archive are computed while it is downloaded, so a mismatch fails
+     * the build after the archive was unpacked. Other archives are unpacked as usual.</p>
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.unpack.stream", defaultValue = "false")
+    private boolean streamUnpack;
+
+    /**
+     * Whether to unpack zip archives remotely, when the server serves them in byte ranges:
+     * only their central directory and the entries selected by {@link #includes} and
+     * {@link #excludes} are downloaded. The archive is then neither written to the output
+     * directory nor to the download cache.
+     * <p>Archives with checksums, which cover the whole archive, are downloaded in full,
+     * as are archives of servers that don't accept byte ranges.</p>
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.unpack.remote", defaultValue = "false")
+    private boolean remoteUnpack;
+
+    /**
+     * Whether to keep the trees unpacked from cached archives in the download cache, by digest of the archive,
+     * {@link #includes}, {@link #excludes} and {@link #fileMappers}, and make their files in the output directory
+     * as set by {@link #materialization}, skipping those already made, instead of unpacking the archive again.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.unpack.cache", defaultValue = "false")
+    private boolean unpackCache;
+
     /**
      * Server Id from settings file to use for authentication.
      * Only one of serverId or (username/password) may be supplied
@@ -217,6 +237,65 @@ public final class WGetMojo extends AbstractMojo {
     @Parameter(property = "download.cache.directory")
     private File cacheDirectory;
 
+    /**
+     * Type of the index of the cache: {@code journal}, an append-only log of the entries
+     * replayed in memory, or {@code mapped}, a memory-mapped hash table looked up in place,
+     * which suits caches with many entries shared by many builds. A {@code mapped} index is
+     * created from the {@code journal} one; executions sharing a cache should use the same type.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.cache.index", defaultValue = DownloadCache.JOURNAL_INDEX)
+    private String cacheIndex;
+
+    /**
+     * Layout of the files installed in the cache: {@code named}, each file under the name it is
+     * downloaded to and the hash of its URL, or {@code content}, each content once under its
+     * SHA-256 digest. With {@code content}, files downloaded from mirrors or URL variants are stored
+     * once, and a file with a supplied {@code sha256} found in the cache is not downloaded again,
+     * even from a URL never downloaded from before.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.cache.layout", defaultValue = DownloadCache.NAMED_LAYOUT)
+    private String cacheLayout;
+
+    /**
+     * Whether to hash cached files again on every lookup. By default, a cached file is
+     * only hashed when it changed since its digests were verified, based on its size,
+     * modification time and file key. With {@link #alwaysVerifyChecksum}, a cached file is
+     * checked against the CRC32 recorded once its digests were verified instead.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.cache.paranoid", defaultValue = "false")
+    private boolean paranoidCache;
+
+    /**
+     * Maximum size of the files in the cache, in bytes; {@code 0} for no limit. Once a file
+     * is downloaded, the least recently used files are evicted until the cache fits.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.cache.maxSize", defaultValue = "0")
+    private long cacheMaxSize;
+
+    /**
+     * Maximum number of days since a file of the cache was last used; {@code 0} for no limit.
+     * Files unused for longer are evicted once a file is downloaded.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.cache.maxAge", defaultValue = "0")
+    private long cacheMaxAge;
+
+    /**
+     * How files are made from the cache and installed into it: {@code copy}, {@code hardlink},
+     * {@code reflink} (a copy-on-write clone, on file systems supporting it) or {@code symlink}
+     * (files installed into the cache are copied or linked as with {@code hardlink} instead).
+     * Falls back to a copy whenever the file system does not support the link, such as
+     * across devices. Linked output files must not be modified in place, so output files
+     * given {@link #outputFilePermissions} are copied instead of linked.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.cache.materialization", defaultValue = Materialization.COPY)
+    private String materialization;
+
     /**
      * Flag to determine whether to fail on an unsuccessful download.
      */
@@ -241,6 +320,9 @@ public final class WGetMojo extends AbstractMojo {
      * Use this option in order to ensure that a new download attempt is made after a previously
      * interrupted build or
      * network connection or some other event corrupted a file.
+     * <p>
+     * Cached copies are checked against a CRC32 recorded in the cache once their digests were
+     * verified, rather than hashed again with the supplied checksums; see {@link #paranoidCache}.
      */
     @Parameter(property = "alwaysVerifyChecksum", defaultValue = "false")
     private boolean alwaysVerifyChecksum;
@@ -306,6 +388,8 @@ public final class WGetMojo extends AbstractMojo {
      * Maximum time (ms) to wait to acquire a file lock.
      * Customize the time when using the plugin to download the same file
      * from several submodules in parallel build.
+     * It also bounds the wait for another execution or another process sharing the cache
+     * downloading the same resource, after which the resource is downloaded again.
      */
     @Parameter(property = "maxLockWaitTime", defaultValue = "30000")
     private long maxLockWaitTime;
@@ -361,24 +445,87 @@ public final class WGetMojo extends AbstractMojo {
     @Parameter(property = "download.outputFilePermissions")
     private String outputFilePermissions;
 
-    static {
-        CONN_POOL = new PoolingHttpClientConnectionManager(
-            RegistryBuilder.<ConnectionSocketFactory>create()
-                .register("http", PlainConnectionSocketFactory.getSocketFactory())
-                .register("https", new SSLConnectionSocketFactory(
-                    SSLContexts.createSystemDefault(),
-                    SSLProtocols.supported(),
-                    null,
-                    SSLConnectionSocketFactory.getDefaultHostnameVerifier()
-                ))
-                .build(),
-            null,
-            null,
-            null,
-            1,
-            TimeUnit.MINUTES
-        );
-    }
+    /**
+     * Maximum number of pooled HTTP connections.
+     * <p>Connections are pooled and kept alive across all executions in the build
+     * that share the same connection settings (timeouts, proxy, TLS verification
+     * and redirect handling).</p>
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.http.maxConnections", defaultValue = "20")
+    private int maxConnections;
+
+    /**
+     * Maximum number of pooled HTTP connections to a single host.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.http.maxRouteConnections", defaultValue = "10")
+    private int maxRouteConnections;
+
+    /**
+     * Whether files are downloaded over HTTP/2, all the downloads from the same origin
+     * being multiplexed over a single connection.
+     * <p>HTTP/2 is negotiated over TLS, and used with prior knowledge over plain HTTP,
+     * so the server must support it. Files accessed through a proxy are still
+     * downloaded over HTTP/1.1, and so are byte ranges of segmented downloads.</p>
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.http.http2", defaultValue = "false")
+    private boolean http2;
+
+    /**
+     * Number of byte ranges to fetch in parallel when downloading a large file.
+     * <p>With a value greater than 1, the server is first asked whether it accepts
+     * byte ranges. If it does, and the file is at least twice as big as
+     * {@link #segmentSize}, the file is fetched in up to this many segments over
+     * separate connections. Otherwise it is downloaded as a single stream.</p>
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.segments", defaultValue = "1")
+    private int segments;
+
+    /**
+     * Minimum size in bytes of a segment when downloading a file in parallel byte ranges.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.segmentSize", defaultValue = "10485760")
+    private long segmentSize;
+
+    /**
+     * Whether a file found in the cache is checked with the server before being used.
+     * <p>The cached file is requested again with the {@code ETag} and {@code Last-Modified}
+     * validators it was downloaded with. If the server answers it is not modified, the
+     * cached file is used, otherwise the new content is downloaded and replaces it.
+     * Useful for URLs with "volatile" content, such as nightly snapshots.</p>
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.cache.revalidate", defaultValue = "false")
+    private boolean revalidate;
+
+    /**
+     * Files to download in the same execution, in addition to the one of {@link #uri} if set.
+     * <p>Each entry takes a {@code uri} and, optionally, its own {@code outputFileName},
+     * {@code md5}, {@code sha1}, {@code sha256}, {@code sha512}, {@code unpack} and
+     * {@code headers}, the latter being sent along with {@link #headers}. All the other
+     * options are shared by the entries, which are downloaded in parallel, up to
+     * {@link #concurrency} at a time. A failed entry does not stop the others: the
+     * failures are reported once all the entries are over.</p>
+     * @since 2.0.1
+     */
+    @Parameter
+    private List<Download> downloads = new ArrayList<>(0);
+
+    /**
+     * Maximum number of {@link #downloads} running at the same time.
+     * @since 2.0.1
+     */
+    @Parameter(property = "download.concurrency", defaultValue = "4")
+    private int concurrency;
+
+    /**
+     * HTTP clients of the requests by connection configuration, the shared pooled ones.
+     */
+    private Function<HttpClientPool.Key, CloseableHttpClient> clients = HttpClientPool::client;
 
     /**
      * Ensures that the output directory does not contain unresolved path variables, i.e. when
@@ -400,14 +547,11 @@ public final class WGetMojo extends AbstractMojo {
             this.outputDirectory = new File(".");
             try {
                 this.getLog().info(
-                    String.format(
-                        "Adjusting outputDirectory to %s", this.outputDirectory.getCanonicalPath()
-                    )
+                    String.format("Adjusting outputDirectory to %s", this.outputDirectory.getCanonicalPath())
                 );
             } catch (final IOException exc) {
                 throw new MojoExecutionException(
-                    "Current working directory could not be resolved. This should never happen.",
-                    exc
+                    "Current working directory could not be resolved. This should never happen.", exc
                 );
             }
         }
@@ -420,8 +564,7 @@ public final class WGetMojo extends AbstractMojo {
      */
     @SuppressWarnings(
         {
-            "checkstyle:ReturnCount", "checkstyle:JavaNCSS", "checkstyle:NPathComplexity",
-            "checkstyle:ExecutableStatementCount", "checkstyle:NestedIfDepth", "checkstyle:IllegalCatch"
+            "checkstyle:ReturnCount", "checkstyle:NPathComplexity", "checkstyle:ExecutableStatementCount"
         }
     )
     @Override
@@ -450,6 +593,10 @@ public final class WGetMojo extends AbstractMojo {
         if (this.retries < 1) {
             throw new MojoFailureException("retries must be at least 1");
         }
+        if (this.concurrency < 1) {
+            throw new MojoFailureException("concurrency must be at least 1");
+        }
+        final List<Download> entries = this.entries();
         final Optional<DownloadCache> cache;
         if (!this.skipCache) {
             if (this.cacheDirectory == null) {
@@ -460,10 +607,21 @@ public final class WGetMojo extends AbstractMojo {
                     String.format("cacheDirectory is not a directory: %s", this.cacheDirectory.getAbsolutePath())
                 );
             }
+            if (!DownloadCache.JOURNAL_INDEX.equals(this.cacheIndex)
+                && !DownloadCache.MAPPED_INDEX.equals(this.cacheIndex)) {
+                throw new MojoFailureException(String.format("Unsupported cacheIndex: %s", this.cacheIndex));
+            }
+            if (!DownloadCache.NAMED_LAYOUT.equals(this.cacheLayout)
+                && !DownloadCache.CONTENT_LAYOUT.equals(this.cacheLayout)) {
+                throw new MojoFailureException(String.format("Unsupported cacheLayout: %s", this.cacheLayout));
+            }
+            if (!Materialization.supports(this.materialization)) {
+                throw new MojoFailureException(String.format("Unsupported materialization: %s", this.materialization));
+            }
             this.getLog().debug(String.format("Cache is: %s", this.cacheDirectory.getAbsolutePath()));
             cache = Optional.of(DOWNLOAD_CACHES.computeIfAbsent(
-                this.cacheDirectory.getAbsolutePath(),
-                directory -> new DownloadCache(this.cacheDirectory, this.getLog())
+                String.join("|", this.cacheDirectory.getAbsolutePath(), this.cacheIndex, this.cacheLayout),
+                directory -> new DownloadCache(this.cacheDirectory, this.getLog(), this.cacheIndex, this.cacheLayout)
             ));
         } else {
             this.getLog().debug("Cache is skipped");
@@ -477,26 +635,42 @@ public final class WGetMojo extends AbstractMojo {
         } else {
             this.outputDirectory.mkdirs();
         }
-        if (this.outputFileName == null) {
-            this.outputFileName = FileNameUtils.getOutputFileName(this.uri);
+        new DownloadBatch(this.concurrency, this.getLog()).run(entries, entry -> this.download(entry, cache));
+    }
+
+    /**
+     * Downloads one of the files of the execution.
+     * @param entry File to download.
+     * @param cache Download cache, empty if skipped.
+     * @throws MojoExecutionException if an error is occurring in this mojo.
+     * @throws MojoFailureException if an error is occurring in this mojo.
+     */
+    @SuppressWarnings(
+        {
+            "checkstyle:ReturnCount", "checkstyle:JavaNCSS", "checkstyle:NPathComplexity",
+            "checkstyle:ExecutableStatementCount", "checkstyle:NestedIfDepth", "checkstyle:IllegalCatch"
         }
-        final File outputFile = new File(this.outputDirectory, this.outputFileName);
-        final Lock fileLock = FILE_LOCKS.computeIfAbsent(
-            outputFile.getAbsolutePath(), ignored -> new ReentrantLock()
-        );
-        final Checksums checksums = new Checksums(
-            this.md5, this.sha1, this.sha256, this.sha512, this.getLog()
+    )
+    private void download(final Download entry, final Optional<DownloadCache> cache)
+        throws MojoExecutionException, MojoFailureException {
+        final File outputFile = new File(this.outputDirectory, entry.outputFileName());
+        final Lock fileLock = FILE_LOCKS.computeIfAbsent(outputFile.getAbsolutePath(), ignored -> new ReentrantLock());
+        final Checksums checksums = entry.checksums(this.getLog());
+        final boolean unpackEntry = entry.unpack(this.unpack);
+        final Materialization files = new Materialization(this.materialization, this.getLog())
+            .unshared(this.outputFilePermissions != null);
+        final Lock flight = FLIGHTS.computeIfAbsent(
+            entry.identity(this.headers, this.serverId, this.username), ignored -> new ReentrantLock()
         );
         // DO
         boolean lockAcquired = false;
+        boolean inFlight = false;
+        Optional<CacheEntryLock> entryLock = Optional.empty();
         try {
-            lockAcquired = fileLock.tryLock(
-                this.maxLockWaitTime, TimeUnit.MILLISECONDS
-            );
+            lockAcquired = fileLock.tryLock(this.maxLockWaitTime, TimeUnit.MILLISECONDS);
             if (!lockAcquired) {
                 final String message = String.format(
-                    "Could not acquire lock for File: %s in %dms",
-                    outputFile, this.maxLockWaitTime
+                    "Could not acquire lock for File: %s in %dms", outputFile, this.maxLockWaitTime
                 );
                 if (this.failOnError) {
                     throw new MojoExecutionException(message);
@@ -531,18 +705,27 @@ public final class WGetMojo extends AbstractMojo {
             }
             Optional<File> cachedFile = Optional.empty();
             boolean fileWasCached = false;
+            Validators downloaded = null;
+            Optional<File> staged = Optional.empty();
+            boolean unpacked = false;
             if (!haveFile) {
-                cachedFile = cache.map(c -> c.getArtifact(this.uri, checksums));
+                inFlight = cache.isPresent() && this.joinFlight(flight, entry);
+                if (inFlight) {
+                    entryLock = cache.get().lock(entry.uri(), this.maxLockWaitTime);
+                }
+                if (entryLock.isPresent()) {
+                    staged = Optional.of(cache.get().staging(entry.uri()));
+                }
+                cachedFile = cache.map(c -> c.getArtifact(entry.uri(), checksums, this.cacheVerification()));
                 fileWasCached = cachedFile.map(File::exists).orElse(false);
+                Validators conditions = Validators.NONE;
+                if (fileWasCached && this.revalidate && !this.session.getRepositorySession().isOffline()) {
+                    conditions = cache.get().getValidators(entry.uri());
+                    fileWasCached = false;
+                }
                 if (fileWasCached) {
                     this.getLog().debug("File was cached: " + cachedFile.get().getAbsolutePath());
-                    if (!this.unpack && !this.unpackWhenChanged) {
-                        // only copy cached file to output file
-                        // if it won't be unpacked, otherwise unpack
-                        // directly from cached file below
-                        this.getLog().debug("Copying cached file to " + outputFile.getAbsolutePath());
-                        Files.copy(cachedFile.get().toPath(), outputFile.toPath());
-                    }
+                    this.useCachedFile(cachedFile.get(), outputFile, unpackEntry, files);
                 } else {
                     if (this.session.getRepositorySession().isOffline()) {
                         if (this.failOnError) {
@@ -552,11 +735,37 @@ public final class WGetMojo extends AbstractMojo {
                             this.getLog().warn("Ignoring download failure.");
                         }
                     }
-                    boolean done = false;
+                    final boolean streaming = unpackEntry && this.streamUnpack && conditions.isEmpty()
+                        && Unpacker.streamable(outputFile);
+                    final boolean remote = unpackEntry && this.remoteUnpack && conditions.isEmpty()
+                        && checksums.isEmpty();
+                    unpacked = remote && this.unpacker().unpackRemotely(
+                        outputFile, this.requester(entry, Digester.none(), conditions)
+                            .sparseZip(outputFile, entry.headers(this.headers))
+                    );
+                    boolean done = unpacked;
+                    IOException failure = null;
                     for (int retriesLeft = this.retries; !done && retriesLeft > 0; --retriesLeft) {
                         try {
-                            this.doGet(outputFile);
-                            checksums.validate(outputFile);
+                            final Digester digester = checksums.digester();
+                            final Optional<Validators> received;
+                            if (streaming) {
+                                received = this.doStream(entry, outputFile, staged, digester);
+                            } else {
+                                received = this.requester(entry, digester, conditions)
+                                    .download(staged.orElse(outputFile), entry.headers(this.headers));
+                            }
+                            if (received.isPresent() && streaming) {
+                                checksums.validate(digester);
+                                downloaded = received.get();
+                                unpacked = true;
+                            } else if (received.isPresent()) {
+                                checksums.validate(staged.orElse(outputFile), digester);
+                                downloaded = received.get();
+                            } else {
+                                fileWasCached = true;
+                                this.useCachedFile(cachedFile.get(), outputFile, unpackEntry, files);
+                            }
                             done = true;
                         } catch (final DownloadFailureException ex) {
                             // treating HTTP codes >= 500 as transient and thus always retriable
@@ -566,18 +775,18 @@ public final class WGetMojo extends AbstractMojo {
                                 this.getLog().warn(ex.getMessage());
                             }
                         } catch (final IOException ex) {
-                            if (this.failOnError) {
-                                throw new MojoExecutionException(ex.getMessage(), ex);
-                            } else {
-                                this.getLog().warn(ex.getMessage());
-                            }
+                            // transfer failures are retried, resuming from the partial file
+                            failure = ex;
+                            this.getLog().warn(ex.getMessage());
                         }
                         if (!done) {
                             this.getLog().warn(String.format("Retrying (%d more)", retriesLeft - 1));
                         }
                     }
                     if (!done) {
-                        if (this.failOnError) {
+                        if (this.failOnError && failure != null) {
+                            throw new MojoExecutionException(failure.getMessage(), failure);
+                        } else if (this.failOnError) {
                             throw new MojoFailureException(
                                 String.format("Could not get content after %d failed attempts.", this.retries)
                             );
@@ -586,22 +795,40 @@ public final class WGetMojo extends AbstractMojo {
                             return;
                         }
                     }
+                    if (downloaded != null && staged.isPresent()) {
+                        cachedFile = Optional.of(
+                            cache.get().publish(entry.uri(), staged.get(), outputFile.getName(), checksums, downloaded)
+                        );
+                        this.useCachedFile(cachedFile.get(), outputFile, unpackEntry, files);
+                    } else if (downloaded != null) {
+                        cachedFile = Optional.empty();
+                    }
                 }
             }
             if (cache.isPresent()) {
-                cache.get().install(this.uri, outputFile, checksums);
+                if (!unpacked && (downloaded == null || !staged.isPresent())) {
+                    cache.get().install(entry.uri(), outputFile, checksums, downloaded, files);
+                }
+                if (downloaded != null) {
+                    cache.get().evict(this.cacheMaxSize, TimeUnit.DAYS.toMillis(this.cacheMaxAge));
+                }
             }
-            new FilePermissions(this.outputFilePermissions, this.getLog()).applyTo(outputFile);
-            if (this.unpack || this.unpackWhenChanged) {
-                if (!this.unpack && this.unpackWhenChanged && fileWasCached) {
+            if (!unpacked) {
+                new FilePermissions(this.outputFilePermissions, this.getLog()).applyTo(outputFile);
+            }
+            if (unpackEntry || this.unpackWhenChanged) {
+                if (!unpackEntry && this.unpackWhenChanged && fileWasCached) {
                     this.getLog().info("Skipping unpacking as the file has not changed");
+                } else if (unpacked) {
+                    this.buildContext.refresh(this.outputDirectory);
                 } else {
                     if (this.unpackWhenChanged && fileWasCached) {
-                        this.getLog().info(
-                            "Unpacking even though unchanged cache file exists because unpack = true"
-                        );
+                        this.getLog().info("Unpacking even though unchanged cache file exists because unpack = true");
                     }
-                    this.unpack(outputFile, cachedFile);
+                    this.unpacker().unpack(
+                        outputFile, cachedFile, cache.filter(trees -> this.unpackCache),
+                        new Materialization(this.materialization, this.getLog())
+                    );
                     this.buildContext.refresh(this.outputDirectory);
                 }
             } else {
@@ -616,6 +843,10 @@ public final class WGetMojo extends AbstractMojo {
         } catch (final Exception exc) {
             throw new MojoExecutionException("General error: ", exc);
         } finally {
+            entryLock.ifPresent(CacheEntryLock::close);
+            if (inFlight) {
+                flight.unlock();
+            }
             if (lockAcquired) {
                 fileLock.unlock();
             }
@@ -623,110 +854,130 @@ public final class WGetMojo extends AbstractMojo {
     }
 
     /**
-     * Unpacks the given output file or cached file using an appropriate UnArchiver.
-     * @param outputFile The file intended to be unpacked.
-     * @param cachedFile An optional cached file that might be used instead of the output file.
-     * @throws NoSuchArchiverException If there is no suitable UnArchiver for the output file.
-     * @throws IllegalStateException If neither outputFile nor cachedFile exist for unpacking.
+     * Waits for a concurrent download of the same resource to be over, so that
+     * its result is taken from the cache, and makes this download the one in flight.
+     * @param flight Lock of the resource.
+     * @param entry File to download.
+     * @return True if the lock of the resource was acquired; false if the wait timed out,
+     *  in which case the resource is downloaded anyway.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private boolean joinFlight(final Lock flight, final Download entry) throws InterruptedException {
+        boolean acquired = flight.tryLock();
+        if (!acquired) {
+            this.getLog().info(String.format("Waiting for the download of %s in progress", entry));
+            acquired = flight.tryLock(this.maxLockWaitTime, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                this.getLog().warn(
+                    String.format("Download of %s still in progress after %dms", entry, this.maxLockWaitTime)
+                );
+            }
+        }
+        return acquired;
+    }
+
+    /**
+     * Tells how far the digests already verified for cached files are trusted.
+     * @return Verification of the download cache.
      */
-    private void unpack(final File outputFile, final Optional<File> cachedFile) throws NoSuchArchiverException {
-        final UnArchiver unarchiver = this.archiverManager.getUnArchiver(outputFile);
-        if (cachedFile.isPresent() && cachedFile.get().exists()) {
-            unarchiver.setSourceFile(cachedFile.get());
-        } else if (outputFile.exists()) {
-            unarchiver.setSourceFile(outputFile);
-        } else {
-            throw new IllegalStateException("No file to unpack");
+    private String cacheVerification() {
+        String verification = DownloadCache.STAMP_VERIFICATION;
+        if (this.paranoidCache) {
+            verification = DownloadCache.FULL_VERIFICATION;
+        } else if (this.alwaysVerifyChecksum || this.checkSignature) {
+            verification = DownloadCache.CRC_VERIFICATION;
         }
-        if (isFileUnArchiver(unarchiver)) {
-            unarchiver.setDestFile(
-                new File(
-                    this.outputDirectory, this.outputFileName.substring(0, this.outputFileName.lastIndexOf('.'))
-                )
+        return verification;
+    }
+
+    /**
+     * Lists the files to download.
+     * @return The file of {@link #uri}, if set, followed by the {@link #downloads}.
+     * @throws MojoExecutionException If there is nothing to download.
+     */
+    private List<Download> entries() throws MojoExecutionException {
+        final List<Download> entries = new ArrayList<>(this.downloads.size() + 1);
+        if (this.uri != null) {
+            entries.add(
+                new Download().withUri(this.uri).withOutputFileName(this.outputFileName)
+                    .withChecksums(this.md5, this.sha1, this.sha256, this.sha512)
             );
-        } else {
-            unarchiver.setDestDirectory(this.outputDirectory);
         }
-        unarchiver.setFileMappers(this.fileMappers);
-        this.addFileSelectorIfNeeded(unarchiver);
-        unarchiver.extract();
-        if (outputFile.exists()) {
-            outputFile.delete();
+        entries.addAll(this.downloads);
+        if (entries.isEmpty()) {
+            throw new MojoExecutionException("Specify either uri or downloads");
+        }
+        if (entries.stream().anyMatch(entry -> entry.uri() == null)) {
+            throw new MojoExecutionException("Every entry of downloads must specify a uri");
         }
+        return entries;
     }
 
     /**
-     * Determines if the provided UnArchiver instance is of a supported file format
-     * that indicates it is a file unarchiver.
-     * @param unarchiver The UnArchiver instance to check.
-     * @return True if the unarchiver is an instance of supported types; false otherwise.
-     */
-    private static boolean isFileUnArchiver(final UnArchiver unarchiver) {
-        return unarchiver instanceof BZip2UnArchiver
-            || unarchiver instanceof GZipUnArchiver
-            || unarchiver instanceof SnappyUnArchiver
-            || unarchiver instanceof XZUnArchiver;
+     * Uses the cached file in place of the output file.
+     * The output file is only made from the cached file, as set by {@link #materialization},
+     * if it won't be unpacked, otherwise it is unpacked directly from the cache.
+     * @param cachedFile The cached file.
+     * @param outputFile The output file.
+     * @param unpackEntry Whether the file is to be unpacked.
+     * @param files Materialization of the output file.
+     * @throws IOException If the output file could not be made from the cached file.
+     */
+    private void useCachedFile(
+        final File cachedFile, final File outputFile, final boolean unpackEntry, final Materialization files
+    ) throws IOException {
+        if (!unpackEntry && !this.unpackWhenChanged) {
+            this.getLog().debug(String.format("Making %s from cached file", outputFile.getAbsolutePath()));
+            files.apply(cachedFile, outputFile);
+        }
     }
 
     /**
-     * Creates a remote repository with the given server ID and URI.
-     * @param serverId The server ID to associate with the remote repository. If blank, certain default
-     *  settings will be applied based on the URI's scheme and host.
-     * @param uri The URI of the remote repository.
-     * @return A configured instance of RemoteRepository.
+     * Creates the unpacker of the downloaded archives.
+     * @return Unpacker to the output directory.
      */
-    private static RemoteRepository createRemoteRepository(final String serverId, final URI uri) {
-        return new RemoteRepository.Builder(
-            StringUtils.isBlank(serverId) ? null : serverId,
-            StringUtils.isBlank(serverId) ? uri.getScheme() : null,
-            StringUtils.isBlank(serverId) ? String.format("%s://%s", uri.getScheme(), uri.getHost()) : null
-        ).build();
+    private Unpacker unpacker() {
+        return new Unpacker(
+            this.archiverManager, this.outputDirectory, this.fileMappers, this.includes, this.excludes
+        );
     }
 
     /**
-     * Determines whether to show transfer progress. Progress is shown if the
-     * session is interactive and the transfer listener is null or not a QuietMavenTransferListener.
-     * @param session The current Maven session.
-     * @return Whether to show transfer progress.
+     * Downloads an archive from a remote repository and unpacks it as it arrives,
+     * without writing it to the output file.
+     * @param entry The archive to download.
+     * @param outputFile The file the archive would be saved to, which is not written.
+     * @param staged File of the download cache the archive is copied to, if any.
+     * @param digester Digester fed with the content while it is downloaded.
+     * @return Validators of the downloaded content.
+     * @throws IOException If an I/O error occurs during the download or the unpacking.
+     * @throws MojoExecutionException If an error specific to Maven Mojo execution occurs.
      */
-    private static boolean showTransferProgress(final MavenSession session) {
-        final boolean result;
-        if (session.getSettings().isInteractiveMode()) {
-            final TransferListener transferListener = session.getRequest().getTransferListener();
-            if (transferListener == null) {
-                result = true;
-            } else {
-                result = !"QuietMavenTransferListener".equals(transferListener.getClass().getSimpleName());
-            }
-        } else {
-            result = false;
+    private Optional<Validators> doStream(
+        final Download entry, final File outputFile, final Optional<File> staged, final Digester digester
+    ) throws IOException, MojoExecutionException {
+        final HttpFileRequester fileRequester = this.requester(entry, digester, Validators.NONE);
+        try (UnpackingStream out = this.unpacker().stream(outputFile, staged)) {
+            return fileRequester.stream(out, entry.headers(this.headers));
         }
-        return result;
     }
 
     /**
-     * Downloads a file from a remote repository and stores it to the specified output file.
-     * @param outputFile The file to which the downloaded content will be saved.
-     * @throws IOException If an I/O error occurs during the file download.
+     * Creates the requester of a file from a remote repository.
+     * @param entry The file to download.
+     * @param digester Digester fed with the content while it is downloaded.
+     * @param conditions Validators of the cached file, to download the content only if modified.
+     * @return Requester of the file.
      * @throws MojoExecutionException If an error specific to Maven Mojo execution occurs.
      */
-    private void doGet(final File outputFile) throws IOException, MojoExecutionException {
-        final HttpFileRequester.Builder fileRequesterBuilder = new HttpFileRequester.Builder();
-        final RemoteRepository repository = createRemoteRepository(this.serverId, this.uri);
-        // set proxy if present
-        Optional.ofNullable(this.session.getRepositorySession().getProxySelector())
-            .map(selector -> selector.getProxy(repository))
-            .ifPresent(proxy -> this.addProxy(fileRequesterBuilder, repository, proxy));
-        Optional.ofNullable(this.session.getRepositorySession().getAuthenticationSelector())
-            .map(selector -> selector.getAuthentication(repository))
-            .ifPresent(auth -> this.addAuthentication(fileRequesterBuilder, repository, auth));
-        final HttpFileRequester fileRequester = fileRequesterBuilder
-            .withProgressReport(showTransferProgress(this.session)
-                ? new LoggingProgressReport(this.getLog())
-                : new SilentProgressReport(this.getLog()))
+    private HttpFileRequester requester(
+        final Download entry, final Digester digester, final Validators conditions
+    ) throws MojoExecutionException {
+        return new RepositoryAccess(this.session, this.getLog())
+            .configure(new HttpFileRequester.Builder(), this.serverId, entry.uri())
             .withConnectTimeout(this.readTimeOut)
             .withSocketTimeout(this.readTimeOut)
-            .withUri(this.uri)
+            .withUri(entry.uri())
             .withUsername(this.username)
             .withPassword(this.password)
             .withServerId(this.serverId)
@@ -736,101 +987,14 @@ public final class WGetMojo extends AbstractMojo {
             .withRedirectsEnabled(this.followRedirects)
             .withLog(this.getLog())
             .withInsecure(this.insecure)
+            .withMaxConnections(this.maxConnections)
+            .withMaxRouteConnections(this.maxRouteConnections)
+            .withSegments(this.segments)
+            .withSegmentSize(this.segmentSize)
+            .withDigester(digester)
+            .withConditions(conditions)
+            .withMultiplexing(this.http2)
+            .withClients(this.clients)
             .build();
-        fileRequester.download(outputFile, this.getAdditionalHeaders());
-    }
-
-    /**
-     * Configures the provided HttpFileRequester.Builder with proxy settings derived
-     * from the specified Proxy and RemoteRepository.
-     * @param fileRequesterBuilder The builder for HttpFileRequester to configure with proxy settings.
-     * @param repository The remote repository for which the proxy settings should be applied.
-     * @param proxy The proxy whose settings (host, port, and authentication) will be used for the configuration.
-     */
-    private void addProxy(
-        final HttpFileRequester.Builder fileRequesterBuilder,
-        final RemoteRepository repository,
-        final Proxy proxy
-    ) {
-        fileRequesterBuilder.withProxyHost(proxy.getHost());
-        fileRequesterBuilder.withProxyPort(proxy.getPort());
-        final RemoteRepository proxyRepo = new RemoteRepository.Builder(repository)
-            .setProxy(proxy)
-            .build();
-        try (
-            AuthenticationContext ctx = AuthenticationContext.forProxy(
-                this.session.getRepositorySession(),
-                proxyRepo
-            )
-        ) {
-            if (ctx != null) {
-                fileRequesterBuilder.withProxyUserName(ctx.get(AuthenticationContext.USERNAME));
-                fileRequesterBuilder.withProxyPassword(ctx.get(AuthenticationContext.PASSWORD));
-                fileRequesterBuilder.withNtlmDomain(ctx.get(AuthenticationContext.NTLM_DOMAIN));
-                fileRequesterBuilder.withNtlmHost(ctx.get(AuthenticationContext.NTLM_WORKSTATION));
-            }
-        }
-    }
-
-    /**
-     * Configures the provided HttpFileRequester.Builder with authentication settings derived
-     * from the specified RemoteRepository and Authentication instances.
-     * @param fileRequesterBuilder The builder for HttpFileRequester to configure with authentication settings.
-     * @param repository The remote repository for which the authentication settings should be applied.
-     * @param authentication The authentication credentials to use for configuring the file requester.
-     */
-    private void addAuthentication(
-        final HttpFileRequester.Builder fileRequesterBuilder,
-        final RemoteRepository repository,
-        final Authentication authentication
-    ) {
-        final RemoteRepository authRepo = new RemoteRepository.Builder(repository)
-            .setAuthentication(authentication)
-            .build();
-        try (
-            AuthenticationContext authCtx = AuthenticationContext.forRepository(
-                this.session.getRepositorySession(),
-                authRepo
-            )
-        ) {
-            final String uname = authCtx.get(AuthenticationContext.USERNAME);
-            final String pass = authCtx.get(AuthenticationContext.PASSWORD);
-            final String ntlmDomain = authCtx.get(AuthenticationContext.NTLM_DOMAIN);
-            final String ntlmHost = authCtx.get(AuthenticationContext.NTLM_WORKSTATION);
-            this.getLog().debug("providing custom authentication");
-            this.getLog().debug(String.format("username: %s and password: ***", uname));
-            fileRequesterBuilder.withUsername(uname);
-            fileRequesterBuilder.withPassword(pass);
-            fileRequesterBuilder.withNtlmDomain(ntlmDomain);
-            fileRequesterBuilder.withNtlmHost(ntlmHost);
-        }
-    }
-
-    /**
-     * Constructs additional HTTP headers for requests.
-     * @return A list of headers derived from the internal headers map.
-     */
-    private List<Header> getAdditionalHeaders() {
-        return this.headers.entrySet().stream()
-            .map(pair -> new BasicHeader(pair.getKey(), pair.getValue()))
-            .collect(Collectors.toList());
-    }
-
-    /**
-     * Adds a file selector to the provided UnArchiver if the includes or excludes
-     * arrays are not empty.
-     * @param unarchiver The UnArchiver where the file selector should be added.
-     */
-    private void addFileSelectorIfNeeded(final UnArchiver unarchiver) {
-        if (this.includes.length != 0 || this.excludes.length != 0) {
-            final IncludeExcludeFileSelector fileSelector = new IncludeExcludeFileSelector();
-            if (this.includes.length != 0) {
-                fileSelector.setIncludes(this.includes);
-            }
-            if (this.excludes.length != 0) {
-                fileSelector.setExcludes(this.excludes);
-            }
-            unarchiver.setFileSelectors(new FileSelector[]{fileSelector});
-        }
     }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Exclusive lock of a cache entry, held by the process downloading it.
+ * <p>The lock is an OS lock on a file of the cache directory, so it is seen by all
+ * the processes sharing the cache. Lock files are left in place once released:
+ * deleting them would let two processes lock different files for the same entry.
+ * A lock that cannot be released is logged rather than thrown, as it is closed in
+ * {@code finally} blocks where an exception would hide the original one; the OS
+ * releases it anyway when the channel or the process is closed.</p>
+ */
+public final class CacheEntryLock implements AutoCloseable {
+
+    /**
+     * Time between two attempts to acquire a lock held elsewhere, in milliseconds.
+     */
+    private static final long POLL_INTERVAL = 100L;
+
+    /**
+     * Lock file.
+     */
+    private final File file;
+
+    /**
+     * Channel of the lock file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Lock held on the lock file.
+     */
+    private final FileLock lock;
+
+    /**
+     * Logger.
+     */
+    private final Log log;
+
+    /**
+     * Constructor.
+     * @param file Lock file.
+     * @param channel Channel of the lock file.
+     * @param lock Lock held on the lock file.
+     * @param log Logger.
+     */
+    private CacheEntryLock(final File file, final FileChannel channel, final FileLock lock, final Log log) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.log = log;
+    }
+
+    /**
+     * Acquires the lock of a lock file, waiting for it to be released if held
+     * by another process or by another execution of this one.
+     * @param file Lock file, created if absent.
+     * @param timeout Maximum time to wait, in milliseconds.
+     * @param log Logger, warned if the lock cannot be released.
+     * @return Lock; empty if it could not be acquired in time.
+     * @throws IOException If the lock file could not be opened or locked.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    static Optional<CacheEntryLock> acquire(final File file, final long timeout, final Log log)
+        throws IOException, InterruptedException {
+        final FileChannel channel = FileChannel.open(
+            file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE
+        );
+        final long deadline = System.currentTimeMillis() + timeout;
+        Optional<FileLock> lock = Optional.empty();
+        try {
+            lock = CacheEntryLock.tryLock(channel);
+            while (!lock.isPresent() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(POLL_INTERVAL);
+                lock = CacheEntryLock.tryLock(channel);
+            }
+        } finally {
+            if (!lock.isPresent()) {
+                channel.close();
+            }
+        }
+        return lock.map(held -> new CacheEntryLock(file, channel, held, log));
+    }
+
+    /**
+     * Releases the lock, logging a warning if it could not be released.
+     */
+    @Override
+    public void close() {
+        try (FileChannel closing = this.channel) {
+            this.lock.release();
+        } catch (final IOException ex) {
+            this.log.warn(String.format("Could not release the lock %s", this.file.getAbsolutePath()), ex);
+        }
+    }
+
+    /**
+     * Attempts to lock a lock file without waiting.
+     * @param channel Channel of the lock file.
+     * @return Lock; empty if held by another process or another channel of this one.
+     * @throws IOException If the lock file could not be locked.
+     */
+    private static Optional<FileLock> tryLock(final FileChannel channel) throws IOException {
+        Optional<FileLock> result;
+        try {
+            result = Optional.ofNullable(channel.tryLock());
+        } catch (final OverlappingFileLockException ex) {
+            result = Optional.empty();
+        }
+        return result;
+    }
+}
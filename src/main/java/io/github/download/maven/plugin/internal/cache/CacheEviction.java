@@ -0,0 +1,327 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Eviction of the least recently used files of a download cache, once the cache
+ * exceeds its maximum size or the files their maximum age.
+ * <p>The last use of a cached file is the modification time of an empty marker next
+ * to it, touched whenever the file is found or installed. The index is left as is:
+ * the entries of evicted files are seen as missing, and replaced once downloaded again.</p>
+ * <p>Trees unpacked from cached archives are evicted as a whole, as a single file of
+ * the size of their files.</p>
+ * <p>Downloads staged in the cache but never published, and trees left half unpacked,
+ * are deleted once older than the maximum age, or than the grace period below if the
+ * age is unbounded.</p>
+ * <p>Only one process evicts files at a time, the others skip eviction instead of waiting.
+ * Files used within the last minutes are never evicted, as another process may be about
+ * to copy them. Their last use is read again right before they are deleted, as lookups
+ * record the use of a file before verifying it.</p>
+ * @since 2.0.1
+ */
+final class CacheEviction {
+
+    /**
+     * Suffix of the marker of the last use of a cached file.
+     */
+    private static final String ACCESS_SUFFIX = ".access";
+
+    /**
+     * Suffixes of the files kept next to a cached file, evicted with it.
+     */
+    private static final String[] SIDECARS = {ACCESS_SUFFIX, ".digests", ".validators"};
+
+    /**
+     * Name of the lock file held while evicting.
+     */
+    private static final String LOCK_FILENAME = "eviction.lock";
+
+    /**
+     * Names of the cached files of the named layout.
+     */
+    private static final Pattern NAMED = Pattern.compile(".+_[0-9a-f]{32}");
+
+    /**
+     * Names of the cached files of the content layout.
+     */
+    private static final Pattern BLOB = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * Time since their last use during which files are never evicted, in milliseconds.
+     */
+    private static final long GRACE_PERIOD = TimeUnit.MINUTES.toMillis(10L);
+
+    /**
+     * Directory where the download cache is stored.
+     */
+    private final File basedir;
+
+    /**
+     * Logger.
+     */
+    private final Log log;
+
+    /**
+     * Constructor.
+     * @param basedir Directory where the download cache is stored.
+     * @param log Logger.
+     */
+    CacheEviction(final File basedir, final Log log) {
+        this.basedir = basedir;
+        this.log = log;
+    }
+
+    /**
+     * Records the use of a cached file.
+     * @param file Cached file.
+     * @throws IOException If the marker could not be touched.
+     */
+    static void touch(final File file) throws IOException {
+        final File marker = new File(file.getParentFile(), file.getName() + ACCESS_SUFFIX);
+        if (!marker.createNewFile()) {
+            Files.setLastModifiedTime(marker.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Evicts the files unused for longer than the maximum age, then the least recently
+     * used files until the cache fits in its maximum size, unless another process is evicting.
+     * @param locks Directory of the lock files.
+     * @param maxSize Maximum size of the cached files, in bytes; {@literal 0} if unbounded.
+     * @param maxAge Maximum time since the last use of a cached file, in milliseconds;
+     *  {@literal 0} if unbounded.
+     * @throws IOException If the files could not be listed or deleted.
+     * @throws InterruptedException If interrupted.
+     */
+    void run(final File locks, final long maxSize, final long maxAge) throws IOException, InterruptedException {
+        Files.createDirectories(locks.toPath());
+        final Optional<CacheEntryLock> lock = CacheEntryLock.acquire(
+            new File(locks, LOCK_FILENAME), 0L, this.log
+        );
+        if (lock.isPresent()) {
+            try {
+                this.evict(maxSize, maxAge);
+            } finally {
+                lock.get().close();
+            }
+        } else {
+            this.log.debug("Cache eviction in progress in another process, skipping");
+        }
+    }
+
+    /**
+     * Evicts files.
+     * @param maxSize Maximum size of the cached files, in bytes; {@literal 0} if unbounded.
+     * @param maxAge Maximum time since the last use of a cached file, in milliseconds;
+     *  {@literal 0} if unbounded.
+     * @throws IOException If the files could not be listed or deleted.
+     */
+    private void evict(final long maxSize, final long maxAge) throws IOException {
+        final long now = System.currentTimeMillis();
+        final List<CacheEviction.Entry> entries = this.entries();
+        entries.sort(Comparator.comparingLong(entry -> entry.used));
+        long size = entries.stream().mapToLong(entry -> entry.size).sum();
+        long freed = 0L;
+        int count = 0;
+        for (final CacheEviction.Entry entry : entries) {
+            final boolean expired = maxAge > 0L && now - entry.used > maxAge
+                || maxSize > 0L && size > maxSize;
+            if (expired && now - CacheEviction.used(entry.file) > GRACE_PERIOD) {
+                CacheEviction.delete(entry.file);
+                size -= entry.size;
+                freed += entry.size;
+                ++count;
+            }
+        }
+        if (count > 0) {
+            this.log.info(String.format("Evicted %d files (%d bytes) from the download cache", count, freed));
+        }
+        this.abandoned(now - Math.max(maxAge, GRACE_PERIOD));
+    }
+
+    /**
+     * Deletes the staged content of downloads abandoned before being published,
+     * such as the partial content of failed downloads, and the trees left half unpacked.
+     * @param before Time before which downloads are abandoned, in milliseconds since the epoch.
+     * @throws IOException If a file could not be deleted.
+     */
+    private void abandoned(final long before) throws IOException {
+        final File[] files = new File(this.basedir, DownloadCache.STAGING_DIRECTORY)
+            .listFiles(file -> file.isFile() && file.lastModified() < before);
+        for (final File file : Optional.ofNullable(files).orElse(new File[0])) {
+            Files.deleteIfExists(file.toPath());
+        }
+        for (final File prefix : this.prefixes(DownloadCache.TREES_DIRECTORY)) {
+            final File[] staged = prefix.listFiles(
+                file -> file.isDirectory() && !BLOB.matcher(file.getName()).matches() && file.lastModified() < before
+            );
+            for (final File tree : Optional.ofNullable(staged).orElse(new File[0])) {
+                CacheEviction.deleteTree(tree);
+            }
+        }
+    }
+
+    /**
+     * Lists the cached files of both layouts, and the unpacked trees.
+     * @return Cached files and unpacked trees.
+     * @throws IOException If the files of a tree could not be listed.
+     */
+    private List<CacheEviction.Entry> entries() throws IOException {
+        final List<File> files = new ArrayList<>(0);
+        CacheEviction.list(this.basedir, NAMED, files);
+        for (final File prefix : this.prefixes(DownloadCache.BLOBS_DIRECTORY)) {
+            CacheEviction.list(prefix, BLOB, files);
+        }
+        for (final File prefix : this.prefixes(DownloadCache.TREES_DIRECTORY)) {
+            final File[] trees = prefix.listFiles(
+                file -> file.isDirectory() && BLOB.matcher(file.getName()).matches()
+            );
+            files.addAll(Arrays.asList(Optional.ofNullable(trees).orElse(new File[0])));
+        }
+        final List<CacheEviction.Entry> entries = new ArrayList<>(files.size());
+        for (final File file : files) {
+            entries.add(new CacheEviction.Entry(file, CacheEviction.size(file), CacheEviction.used(file)));
+        }
+        return entries;
+    }
+
+    /**
+     * Lists the directories of a directory of the cache splitting its files by digest prefix.
+     * @param directory Name of the directory of the cache.
+     * @return Directories of the prefixes.
+     */
+    private File[] prefixes(final String directory) {
+        return Optional.ofNullable(new File(this.basedir, directory).listFiles(File::isDirectory))
+            .orElse(new File[0]);
+    }
+
+    /**
+     * Lists the cached files of a directory.
+     * @param directory Directory.
+     * @param names Names of the cached files.
+     * @param files Receives the cached files.
+     */
+    private static void list(final File directory, final Pattern names, final List<File> files) {
+        final File[] found = directory.listFiles(file -> file.isFile() && names.matcher(file.getName()).matches());
+        for (final File file : Optional.ofNullable(found).orElse(new File[0])) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * Deletes a directory and the files it holds, if it exists.
+     * @param directory Directory.
+     * @throws IOException If a file could not be deleted.
+     */
+    static void deleteTree(final File directory) throws IOException {
+        if (directory.exists()) {
+            try (Stream<Path> paths = Files.walk(directory.toPath())) {
+                for (final Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the time of the last use of a cached file, or of an unpacked tree.
+     * @param file Cached file or unpacked tree.
+     * @return Time in milliseconds since the epoch.
+     */
+    private static long used(final File file) {
+        final File marker = new File(file.getParentFile(), file.getName() + ACCESS_SUFFIX);
+        return Math.max(file.lastModified(), marker.lastModified());
+    }
+
+    /**
+     * Gets the size of a cached file, or of the files of an unpacked tree.
+     * @param file Cached file or unpacked tree.
+     * @return Size in bytes.
+     * @throws IOException If the files of the tree could not be listed.
+     */
+    private static long size(final File file) throws IOException {
+        final long size;
+        if (file.isDirectory()) {
+            try (Stream<Path> paths = Files.walk(file.toPath())) {
+                size = paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+            }
+        } else {
+            size = file.length();
+        }
+        return size;
+    }
+
+    /**
+     * Deletes a cached file, or an unpacked tree, and the files kept next to it.
+     * @param file Cached file or unpacked tree.
+     * @throws IOException If a file could not be deleted.
+     */
+    private static void delete(final File file) throws IOException {
+        CacheEviction.deleteTree(file);
+        for (final String suffix : SIDECARS) {
+            Files.deleteIfExists(new File(file.getParentFile(), file.getName() + suffix).toPath());
+        }
+    }
+
+    /**
+     * Cached file.
+     */
+    private static final class Entry {
+
+        /**
+         * File.
+         */
+        private final File file;
+
+        /**
+         * Size of the file, in bytes.
+         */
+        private final long size;
+
+        /**
+         * Time of the last use of the file, in milliseconds since the epoch.
+         */
+        private final long used;
+
+        /**
+         * Constructor.
+         * @param file File.
+         * @param size Size of the file, in bytes.
+         * @param used Time of the last use of the file, in milliseconds since the epoch.
+         */
+        Entry(final File file, final long size, final long used) {
+            this.file = file;
+            this.size = size;
+            this.used = used;
+        }
+    }
+}
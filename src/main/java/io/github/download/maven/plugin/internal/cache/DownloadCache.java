@@ -18,11 +18,27 @@ package io.github.download.maven.plugin.internal.cache;
 import io.github.download.maven.plugin.internal.checksum.Checksums;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import javax.annotation.Nullable;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.MessageDigestAlgorithms;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 
@@ -32,6 +48,93 @@ import org.apache.maven.plugin.logging.Log;
  */
 public final class DownloadCache {
 
+    /**
+     * Index type keeping the entries in an append-only journal.
+     */
+    public static final String JOURNAL_INDEX = "journal";
+
+    /**
+     * Index type keeping the entries in a memory-mapped hash table.
+     */
+    public static final String MAPPED_INDEX = "mapped";
+
+    /**
+     * Layout storing each file under the name it was downloaded to and the hash of its URL.
+     */
+    public static final String NAMED_LAYOUT = "named";
+
+    /**
+     * Layout storing each content once, under its SHA-256 digest, whatever the URLs it was downloaded from.
+     */
+    public static final String CONTENT_LAYOUT = "content";
+
+    /**
+     * Verification trusting the digests already verified for a cached file
+     * as long as its size, modification time and file key are unchanged.
+     */
+    public static final String STAMP_VERIFICATION = "stamp";
+
+    /**
+     * Verification also checking the CRC32 recorded with the digests already verified
+     * for a cached file, to detect content that rotted without changing its attributes.
+     */
+    public static final String CRC_VERIFICATION = "crc";
+
+    /**
+     * Verification hashing a cached file again with the supplied checksums.
+     */
+    public static final String FULL_VERIFICATION = "full";
+
+    /**
+     * Directory of the cache holding the files of the content layout, by digest.
+     */
+    static final String BLOBS_DIRECTORY = "blobs";
+
+    /**
+     * Directory of the cache holding the downloads in progress, by URL.
+     */
+    static final String STAGING_DIRECTORY = "downloads";
+
+    /**
+     * Directory of the cache holding the trees unpacked from cached archives, by digest.
+     */
+    static final String TREES_DIRECTORY = "trees";
+
+    /**
+     * Suffix of the file holding the validators of a cached file.
+     */
+    private static final String VALIDATORS_SUFFIX = ".validators";
+
+    /**
+     * Directory of the cache holding the lock files of the entries.
+     */
+    private static final String LOCKS_DIRECTORY = "locks";
+
+    /**
+     * Directory of the cache holding the validators of the files of the content layout, by URL.
+     */
+    private static final String VALIDATORS_DIRECTORY = "validators";
+
+    /**
+     * Algorithm of the digests the files of the content layout are stored under.
+     */
+    private static final String BLOB_DIGEST = MessageDigestAlgorithms.SHA_256;
+
+    /**
+     * Number of hexadecimal digits of a digest naming the directory of a file of the content layout.
+     */
+    private static final int BLOB_PREFIX = 2;
+
+    /**
+     * Digests files of the content layout may be stored under.
+     */
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * Locks of the entries of all the caches, by cache directory and URL.
+     */
+    private static final Map<String, Lock> ENTRY_LOCKS = new ConcurrentHashMap<>();
+
     /**
      * Directory where the download cache is stored.
      */
@@ -44,14 +147,55 @@ public final class DownloadCache {
      */
     private final FileIndex index;
 
+    /**
+     * Logger.
+     */
+    private final Log log;
+
+    /**
+     * Whether files are installed in the content layout.
+     */
+    private final boolean addressed;
+
     /**
      * Constructor.
      * @param cacheDirectory Directory where the download cache is stored.
      * @param log Logger.
      */
     public DownloadCache(final File cacheDirectory, final Log log) {
-        this.index = new FileBackedIndex(cacheDirectory, log);
+        this(cacheDirectory, log, DownloadCache.JOURNAL_INDEX);
+    }
+
+    /**
+     * Constructor.
+     * @param cacheDirectory Directory where the download cache is stored.
+     * @param log Logger.
+     * @param indexType Type of the index of the cache, {@link #JOURNAL_INDEX} or {@link #MAPPED_INDEX}.
+     */
+    public DownloadCache(final File cacheDirectory, final Log log, final String indexType) {
+        this(cacheDirectory, log, indexType, DownloadCache.NAMED_LAYOUT);
+    }
+
+    /**
+     * Constructor.
+     * <p>In the {@link #CONTENT_LAYOUT}, identical files downloaded from different URLs are stored
+     * once, and a file is found by the SHA-256 checksum supplied for it even if it was downloaded
+     * from another URL. Entries of either layout are found whatever the layout of the cache.</p>
+     * @param cacheDirectory Directory where the download cache is stored.
+     * @param log Logger.
+     * @param indexType Type of the index of the cache, {@link #JOURNAL_INDEX} or {@link #MAPPED_INDEX}.
+     * @param layout Layout of the files installed, {@link #NAMED_LAYOUT} or {@link #CONTENT_LAYOUT}.
+     * @since 2.0.1
+     */
+    public DownloadCache(final File cacheDirectory, final Log log, final String indexType, final String layout) {
+        if (DownloadCache.MAPPED_INDEX.equals(indexType)) {
+            this.index = new MappedIndex(cacheDirectory, log);
+        } else {
+            this.index = new JournalIndex(cacheDirectory, log);
+        }
         this.basedir = cacheDirectory;
+        this.log = log;
+        this.addressed = DownloadCache.CONTENT_LAYOUT.equals(layout);
     }
 
     /**
@@ -63,16 +207,90 @@ public final class DownloadCache {
      * @return A File when cache is found, null if no available cache
      */
     public File getArtifact(final URI uri, final Checksums checksums) {
-        final Optional<String> resource;
-        this.index.getLock().lock();
+        return this.getArtifact(uri, checksums, DownloadCache.STAMP_VERIFICATION);
+    }
+
+    /**
+     * Get a File in the download cache. If no cache for this URL, or
+     * if expected checksums don't match cached ones, returns null.
+     * The cached file is only hashed again if it changed since its digests were
+     * verified, unless the verification is {@link #FULL_VERIFICATION}.
+     * @param uri URL of the file
+     * @param checksums Supplied checksums.
+     * @param verification Verification, {@link #STAMP_VERIFICATION}, {@link #CRC_VERIFICATION}
+     *  or {@link #FULL_VERIFICATION}.
+     * @return A File when cache is found, null if no available cache
+     * @since 2.0.1
+     */
+    public File getArtifact(final URI uri, final Checksums checksums, final String verification) {
+        Optional<String> resource;
+        final Lock lock = this.entryLock(uri);
+        lock.lock();
         try {
-            resource = this.getEntry(uri, checksums);
+            resource = this.getEntry(uri, checksums, verification);
+            if (!resource.isPresent() && this.addressed) {
+                resource = this.getBlob(checksums, verification);
+                resource.ifPresent(res -> this.index(uri, res));
+            }
         } finally {
-            this.index.getLock().unlock();
+            lock.unlock();
         }
         return resource.map(res -> new File(this.basedir, res)).orElse(null);
     }
 
+    /**
+     * Gets the response validators recorded with the cached file of a URL,
+     * to revalidate it with a conditional request.
+     * @param uri URL of the file
+     * @return Validators; {@link Validators#NONE} if none were recorded.
+     * @throws IOException If the validators could not be read.
+     */
+    public Validators getValidators(final URI uri) throws IOException {
+        Validators validators = Validators.NONE;
+        final Lock lock = this.entryLock(uri);
+        lock.lock();
+        try {
+            final Optional<File> file = Optional.ofNullable(this.lookup(uri))
+                .map(resource -> this.validatorsFile(uri, resource))
+                .filter(File::isFile);
+            if (file.isPresent()) {
+                final Properties props = new Properties();
+                try (InputStream in = Files.newInputStream(file.get().toPath())) {
+                    props.load(in);
+                }
+                validators = Validators.load(props);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return validators;
+    }
+
+    /**
+     * Locks the entry of a URL for this process to download it, so that other processes
+     * sharing the cache directory wait for it to be installed instead of downloading it too.
+     * @param uri URL of the file
+     * @param timeout Maximum time to wait for another process holding the lock, in milliseconds.
+     * @return Lock of the entry, to be closed once the file is installed;
+     *  empty if it is still held by another process after the timeout.
+     * @throws IOException If the lock file could not be created.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Optional<CacheEntryLock> lock(final URI uri, final long timeout)
+        throws IOException, InterruptedException {
+        final File locks = new File(this.basedir, LOCKS_DIRECTORY);
+        Files.createDirectories(locks.toPath());
+        final Optional<CacheEntryLock> lock = CacheEntryLock.acquire(
+            new File(locks, String.format("%s.lock", DigestUtils.md5Hex(uri.toString()))), timeout, this.log
+        );
+        if (!lock.isPresent()) {
+            this.log.warn(
+                String.format("Download of %s still in progress in another process after %dms", uri, timeout)
+            );
+        }
+        return lock;
+    }
+
     /**
      * Installs a file into the download cache.
      * If the cache directory does not exist, it is created.
@@ -87,6 +305,51 @@ public final class DownloadCache {
      */
     public void install(final URI uri, final File outputFile, final Checksums checksums)
         throws MojoFailureException, IOException {
+        this.install(uri, outputFile, checksums, null);
+    }
+
+    /**
+     * Installs a file into the download cache, together with the response validators
+     * it was downloaded with.
+     * A freshly downloaded file always replaces the cached one, as the cached one
+     * was either missing or found out of date.
+     *
+     * @param uri The URI of the file to be installed.
+     * @param outputFile The file to be installed into the cache.
+     * @param checksums The checksums used to verify the integrity of the file.
+     * @param downloaded Validators of the downloaded file; {@literal null} if the file
+     *  was not downloaded by this execution. A downloaded file must have been validated
+     *  with the checksums, which are recorded as its verified digests.
+     * @throws MojoFailureException If the cache directory cannot be created.
+     * @throws IOException If an I/O error occurs while copying the file.
+     */
+    public void install(
+        final URI uri, final File outputFile, final Checksums checksums,
+        @Nullable final Validators downloaded
+    ) throws MojoFailureException, IOException {
+        this.install(uri, outputFile, checksums, downloaded, new Materialization(Materialization.COPY, this.log));
+    }
+
+    /**
+     * Installs a file into the download cache, together with the response validators
+     * it was downloaded with, linking the cached file to the installed one if possible.
+     *
+     * @param uri The URI of the file to be installed.
+     * @param outputFile The file to be installed into the cache.
+     * @param checksums The checksums used to verify the integrity of the file.
+     * @param downloaded Validators of the downloaded file; {@literal null} if the file
+     *  was not downloaded by this execution. A downloaded file must have been validated
+     *  with the checksums, which are recorded as its verified digests.
+     * @param materialization How the cached file is made from the installed one;
+     *  a cached file is never a symbolic link.
+     * @throws MojoFailureException If the cache directory cannot be created.
+     * @throws IOException If an I/O error occurs while copying the file.
+     * @since 2.0.1
+     */
+    public void install(
+        final URI uri, final File outputFile, final Checksums checksums,
+        @Nullable final Validators downloaded, final Materialization materialization
+    ) throws MojoFailureException, IOException {
         if (!this.basedir.exists() && !this.basedir.mkdirs()) {
             throw new MojoFailureException(
                 String.format(
@@ -94,41 +357,442 @@ public final class DownloadCache {
                 )
             );
         }
-        this.index.getLock().lock();
+        final Lock lock = this.entryLock(uri);
+        lock.lock();
+        try {
+            if (downloaded != null || !this.getEntry(uri, checksums, DownloadCache.STAMP_VERIFICATION).isPresent()) {
+                final Map<String, String> verified = new HashMap<>();
+                if (downloaded != null) {
+                    checksums.record(verified);
+                }
+                final File staged = File.createTempFile(outputFile.getName(), ".tmp", this.basedir);
+                try {
+                    materialization.store(outputFile, staged).ifPresent(crc -> verified.put(Checksums.CRC32, crc));
+                    this.place(uri, outputFile.getName(), staged, verified, downloaded);
+                } finally {
+                    Files.deleteIfExists(staged.toPath());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the file a download of a URL is written to in the cache directory, to be published
+     * into the cache once verified. Content left by an interrupted download may be resumed.
+     * Must only be used while holding the {@link #lock(URI, long) lock} of the entry.
+     * @param uri URL of the file
+     * @return Staging file.
+     * @throws IOException If the staging directory could not be created.
+     * @since 2.0.1
+     */
+    public File staging(final URI uri) throws IOException {
+        final File staging = new File(this.basedir, STAGING_DIRECTORY);
+        Files.createDirectories(staging.toPath());
+        return new File(staging, DigestUtils.md5Hex(uri.toString()));
+    }
+
+    /**
+     * Publishes a file downloaded to the {@link #staging(URI) staging file} of its URL into
+     * the cache, by moving it atomically, so that it is written once and never seen partially written.
+     * @param uri URL of the file
+     * @param staged Staging file, validated with the checksums.
+     * @param name Name of the output file.
+     * @param checksums The checksums the file was validated with, recorded as its verified digests.
+     * @param downloaded Validators of the downloaded file.
+     * @return Cached file.
+     * @throws IOException If the file could not be moved.
+     * @since 2.0.1
+     */
+    public File publish(
+        final URI uri, final File staged, final String name, final Checksums checksums, final Validators downloaded
+    ) throws IOException {
+        final Lock lock = this.entryLock(uri);
+        lock.lock();
         try {
-            final Optional<String> entry = this.getEntry(uri, checksums);
-            if (!entry.isPresent()) {
-                final String fileName = String.format(
-                    "%s_%s", outputFile.getName(), DigestUtils.md5Hex(uri.toString())
-                );
-                Files.copy(
-                    outputFile.toPath(),
-                    new File(this.basedir, fileName).toPath(),
-                    StandardCopyOption.REPLACE_EXISTING
-                );
-                this.index.put(uri, fileName);
+            final Map<String, String> verified = new HashMap<>();
+            checksums.record(verified);
+            return this.place(uri, name, staged, verified, downloaded);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the tree unpacked from a cached archive with the given options, unpacking it
+     * first if the cache does not hold it yet. Trees are stored by the SHA-256 digest of
+     * the archive and of the options, so that an unchanged archive is only unpacked once
+     * for the same options. The digest of the archive is recorded with its verified
+     * digests, to be computed again only once the archive changes.
+     * <p>A tree is unpacked to a directory of its own, and moved into place once complete,
+     * so that it is never seen partially unpacked. If another process unpacked it in the
+     * meantime, its tree is kept.</p>
+     * @param archive Cached archive.
+     * @param options Description of the options the archive is unpacked with, such as
+     *  the selected entries and the mappers of their paths.
+     * @param unpacking Unpacks the archive to an empty directory, if the tree is missing.
+     * @return Directory of the tree.
+     * @throws IOException If the archive could not be hashed or unpacked.
+     * @since 2.0.1
+     */
+    public File tree(final File archive, final String options, final DownloadCache.Unpacking unpacking)
+        throws IOException {
+        final VerifiedDigests digests = new VerifiedDigests(archive);
+        final Map<String, String> known = digests.load();
+        if (!known.containsKey(BLOB_DIGEST)) {
+            DownloadCache.hash(archive, known);
+            digests.store(known);
+        }
+        final String key = DigestUtils.sha256Hex(String.format("%s%n%s", known.get(BLOB_DIGEST), options));
+        final File tree = new File(
+            this.basedir, String.format("%s/%s/%s", TREES_DIRECTORY, key.substring(0, BLOB_PREFIX), key)
+        );
+        if (!tree.isDirectory()) {
+            Files.createDirectories(tree.getParentFile().toPath());
+            final File staged = Files.createTempDirectory(tree.getParentFile().toPath(), key).toFile();
+            try {
+                unpacking.unpack(staged);
+                Files.move(staged.toPath(), tree.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (final FileAlreadyExistsException | DirectoryNotEmptyException ex) {
+                this.log.debug(String.format("%s was unpacked by another process", tree.getAbsolutePath()));
+            } finally {
+                CacheEviction.deleteTree(staged);
             }
+        }
+        this.touch(tree);
+        return tree;
+    }
+
+    /**
+     * Evicts the least recently used files of the cache, once it exceeds its maximum size
+     * or the files their maximum age. Lookups are not blocked, and eviction is skipped if
+     * another process is evicting files from the cache.
+     * @param maxSize Maximum size of the cached files, in bytes; {@literal 0} if unbounded.
+     * @param maxAge Maximum time since the last use of a cached file, in milliseconds;
+     *  {@literal 0} if unbounded.
+     * @throws IOException If the files could not be listed or deleted.
+     * @throws InterruptedException If interrupted.
+     * @since 2.0.1
+     */
+    public void evict(final long maxSize, final long maxAge) throws IOException, InterruptedException {
+        if ((maxSize > 0L || maxAge > 0L) && this.basedir.isDirectory()) {
+            new CacheEviction(this.basedir, this.log).run(new File(this.basedir, LOCKS_DIRECTORY), maxSize, maxAge);
+        }
+    }
+
+    /**
+     * Records the use of a cached file, so that the least recently used files are evicted first.
+     * @param file Cached file.
+     */
+    private void touch(final File file) {
+        try {
+            CacheEviction.touch(file);
+        } catch (final IOException ex) {
+            this.log.debug(String.format("Could not record the use of %s", file.getAbsolutePath()), ex);
+        }
+    }
+
+    /**
+     * Moves a file of the cache directory to the cached file of a URL and records it in the index.
+     * In the content layout, the file is dropped instead if a file with the same content is
+     * already stored, whatever the URLs it was downloaded from.
+     * @param uri URL of the file
+     * @param name Name of the output file.
+     * @param staged File to move.
+     * @param verified Digests of the file already verified; receives its SHA-256 digest in the content layout.
+     * @param downloaded Validators of the file; {@literal null} if it was not downloaded.
+     * @return Cached file.
+     * @throws IOException If the file could not be hashed or moved.
+     */
+    private File place(
+        final URI uri, final String name, final File staged, final Map<String, String> verified,
+        @Nullable final Validators downloaded
+    ) throws IOException {
+        final String resource = this.resource(uri, name, staged, verified);
+        final File cached = new File(this.basedir, resource);
+        final VerifiedDigests digests = new VerifiedDigests(cached);
+        final Map<String, String> known = new HashMap<>();
+        if (this.addressed && cached.isFile()) {
+            known.putAll(digests.load());
+        }
+        if (verified.get(BLOB_DIGEST) != null && verified.get(BLOB_DIGEST).equals(known.get(BLOB_DIGEST))) {
+            Files.delete(staged.toPath());
+        } else {
+            Files.createDirectories(cached.getParentFile().toPath());
+            DownloadCache.move(staged, cached);
+            known.clear();
+        }
+        known.putAll(verified);
+        digests.store(known);
+        this.storeValidators(uri, resource, downloaded);
+        this.index(uri, resource);
+        this.touch(cached);
+        return cached;
+    }
+
+    /**
+     * Gets the path of the cached file of a URL.
+     * @param uri URL of the file
+     * @param name Name of the output file.
+     * @param file Content of the file.
+     * @param verified Digests of the file already verified; receives its SHA-256 digest in the content layout.
+     * @return Path of the cached file.
+     * @throws IOException If the file could not be hashed.
+     */
+    private String resource(
+        final URI uri, final String name, final File file, final Map<String, String> verified
+    ) throws IOException {
+        final String resource;
+        if (this.addressed) {
+            if (!verified.containsKey(BLOB_DIGEST)) {
+                DownloadCache.hash(file, verified);
+            }
+            resource = DownloadCache.blob(verified.get(BLOB_DIGEST));
+        } else {
+            resource = String.format("%s_%s", name, DigestUtils.md5Hex(uri.toString()));
+        }
+        return resource;
+    }
+
+    /**
+     * Retrieves a file of the content layout by the SHA-256 checksum supplied for it,
+     * and verifies it using the given checksums.
+     * @param checksums The checksums used to validate the integrity of the resource.
+     * @param verification How far to trust the digests already verified for the resource.
+     * @return An Optional containing the resource path if a SHA-256 checksum is supplied and
+     *  a valid file is stored under it, otherwise an empty Optional.
+     */
+    private Optional<String> getBlob(final Checksums checksums, final String verification) {
+        final Map<String, String> supplied = new HashMap<>();
+        checksums.record(supplied);
+        return Optional.ofNullable(supplied.get(BLOB_DIGEST))
+            .filter(digest -> BLOB_NAME.matcher(digest).matches())
+            .map(DownloadCache::blob)
+            .filter(
+                res -> {
+                    final File blob = new File(this.basedir, res);
+                    return this.verify(blob, checksums, verification);
+                }
+            );
+    }
+
+    /**
+     * Maps a URL to its cached file in the index.
+     * @param uri URL of the file
+     * @param resource Path of the cached file.
+     */
+    private void index(final URI uri, final String resource) {
+        this.index.getLock().lock();
+        try {
+            this.index.put(uri, resource);
         } finally {
             this.index.getLock().unlock();
         }
     }
 
+    /**
+     * Looks the cached file of a URL up in the index.
+     * @param uri URL of the file
+     * @return Path of the cached file; {@literal null} if not found.
+     */
+    private String lookup(final URI uri) {
+        this.index.getLock().lock();
+        try {
+            return this.index.get(uri);
+        } finally {
+            this.index.getLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the lock of the entry of a URL, held while its cached file is verified or replaced.
+     * The index is only locked to read or update it, so that entries of different URLs are
+     * verified and copied in parallel.
+     * @param uri URL of the file
+     * @return Lock shared by all the caches of the same directory in the JVM.
+     */
+    private Lock entryLock(final URI uri) {
+        return ENTRY_LOCKS.computeIfAbsent(
+            String.format("%s %s", this.basedir.getAbsolutePath(), uri.normalize()),
+            key -> new ReentrantLock()
+        );
+    }
+
+    /**
+     * Gets the file holding the validators of a cached file. Files of the content layout may be
+     * downloaded from several URLs, so their validators are kept by URL instead of next to them.
+     * @param uri URL of the file
+     * @param resource Path of the cached file.
+     * @return File holding the validators.
+     */
+    private File validatorsFile(final URI uri, final String resource) {
+        final File file;
+        if (resource.startsWith(BLOBS_DIRECTORY + '/')) {
+            file = new File(
+                new File(this.basedir, VALIDATORS_DIRECTORY), DigestUtils.md5Hex(uri.toString()) + VALIDATORS_SUFFIX
+            );
+        } else {
+            file = new File(this.basedir, resource + VALIDATORS_SUFFIX);
+        }
+        return file;
+    }
+
+    /**
+     * Records the validators of a cached file.
+     * @param uri URL of the file
+     * @param fileName Name of the cached file.
+     * @param validators Validators; {@literal null} or empty if unknown.
+     * @throws IOException If the validators could not be written.
+     */
+    private void storeValidators(final URI uri, final String fileName, @Nullable final Validators validators)
+        throws IOException {
+        final File file = this.validatorsFile(uri, fileName);
+        if (validators == null || validators.isEmpty()) {
+            Files.deleteIfExists(file.toPath());
+        } else {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                validators.store().store(out, null);
+            }
+        }
+    }
+
     /**
      * Retrieves an entry from the cache index based on the provided URI and verifies it
-     * using the given checksums.
+     * using the given checksums, compared with the digests already verified for it.
      * @param uri The URI of the resource to retrieve.
      * @param checksums The checksums used to validate the integrity of the resource.
+     * @param verification How far to trust the digests already verified for the resource.
      * @return An Optional containing the resource path if the resource is valid and found,
      *  otherwise an empty Optional.
      */
-    private Optional<String> getEntry(final URI uri, final Checksums checksums) {
-        final String resource = this.index.get(uri);
+    private Optional<String> getEntry(final URI uri, final Checksums checksums, final String verification) {
+        final String resource = this.lookup(uri);
         return Optional.ofNullable(resource)
             .filter(
                 res -> {
                     final File resFile = new File(this.basedir, resource);
-                    return resFile.isFile() && checksums.isValid(resFile);
+                    return this.verify(resFile, checksums, verification);
                 }
             );
     }
+
+    /**
+     * Validates a cached file with checksums, if it exists. Its use is recorded before it is
+     * validated, so that it is not evicted meanwhile, and it must still exist once recorded,
+     * in case it was evicted just before.
+     * @param file Cached file.
+     * @param checksums Supplied checksums.
+     * @param verification How far to trust the digests already verified for the file.
+     * @return True if the file exists and matches all supplied checksums.
+     */
+    private boolean verify(final File file, final Checksums checksums, final String verification) {
+        boolean valid = false;
+        if (file.isFile()) {
+            this.touch(file);
+            valid = file.isFile() && this.matches(file, checksums, verification);
+        }
+        return valid;
+    }
+
+    /**
+     * Validates a cached file with checksums, hashing it only for the digests that were not
+     * verified since it last changed, and records the digests computed.
+     * @param file Cached file.
+     * @param checksums Supplied checksums.
+     * @param verification How far to trust the digests already verified for the file.
+     * @return True if the file matches all supplied checksums.
+     */
+    private boolean matches(final File file, final Checksums checksums, final String verification) {
+        final VerifiedDigests digests = new VerifiedDigests(file);
+        final Map<String, String> known = this.known(file, digests, verification);
+        final Map<String, String> verified = new HashMap<>(known);
+        final boolean valid = checksums.isValid(file, verified);
+        if (!verified.equals(known)) {
+            try {
+                digests.store(verified);
+            } catch (final IOException ex) {
+                this.log.warn(String.format("Could not record the digests of %s", file.getAbsolutePath()), ex);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Reads the digests already verified for a cached file that can be trusted.
+     * @param file Cached file.
+     * @param digests Digests of the cached file.
+     * @param verification How far to trust the digests.
+     * @return Digests by algorithm; empty if none can be trusted.
+     */
+    private Map<String, String> known(final File file, final VerifiedDigests digests, final String verification) {
+        Map<String, String> known = new HashMap<>();
+        try {
+            if (!DownloadCache.FULL_VERIFICATION.equals(verification)) {
+                known = digests.load();
+            }
+            if (DownloadCache.CRC_VERIFICATION.equals(verification) && !known.isEmpty() && !digests.intact()) {
+                this.log.warn(String.format("The CRC32 of %s changed, hashing it again", file.getAbsolutePath()));
+                known = new HashMap<>();
+            }
+        } catch (final IOException ex) {
+            this.log.warn(String.format("Could not read the digests of %s", file.getAbsolutePath()), ex);
+            known = new HashMap<>();
+        }
+        return known;
+    }
+
+    /**
+     * Computes the SHA-256 digest of a file, together with its CRC32 in the same pass.
+     * @param file File.
+     * @param digests Digests of the file by algorithm; receives the computed ones.
+     * @throws IOException If the file could not be read.
+     */
+    private static void hash(final File file, final Map<String, String> digests) throws IOException {
+        try (CheckedInputStream in = new CheckedInputStream(Files.newInputStream(file.toPath()), new CRC32())) {
+            digests.put(BLOB_DIGEST, DigestUtils.sha256Hex(in));
+            digests.put(Checksums.CRC32, Long.toHexString(in.getChecksum().getValue()));
+        }
+    }
+
+    /**
+     * Gets the path of the file of the content layout stored under a digest.
+     * @param digest SHA-256 digest, as a hexadecimal string.
+     * @return Path of the file.
+     */
+    private static String blob(final String digest) {
+        return String.format("%s/%s/%s", BLOBS_DIRECTORY, digest.substring(0, BLOB_PREFIX), digest);
+    }
+
+    /**
+     * Moves a file atomically, replacing the target, unless the file system does not support it.
+     * @param source File to move.
+     * @param target Path to move it to.
+     * @throws IOException If the file could not be moved.
+     */
+    private static void move(final File source, final File target) throws IOException {
+        try {
+            Files.move(
+                source.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch (final AtomicMoveNotSupportedException ex) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Unpacking of an archive to the tree stored in the cache.
+     * @since 2.0.1
+     */
+    public interface Unpacking {
+
+        /**
+         * Unpacks the archive.
+         * @param directory Empty directory to unpack the archive to.
+         * @throws IOException If the archive could not be unpacked.
+         */
+        void unpack(File directory) throws IOException;
+    }
 }
@@ -16,7 +16,7 @@
 package io.github.download.maven.plugin.internal.cache;
 
 /**
- * Thrown when {@link FileBackedIndex} fails to read an existing index.
+ * Thrown when {@link JournalIndex} fails to read an existing index.
  * <p>This occurs when upgrading to a new version of the plugin with breaking changes
  * in the index storage strategy (including Java serialization changes, or even moving
  * to a different serialization mechanism (JSON, XML, etc.).</p>
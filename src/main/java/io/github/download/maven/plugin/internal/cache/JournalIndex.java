@@ -0,0 +1,408 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Index backed by an append-only journal of its entries, "index.journal".
+ * <p>Adding an entry appends a record to the journal, and a lookup only reads the
+ * records appended since the previous one. Once most records are superseded by later
+ * ones, the journal is compacted: rewritten with a new generation number telling
+ * the other readers to replay it from the start.</p>
+ * <p>Processes sharing the index coordinate with OS locks on "index.lock":
+ * shared to read the journal, exclusive to write it. An index written by previous
+ * versions of the plugin, "index.ser", is imported when the journal is created.</p>
+ * The implementation is <b>NOT</b> thread safe and should be synchronized
+ * by the lock, which is shared by all the indexes of the same directory in the JVM.
+ * @since 2.0.1
+ */
+@NotThreadSafe
+final class JournalIndex implements FileIndex {
+
+    /**
+     * File name where the journal is stored.
+     */
+    private static final String JOURNAL_FILENAME = "index.journal";
+
+    /**
+     * File name locked by the processes accessing the journal.
+     */
+    private static final String LOCK_FILENAME = "index.lock";
+
+    /**
+     * File name where the index of previous versions is stored.
+     */
+    private static final String LEGACY_FILENAME = "index.ser";
+
+    /**
+     * Marker at the start of the journal.
+     */
+    private static final int MAGIC = 0x444d5049;
+
+    /**
+     * Version of the journal format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Length of the journal header: marker, version and generation.
+     */
+    private static final int HEADER_LENGTH = 16;
+
+    /**
+     * Type of the records adding an entry.
+     */
+    private static final byte PUT = 1;
+
+    /**
+     * Minimum number of records before the journal is compacted.
+     */
+    private static final int MIN_COMPACTION = 1000;
+
+    /**
+     * Locks of the indexes by journal path, shared by the indexes of the same
+     * directory so that the JVM does not request overlapping OS locks.
+     */
+    private static final Map<String, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Entries replayed from the journal.
+     */
+    private final Map<URI, String> index = new HashMap<>();
+
+    /**
+     * Journal file.
+     */
+    private final File journal;
+
+    /**
+     * Lock file.
+     */
+    private final File lockFile;
+
+    /**
+     * Index file of previous versions.
+     */
+    private final File legacy;
+
+    /**
+     * Lock of the index in this JVM.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Logger.
+     */
+    private final Log log;
+
+    /**
+     * Generation of the journal replayed; zero if none.
+     */
+    private long generation;
+
+    /**
+     * Position in the journal up to which records were replayed.
+     */
+    private long position;
+
+    /**
+     * Number of records in the journal.
+     */
+    private int records;
+
+    /**
+     * Creates an index backed by the journal in baseDir.
+     * @param baseDir Directory where the journal should be stored.
+     * @param log Logger.
+     */
+    JournalIndex(final File baseDir, final Log log) {
+        this.log = log;
+        this.journal = new File(baseDir, JOURNAL_FILENAME);
+        this.lockFile = new File(baseDir, LOCK_FILENAME);
+        this.legacy = new File(baseDir, LEGACY_FILENAME);
+        this.lock = LOCKS.computeIfAbsent(this.journal.getAbsolutePath(), ignored -> new ReentrantLock());
+    }
+
+    @Override
+    public void put(final URI uri, final String path) {
+        try {
+            this.locked(false, () -> {
+                try {
+                    this.migrate();
+                    this.refresh();
+                } catch (final IncompatibleIndexException exc) {
+                    this.log.warn("Could not load index cache index file, it will be rewritten.");
+                    this.generation = 0L;
+                }
+                this.append(uri, path);
+            });
+        } catch (final IncompatibleIndexException | IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public String get(final URI uri) {
+        this.load();
+        return this.index.get(uri);
+    }
+
+    @Override
+    public ReentrantLock getLock() {
+        return this.lock;
+    }
+
+    /**
+     * Lists all the entries of the index.
+     * @return Paths by URI.
+     */
+    Map<URI, String> entries() {
+        this.load();
+        return new HashMap<>(this.index);
+    }
+
+    /**
+     * Brings the entries up to date with the journal, or with the index of
+     * previous versions if there is no journal yet.
+     */
+    private void load() {
+        try {
+            if (this.journal.isFile() || this.legacy.isFile()) {
+                if (!this.journal.isFile()) {
+                    this.locked(false, this::migrate);
+                }
+                this.locked(true, this::refresh);
+            }
+        } catch (final IncompatibleIndexException | IOException exc) {
+            this.log.warn(
+                String.format("Error while reading from cache %s", this.journal.getAbsolutePath())
+            );
+        }
+    }
+
+    /**
+     * Runs an action while holding the OS lock of the index.
+     * @param shared Whether the lock is shared, to read the journal, or exclusive, to write it.
+     * @param action Action to run.
+     * @throws IncompatibleIndexException If the journal cannot be read.
+     * @throws IOException If the lock could not be acquired or the action failed.
+     */
+    private void locked(final boolean shared, final JournalIndex.Action action)
+        throws IncompatibleIndexException, IOException {
+        try (
+            FileChannel channel = FileChannel.open(
+                this.lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            );
+            FileLock ignored = channel.lock(0L, Long.MAX_VALUE, shared)
+        ) {
+            action.run();
+        }
+    }
+
+    /**
+     * Creates the journal from the index of previous versions, if there is one.
+     * An index which cannot be read, being incompatible, corrupt or truncated, is ignored
+     * and the journal starts empty. Must be called with the exclusive lock.
+     * @throws IOException If the journal could not be written.
+     */
+    @SuppressWarnings("unchecked")
+    private void migrate() throws IOException {
+        if (!this.journal.isFile() && this.legacy.length() != 0L) {
+            try (ObjectInputStream deserialize = new ObjectInputStream(Files.newInputStream(this.legacy.toPath()))) {
+                ((Map<URI, String>) deserialize.readObject()).forEach(this.index::putIfAbsent);
+            } catch (final ClassNotFoundException | IOException | ClassCastException exc) {
+                this.log.warn(
+                    String.format("Could not import cache index %s, it is ignored.", this.legacy.getAbsolutePath())
+                );
+            }
+            this.compact();
+        }
+    }
+
+    /**
+     * Replays the records appended to the journal since the last call, or all of them
+     * if it was compacted since. Must be called with the lock.
+     * @throws IncompatibleIndexException If the journal was not written by this version.
+     * @throws IOException If the journal could not be read.
+     */
+    private void refresh() throws IncompatibleIndexException, IOException {
+        if (this.journal.isFile()) {
+            try (FileChannel channel = FileChannel.open(this.journal.toPath(), StandardOpenOption.READ)) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                JournalIndex.read(channel, header, 0L);
+                header.flip();
+                if (header.remaining() < HEADER_LENGTH || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    throw new IncompatibleIndexException(new InvalidClassException(JOURNAL_FILENAME));
+                }
+                final long current = header.getLong();
+                if (current != this.generation) {
+                    this.index.clear();
+                    this.generation = current;
+                    this.position = HEADER_LENGTH;
+                    this.records = 0;
+                }
+                this.replay(channel);
+            }
+        } else {
+            this.generation = 0L;
+        }
+    }
+
+    /**
+     * Replays the records of the journal from the current position.
+     * A record partially written, by a process which did not complete it, is ignored.
+     * @param channel Channel of the journal.
+     * @throws IOException If the journal could not be read.
+     */
+    private void replay(final FileChannel channel) throws IOException {
+        final long start = this.position;
+        if (channel.size() > start) {
+            final ByteBuffer tail = ByteBuffer.allocate(Math.toIntExact(channel.size() - start));
+            JournalIndex.read(channel, tail, start);
+            final ByteArrayInputStream bytes = new ByteArrayInputStream(tail.array(), 0, tail.position());
+            final DataInputStream input = new DataInputStream(bytes);
+            try {
+                while (bytes.available() > 0 && input.readByte() == PUT) {
+                    final URI uri = URI.create(input.readUTF());
+                    this.index.put(uri, input.readUTF());
+                    this.records += 1;
+                    this.position = start + tail.position() - bytes.available();
+                }
+            } catch (final EOFException ex) {
+                this.log.debug(String.format("Ignoring the incomplete end of %s", this.journal));
+            }
+        }
+    }
+
+    /**
+     * Adds an entry, appending a record to the journal or compacting it.
+     * Must be called with the exclusive lock, right after {@link #refresh()}.
+     * @param uri Index key.
+     * @param path Index value.
+     * @throws IOException If the journal could not be written.
+     */
+    private void append(final URI uri, final String path) throws IOException {
+        this.index.put(uri, path);
+        if (this.generation == 0L || this.records >= MIN_COMPACTION && this.records > 2 * this.index.size()) {
+            this.compact();
+        } else {
+            final byte[] record = JournalIndex.record(uri, path);
+            try (FileChannel channel = FileChannel.open(this.journal.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(this.position);
+                channel.write(ByteBuffer.wrap(record), this.position);
+            }
+            this.position += record.length;
+            this.records += 1;
+        }
+    }
+
+    /**
+     * Rewrites the journal with one record per entry, under a new generation.
+     * Must be called with the exclusive lock.
+     * @throws IOException If the journal could not be written.
+     */
+    private void compact() throws IOException {
+        final long next = ThreadLocalRandom.current().nextLong() | 1L;
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(content)) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(next);
+            for (final Map.Entry<URI, String> entry : this.index.entrySet()) {
+                output.write(JournalIndex.record(entry.getKey(), entry.getValue()));
+            }
+        }
+        final File temp = new File(this.journal.getParentFile(), JOURNAL_FILENAME + ".tmp");
+        Files.write(temp.toPath(), content.toByteArray());
+        Files.move(
+            temp.toPath(), this.journal.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+        );
+        this.generation = next;
+        this.position = content.size();
+        this.records = this.index.size();
+    }
+
+    /**
+     * Reads from a channel until the buffer is full or the end of the channel is reached.
+     * @param channel Channel to read.
+     * @param buffer Buffer to fill.
+     * @param start Position in the channel to read from.
+     * @throws IOException If the channel could not be read.
+     */
+    private static void read(final FileChannel channel, final ByteBuffer buffer, final long start)
+        throws IOException {
+        int count = 0;
+        while (buffer.hasRemaining() && count >= 0) {
+            count = channel.read(buffer, start + buffer.position());
+        }
+    }
+
+    /**
+     * Encodes the record adding an entry.
+     * @param uri Index key.
+     * @param path Index value.
+     * @return Record.
+     * @throws IOException Never, the record is written in memory.
+     */
+    private static byte[] record(final URI uri, final String path) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(record)) {
+            output.writeByte(PUT);
+            output.writeUTF(uri.toString());
+            output.writeUTF(path);
+        }
+        return record.toByteArray();
+    }
+
+    /**
+     * Action on the journal, run while holding its OS lock.
+     */
+    @FunctionalInterface
+    private interface Action {
+
+        /**
+         * Runs the action.
+         * @throws IncompatibleIndexException If the journal cannot be read.
+         * @throws IOException If the journal could not be read or written.
+         */
+        void run() throws IncompatibleIndexException, IOException;
+    }
+}
@@ -0,0 +1,615 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Index backed by a memory-mapped hash table, "index.table", shared by all the
+ * processes using the cache through the page cache.
+ * <p>The table is an open-addressing hash table, keyed by the 128 bits MD5 hash of the
+ * normalized URI, and probed linearly. Each slot holds the hash and the location of the
+ * path in "index.data.&lt;generation&gt;", an append-only file of the paths. A lookup thus
+ * reads a few slots and one path, instead of loading the whole index.</p>
+ * <p>Processes coordinate with region locks on "index.table.lock": a lookup holds a shared
+ * lock on the epoch region, which is locked exclusively to create or grow the table. A writer
+ * also holds exclusive locks on the blocks of slots it probes, and on the append region while
+ * appending a path. A slot is published by writing its hash last, so lookups do not have
+ * to wait for writers.</p>
+ * <p>The table is grown by writing a table and a paths file of the next generation beside
+ * the current ones, then renaming the new table over the current one. A process crashing
+ * meanwhile thus leaves the current table untouched. The other processes map the table
+ * again once they see its generation changed.</p>
+ * <p>The table is created from the entries of the {@link JournalIndex} of the directory,
+ * which are not updated afterwards.</p>
+ * The implementation is <b>NOT</b> thread safe and should be synchronized
+ * by the lock, which is shared by all the indexes of the same directory in the JVM.
+ * @since 2.0.1
+ */
+@NotThreadSafe
+final class MappedIndex implements FileIndex {
+
+    /**
+     * File name where the hash table is stored.
+     */
+    private static final String TABLE_FILENAME = "index.table";
+
+    /**
+     * Prefix of the names of the files where the paths are stored, followed by the generation.
+     */
+    private static final String DATA_FILENAME = "index.data";
+
+    /**
+     * File name of which regions are locked to access the table.
+     */
+    private static final String LOCK_FILENAME = "index.table.lock";
+
+    /**
+     * Marker at the start of the table.
+     */
+    private static final int MAGIC = 0x444d5048;
+
+    /**
+     * Version of the table format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Length of the table header.
+     */
+    private static final int HEADER_LENGTH = 64;
+
+    /**
+     * Position of the number of home slots in the header.
+     */
+    private static final int CAPACITY_OFFSET = 8;
+
+    /**
+     * Position of the number of entries in the header.
+     */
+    private static final int COUNT_OFFSET = 16;
+
+    /**
+     * Position of the generation of the table in the header.
+     */
+    private static final int GENERATION_OFFSET = 24;
+
+    /**
+     * Position of the region locked to access the table, exclusively to create or grow it.
+     */
+    private static final long EPOCH_LOCK = 32L;
+
+    /**
+     * Position of the region locked to append a path.
+     */
+    private static final long APPEND_LOCK = 40L;
+
+    /**
+     * Length of a slot: high and low halves of the hash, then the location of the path.
+     */
+    private static final int SLOT_LENGTH = 24;
+
+    /**
+     * Position of the low half of the hash in a slot.
+     */
+    private static final int LOW_OFFSET = 8;
+
+    /**
+     * Position of the location of the path in a slot.
+     */
+    private static final int VALUE_OFFSET = 16;
+
+    /**
+     * Number of slots in a block, the unit of the region locks of writers. As many
+     * overflow slots follow the home slots, so that probing never wraps around.
+     */
+    private static final int BLOCK_SLOTS = 64;
+
+    /**
+     * Initial number of home slots.
+     */
+    private static final long INITIAL_CAPACITY = 4096L;
+
+    /**
+     * Number of bits of the location of a path holding its length.
+     */
+    private static final int LENGTH_BITS = 24;
+
+    /**
+     * Journal of the directory, the table is created from.
+     */
+    private final JournalIndex journal;
+
+    /**
+     * Hash table file.
+     */
+    private final File table;
+
+    /**
+     * Lock file.
+     */
+    private final File lockFile;
+
+    /**
+     * Logger.
+     */
+    private final Log log;
+
+    /**
+     * Mapping of the table, {@literal null} until mapped.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * Number of home slots of the mapped table.
+     */
+    private long capacity;
+
+    /**
+     * Generation of the mapped table.
+     */
+    private long generation;
+
+    /**
+     * Creates an index backed by the hash table in baseDir.
+     * @param baseDir Directory where the table should be stored.
+     * @param log Logger.
+     */
+    MappedIndex(final File baseDir, final Log log) {
+        this.journal = new JournalIndex(baseDir, log);
+        this.table = new File(baseDir, TABLE_FILENAME);
+        this.lockFile = new File(baseDir, LOCK_FILENAME);
+        this.log = log;
+    }
+
+    @Override
+    public void put(final URI uri, final String path) {
+        final long[] hash = MappedIndex.hash(uri);
+        final byte[] value = path.getBytes(StandardCharsets.UTF_8);
+        try (FileChannel locks = this.open()) {
+            boolean inserted = false;
+            while (!inserted) {
+                try (FileLock ignored = locks.lock(EPOCH_LOCK, 1L, true)) {
+                    this.map();
+                    inserted = this.insert(locks, hash, value);
+                }
+                this.grow(locks, !inserted);
+            }
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public String get(final URI uri) {
+        String result = null;
+        if (this.table.getParentFile().isDirectory()) {
+            try (
+                FileChannel locks = this.open();
+                FileLock ignored = locks.lock(EPOCH_LOCK, 1L, true)
+            ) {
+                this.map();
+                result = this.lookup(MappedIndex.hash(uri));
+            } catch (final IOException ex) {
+                this.log.warn(
+                    String.format("Error while reading from cache %s", this.table.getAbsolutePath()), ex
+                );
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ReentrantLock getLock() {
+        return this.journal.getLock();
+    }
+
+    /**
+     * Opens the lock file, creating the table if it does not exist yet.
+     * @return Channel of the lock file.
+     * @throws IOException If the lock file could not be opened or the table created.
+     */
+    private FileChannel open() throws IOException {
+        final FileChannel locks = FileChannel.open(
+            this.lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+        try {
+            if (!this.table.isFile()) {
+                final List<MappedIndex.Slot> slots = new ArrayList<>(0);
+                for (final Map.Entry<URI, String> entry : this.journal.entries().entrySet()) {
+                    slots.add(
+                        new MappedIndex.Slot(
+                            MappedIndex.hash(entry.getKey()), entry.getValue().getBytes(StandardCharsets.UTF_8)
+                        )
+                    );
+                }
+                try (FileLock ignored = locks.lock(EPOCH_LOCK, 1L, false)) {
+                    if (!this.table.isFile()) {
+                        this.publish(slots, INITIAL_CAPACITY, 0L);
+                    }
+                }
+            }
+        } catch (final IOException ex) {
+            locks.close();
+            throw ex;
+        }
+        return locks;
+    }
+
+    /**
+     * Maps the table, again if it was replaced since it was mapped.
+     * Must be called with a lock on the epoch region.
+     * @throws IOException If the table could not be mapped.
+     */
+    private void map() throws IOException {
+        try (
+            FileChannel channel = FileChannel.open(
+                this.table.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE
+            )
+        ) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            channel.read(header, 0L);
+            if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION) {
+                throw new IOException(String.format("Unsupported cache index %s", this.table));
+            }
+            final long current = header.getLong(GENERATION_OFFSET);
+            if (this.buffer == null || current != this.generation) {
+                this.capacity = header.getLong(CAPACITY_OFFSET);
+                this.generation = current;
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, MappedIndex.length(this.capacity));
+            }
+        }
+    }
+
+    /**
+     * Looks the path of a hash up.
+     * Must be called with a lock on the epoch region.
+     * @param hash Hash of the URI.
+     * @return Path; {@literal null} if not found.
+     * @throws IOException If the path could not be read.
+     */
+    private String lookup(final long[] hash) throws IOException {
+        long value = 0L;
+        long high = -1L;
+        for (long slot = this.home(hash); value == 0L && high != 0L && slot < this.slots(); ++slot) {
+            final int offset = MappedIndex.offset(slot);
+            high = this.buffer.getLong(offset);
+            if (high == hash[0] && this.buffer.getLong(offset + LOW_OFFSET) == hash[1]) {
+                value = this.buffer.getLong(offset + VALUE_OFFSET);
+            }
+        }
+        String result = null;
+        if (value != 0L) {
+            result = new String(this.read(value), StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    /**
+     * Inserts or replaces the path of a hash, locking the blocks of slots it probes.
+     * Must be called with a shared lock on the epoch region.
+     * @param channel Channel of the lock file.
+     * @param hash Hash of the URI.
+     * @param value Path.
+     * @return True if inserted; false if no free slot was found before the end of the table.
+     * @throws IOException If the path could not be written.
+     */
+    private boolean insert(final FileChannel channel, final long[] hash, final byte[] value) throws IOException {
+        final List<FileLock> blocks = new ArrayList<>(1);
+        boolean inserted = false;
+        try {
+            for (long slot = this.home(hash); !inserted && slot < this.slots(); ++slot) {
+                if (blocks.isEmpty() || slot % BLOCK_SLOTS == 0L) {
+                    final long start = slot - slot % BLOCK_SLOTS;
+                    blocks.add(channel.lock(MappedIndex.offset(start), (long) BLOCK_SLOTS * SLOT_LENGTH, false));
+                }
+                final int offset = MappedIndex.offset(slot);
+                final long high = this.buffer.getLong(offset);
+                inserted = high == 0L
+                    || high == hash[0] && this.buffer.getLong(offset + LOW_OFFSET) == hash[1];
+                if (inserted) {
+                    this.buffer.putLong(offset + VALUE_OFFSET, this.append(channel, value, high == 0L));
+                    this.buffer.putLong(offset + LOW_OFFSET, hash[1]);
+                    this.buffer.putLong(offset, hash[0]);
+                }
+            }
+        } finally {
+            for (final FileLock block : blocks) {
+                block.release();
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Appends a path to the paths file.
+     * @param channel Channel of the lock file.
+     * @param value Path.
+     * @param added Whether the path is the one of a new entry, to be counted.
+     * @return Location of the path.
+     * @throws IOException If the path could not be written.
+     */
+    private long append(final FileChannel channel, final byte[] value, final boolean added) throws IOException {
+        try (
+            FileLock ignored = channel.lock(APPEND_LOCK, 1L, false);
+            FileChannel paths = FileChannel.open(this.data(this.generation).toPath(), StandardOpenOption.WRITE)
+        ) {
+            final long position = paths.size();
+            paths.write(ByteBuffer.wrap(value), position);
+            if (added) {
+                this.buffer.putLong(COUNT_OFFSET, this.buffer.getLong(COUNT_OFFSET) + 1L);
+            }
+            return position << LENGTH_BITS | value.length;
+        }
+    }
+
+    /**
+     * Doubles the number of slots of the table once it is half full, replacing it
+     * with a table of the next generation.
+     * @param channel Channel of the lock file.
+     * @param full Whether an insertion ran out of slots, so that the table is grown anyway.
+     * @throws IOException If the table could not be replaced.
+     */
+    private void grow(final FileChannel channel, final boolean full) throws IOException {
+        if (full || this.loaded()) {
+            try (FileLock ignored = channel.lock(EPOCH_LOCK, 1L, false)) {
+                this.map();
+                if (full || this.loaded()) {
+                    this.publish(this.entries(), this.capacity * 2L, this.generation + 1L);
+                    this.map();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a table and its paths file, then renames the table over the current one,
+     * and deletes the paths files of the other generations.
+     * Must be called with an exclusive lock on the epoch region.
+     * @param slots Entries.
+     * @param size Minimum number of home slots, a power of two.
+     * @param next Generation of the table.
+     * @throws IOException If the table could not be written.
+     */
+    private void publish(final List<MappedIndex.Slot> slots, final long size, final long next)
+        throws IOException {
+        final ByteArrayOutputStream paths = new ByteArrayOutputStream();
+        final ByteBuffer content = MappedIndex.layout(slots, paths, size);
+        content.putLong(GENERATION_OFFSET, next);
+        final File data = this.data(next);
+        MappedIndex.write(data, paths.toByteArray());
+        final File temp = new File(this.table.getParentFile(), TABLE_FILENAME + ".tmp");
+        MappedIndex.write(temp, content.array());
+        Files.move(
+            temp.toPath(), this.table.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+        );
+        final File[] stale = this.table.getParentFile().listFiles(
+            file -> file.getName().startsWith(DATA_FILENAME) && !file.equals(data)
+        );
+        for (final File file : Optional.ofNullable(stale).orElse(new File[0])) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Checks whether the mapped table is more than half full.
+     * @return True if the table is to be grown.
+     */
+    private boolean loaded() {
+        return 2L * this.buffer.getLong(COUNT_OFFSET) > this.capacity;
+    }
+
+    /**
+     * Reads all the entries of the mapped table.
+     * Must be called with a lock on the epoch region.
+     * @return Entries.
+     * @throws IOException If the paths could not be read.
+     */
+    private List<MappedIndex.Slot> entries() throws IOException {
+        final List<MappedIndex.Slot> result = new ArrayList<>(0);
+        for (long slot = 0L; slot < this.slots(); ++slot) {
+            final int offset = MappedIndex.offset(slot);
+            if (this.buffer.getLong(offset) != 0L) {
+                result.add(
+                    new MappedIndex.Slot(
+                        new long[]{this.buffer.getLong(offset), this.buffer.getLong(offset + LOW_OFFSET)},
+                        this.read(this.buffer.getLong(offset + VALUE_OFFSET))
+                    )
+                );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads a path from the paths file.
+     * @param value Location of the path.
+     * @return Path bytes.
+     * @throws IOException If the path could not be read.
+     */
+    private byte[] read(final long value) throws IOException {
+        final ByteBuffer path = ByteBuffer.allocate((int) (value & (1L << LENGTH_BITS) - 1L));
+        try (FileChannel paths = FileChannel.open(this.data(this.generation).toPath(), StandardOpenOption.READ)) {
+            int count = 0;
+            while (path.hasRemaining() && count >= 0) {
+                count = paths.read(path, (value >>> LENGTH_BITS) + path.position());
+            }
+        }
+        return path.array();
+    }
+
+    /**
+     * Paths file of a generation of the table.
+     * @param number Generation.
+     * @return Paths file.
+     */
+    private File data(final long number) {
+        return new File(this.table.getParentFile(), String.format("%s.%d", DATA_FILENAME, number));
+    }
+
+    /**
+     * Home slot of a hash.
+     * @param hash Hash of the URI.
+     * @return Slot where probing starts.
+     */
+    private long home(final long[] hash) {
+        return hash[1] & this.capacity - 1L;
+    }
+
+    /**
+     * Number of slots of the mapped table, overflow slots included.
+     * @return Number of slots.
+     */
+    private long slots() {
+        return this.capacity + BLOCK_SLOTS;
+    }
+
+    /**
+     * Lays a table out.
+     * @param slots Entries.
+     * @param paths Receives the paths file.
+     * @param capacity Minimum number of home slots, a power of two.
+     * @return Table file.
+     */
+    private static ByteBuffer layout(
+        final List<MappedIndex.Slot> slots, final ByteArrayOutputStream paths, final long capacity
+    ) {
+        long size = capacity;
+        while (2L * slots.size() > size) {
+            size *= 2L;
+        }
+        final ByteBuffer content = ByteBuffer.allocate(Math.toIntExact(MappedIndex.length(size)));
+        content.putInt(0, MAGIC).putInt(Integer.BYTES, VERSION)
+            .putLong(CAPACITY_OFFSET, size).putLong(COUNT_OFFSET, slots.size());
+        boolean fits = true;
+        for (final MappedIndex.Slot slot : slots) {
+            long index = slot.hash[1] & size - 1L;
+            while (index < size + BLOCK_SLOTS && content.getLong(MappedIndex.offset(index)) != 0L) {
+                ++index;
+            }
+            fits = fits && index < size + BLOCK_SLOTS;
+            if (fits) {
+                final int offset = MappedIndex.offset(index);
+                content.putLong(offset, slot.hash[0]).putLong(offset + LOW_OFFSET, slot.hash[1])
+                    .putLong(offset + VALUE_OFFSET, (long) paths.size() << LENGTH_BITS | slot.path.length);
+                paths.write(slot.path, 0, slot.path.length);
+            }
+        }
+        final ByteBuffer result;
+        if (fits) {
+            result = content;
+        } else {
+            paths.reset();
+            result = MappedIndex.layout(slots, paths, size * 2L);
+        }
+        return result;
+    }
+
+    /**
+     * Writes a file and forces it to the storage, for it to be complete once renamed.
+     * @param file File.
+     * @param content Content.
+     * @throws IOException If the file could not be written.
+     */
+    private static void write(final File file, final byte[] content) throws IOException {
+        try (
+            FileChannel channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+            )
+        ) {
+            final ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Hashes a URI.
+     * @param uri URI.
+     * @return High and low halves of the MD5 hash of the normalized URI;
+     *  the high half is never zero, which marks free slots.
+     */
+    private static long[] hash(final URI uri) {
+        final ByteBuffer digest = ByteBuffer.wrap(DigestUtils.md5(uri.normalize().toString()));
+        return new long[]{digest.getLong() | 1L, digest.getLong()};
+    }
+
+    /**
+     * Position of a slot in the table.
+     * @param slot Slot number.
+     * @return Position.
+     */
+    private static int offset(final long slot) {
+        return Math.toIntExact(HEADER_LENGTH + slot * SLOT_LENGTH);
+    }
+
+    /**
+     * Length of a table.
+     * @param capacity Number of home slots.
+     * @return Length of the table file.
+     */
+    private static long length(final long capacity) {
+        return HEADER_LENGTH + (capacity + BLOCK_SLOTS) * SLOT_LENGTH;
+    }
+
+    /**
+     * Entry of the table.
+     */
+    private static final class Slot {
+
+        /**
+         * High and low halves of the hash of the URI.
+         */
+        private final long[] hash;
+
+        /**
+         * Path bytes.
+         */
+        private final byte[] path;
+
+        /**
+         * Constructor.
+         * @param hash High and low halves of the hash of the URI.
+         * @param path Path bytes.
+         */
+        Slot(final long[] hash, final byte[] path) {
+            this.hash = hash;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Strategy to make the content of a file available at another path, between the
+ * download cache and the output directory.
+ * <p>Links avoid writing the content again, which matters for big files, but the file
+ * then shares its content with the other path: it must not be modified in place. The
+ * strategy falls back to a copy whenever the file system does not support it, such as
+ * a hard link across devices.</p>
+ * @since 2.0.1
+ */
+public final class Materialization {
+
+    /**
+     * Copies the content.
+     */
+    public static final String COPY = "copy";
+
+    /**
+     * Creates a hard link to the same content.
+     */
+    public static final String HARDLINK = "hardlink";
+
+    /**
+     * Clones the content, sharing its blocks until either file is modified,
+     * on file systems supporting it such as Btrfs or XFS.
+     */
+    public static final String REFLINK = "reflink";
+
+    /**
+     * Creates a symbolic link to the source. The link breaks once the source is
+     * removed, so files installed into the cache are never symbolic links.
+     */
+    public static final String SYMLINK = "symlink";
+
+    /**
+     * Supported strategies.
+     */
+    private static final Set<String> MODES = Collections.unmodifiableSet(
+        new HashSet<>(Arrays.asList(COPY, HARDLINK, REFLINK, SYMLINK))
+    );
+
+    /**
+     * Whether files can be cloned, on Windows never.
+     */
+    private static final boolean CLONES = !System.getProperty("os.name")
+        .toLowerCase(Locale.ROOT).startsWith("windows");
+
+    /**
+     * Whether files can be cloned, by file systems of the source and of the target,
+     * as found out by the first clone between them, so that files are copied right away
+     * once cloning failed instead of starting a process for each of them.
+     */
+    private static final Map<List<FileStore>, Boolean> REFLINKS = new ConcurrentHashMap<>();
+
+    /**
+     * Strategy.
+     */
+    private final String mode;
+
+    /**
+     * Logger.
+     */
+    private final Log log;
+
+    /**
+     * Constructor.
+     * @param mode Strategy, {@link #COPY}, {@link #HARDLINK}, {@link #REFLINK} or {@link #SYMLINK}.
+     * @param log Logger.
+     */
+    public Materialization(final String mode, final Log log) {
+        this.mode = mode;
+        this.log = log;
+    }
+
+    /**
+     * Checks whether a strategy is supported.
+     * @param mode Strategy.
+     * @return True if supported.
+     */
+    public static boolean supports(final String mode) {
+        return MODES.contains(mode);
+    }
+
+    /**
+     * Gets the strategy making files which are to be modified, such as given other permissions.
+     * Changing the permissions of a hard or symbolic link changes those of its source, so
+     * links are replaced by copies; clones do not share their attributes and are kept.
+     * @param modified Whether the files made are modified afterwards.
+     * @return This strategy, or copies if the files are modified and would be links.
+     */
+    public Materialization unshared(final boolean modified) {
+        final Materialization result;
+        if (modified && (HARDLINK.equals(this.mode) || SYMLINK.equals(this.mode))) {
+            result = new Materialization(COPY, this.log);
+        } else {
+            result = this;
+        }
+        return result;
+    }
+
+    /**
+     * Makes the content of a file available at another path, replacing the file at that path.
+     * @param source File.
+     * @param target Path.
+     * @throws IOException If the content could not be copied either.
+     */
+    public void apply(final File source, final File target) throws IOException {
+        this.apply(source, target, this.mode);
+    }
+
+    /**
+     * Makes the files of a directory available under another directory, keeping their
+     * relative paths. Files already made from the same content, same file or same size and
+     * modification time, are left as they are, so that an intact tree is only checked.
+     * Copies and clones are given the modification time and permissions of their source,
+     * and symbolic links are created again.
+     * @param source Directory.
+     * @param target Directory to make the files under.
+     * @return Number of files made.
+     * @throws IOException If the files could not be listed, or a file could not be copied either.
+     */
+    public int applyTree(final File source, final File target) throws IOException {
+        final Path root = source.toPath();
+        final List<Path> paths;
+        try (Stream<Path> walk = Files.walk(root)) {
+            paths = walk.collect(Collectors.toList());
+        }
+        int made = 0;
+        for (final Path path : paths) {
+            final Path dest = target.toPath().resolve(root.relativize(path).toString());
+            if (Files.isSymbolicLink(path)) {
+                made += Materialization.relink(path, dest);
+            } else if (Files.isDirectory(path)) {
+                Files.createDirectories(dest);
+            } else if (!Materialization.same(path, dest)) {
+                this.apply(path.toFile(), dest.toFile());
+                Materialization.attributes(path, dest);
+                ++made;
+            }
+        }
+        this.log.info(
+            String.format("Made %d of %d paths of %s in %s with %s", made, paths.size(), source, target, this.mode)
+        );
+        return made;
+    }
+
+    /**
+     * Makes the content of a file available at another path, replacing the file at that path,
+     * so that it remains available once the source file is removed. A copy computes the
+     * CRC32 of the content on the way, so that it does not have to be read again.
+     * @param source File.
+     * @param target Path.
+     * @return Hexadecimal CRC32 of the content if it was copied; empty if it was linked.
+     * @throws IOException If the content could not be copied either.
+     */
+    Optional<String> store(final File source, final File target) throws IOException {
+        Optional<String> crc = Optional.empty();
+        if (COPY.equals(this.mode) || SYMLINK.equals(this.mode)) {
+            try (CheckedInputStream in = new CheckedInputStream(Files.newInputStream(source.toPath()), new CRC32())) {
+                Files.copy(in, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                crc = Optional.of(Long.toHexString(in.getChecksum().getValue()));
+            }
+        } else {
+            this.apply(source, target, this.mode);
+        }
+        return crc;
+    }
+
+    /**
+     * Makes the content of a file available at another path with a strategy,
+     * falling back to a copy if it fails.
+     * @param source File.
+     * @param target Path.
+     * @param strategy Strategy.
+     * @throws IOException If the content could not be copied either.
+     */
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private void apply(final File source, final File target, final String strategy) throws IOException {
+        boolean done = false;
+        if (!COPY.equals(strategy)) {
+            Files.deleteIfExists(target.toPath());
+            try {
+                done = Materialization.link(source, target, strategy);
+            } catch (final IOException | UnsupportedOperationException | SecurityException ex) {
+                this.log.debug(
+                    String.format("Could not %s %s to %s, copying it: %s", strategy, source, target, ex.getMessage())
+                );
+            }
+        }
+        if (!done) {
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Links a file to an absent path.
+     * @param source File.
+     * @param target Path.
+     * @param strategy Strategy, other than {@link #COPY}.
+     * @return True if linked; false if the file systems do not support the strategy.
+     * @throws IOException If the link could not be created.
+     */
+    private static boolean link(final File source, final File target, final String strategy) throws IOException {
+        boolean linked = true;
+        if (HARDLINK.equals(strategy)) {
+            Files.createLink(target.toPath(), source.toPath());
+        } else if (SYMLINK.equals(strategy)) {
+            Files.createSymbolicLink(target.toPath(), source.getAbsoluteFile().toPath());
+        } else {
+            linked = Materialization.reflink(source, target);
+        }
+        return linked;
+    }
+
+    /**
+     * Creates a symbolic link again, unless it already exists with the same target.
+     * @param source Symbolic link.
+     * @param target Path.
+     * @return Number of links created.
+     * @throws IOException If the link could not be created.
+     */
+    private static int relink(final Path source, final Path target) throws IOException {
+        final Path link = Files.readSymbolicLink(source);
+        int made = 0;
+        if (!Files.isSymbolicLink(target) || !Files.readSymbolicLink(target).equals(link)) {
+            Files.deleteIfExists(target);
+            Files.createSymbolicLink(target, link);
+            made = 1;
+        }
+        return made;
+    }
+
+    /**
+     * Tells whether a path was already made from a file: either it is the same file,
+     * or it has the same size and modification time.
+     * @param source File.
+     * @param target Path.
+     * @return True if it was.
+     * @throws IOException If the attributes of the files could not be read.
+     */
+    private static boolean same(final Path source, final Path target) throws IOException {
+        boolean same = false;
+        if (Files.isRegularFile(target)) {
+            same = Files.isSameFile(source, target) || Files.size(source) == Files.size(target)
+                && Files.getLastModifiedTime(source).equals(Files.getLastModifiedTime(target));
+        }
+        return same;
+    }
+
+    /**
+     * Gives a path made from a file the modification time and permissions of the file,
+     * unless it is the same file.
+     * @param source File.
+     * @param target Path.
+     * @throws IOException If the attributes could not be set.
+     */
+    private static void attributes(final Path source, final Path target) throws IOException {
+        if (!Files.isSameFile(source, target)) {
+            Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+            final PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+            if (view != null) {
+                view.setPermissions(Files.getPosixFilePermissions(source));
+            }
+        }
+    }
+
+    /**
+     * Clones a file to an absent path, unless cloning already failed between the same
+     * file systems, or the platform cannot clone files.
+     * @param source File.
+     * @param target Path.
+     * @return True if cloned; false if the file systems do not support it.
+     * @throws IOException If the file systems could not be found, or the process could not be run.
+     */
+    private static boolean reflink(final File source, final File target) throws IOException {
+        boolean cloned = false;
+        if (CLONES) {
+            final List<FileStore> stores = Arrays.asList(
+                Files.getFileStore(source.toPath()),
+                Files.getFileStore(target.getAbsoluteFile().getParentFile().toPath())
+            );
+            final Boolean supported = REFLINKS.get(stores);
+            if (supported == null || supported) {
+                try {
+                    cloned = Materialization.cloneFile(source, target);
+                } finally {
+                    REFLINKS.putIfAbsent(stores, cloned);
+                }
+            }
+        }
+        return cloned;
+    }
+
+    /**
+     * Clones a file to an absent path. The JDK has no API for it, so it is delegated to
+     * {@code cp --reflink=always}, which fails unless the file system clones the file.
+     * @param source File.
+     * @param target Path.
+     * @return True if cloned.
+     * @throws IOException If the process could not be run.
+     */
+    private static boolean cloneFile(final File source, final File target) throws IOException {
+        final Process process = new ProcessBuilder(
+            "cp", "--reflink=always", source.getAbsolutePath(), target.getAbsolutePath()
+        ).redirectErrorStream(true).start();
+        try (InputStream out = process.getInputStream()) {
+            while (out.read() != -1) {
+                continue;
+            }
+            final boolean cloned = process.waitFor() == 0;
+            if (!cloned) {
+                Files.deleteIfExists(target.toPath());
+            }
+            return cloned;
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+}
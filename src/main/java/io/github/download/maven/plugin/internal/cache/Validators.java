@@ -0,0 +1,106 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal.cache;
+
+import java.util.Optional;
+import java.util.Properties;
+import javax.annotation.Nullable;
+
+/**
+ * Response validators of a cached file, sent back to the server to check
+ * whether the cached content is still current.
+ */
+public final class Validators {
+
+    /**
+     * No validators.
+     */
+    public static final Validators NONE = new Validators(null, null);
+
+    /**
+     * Property holding the entity tag.
+     */
+    private static final String ETAG_PROPERTY = "etag";
+
+    /**
+     * Property holding the last modification date.
+     */
+    private static final String MODIFIED_PROPERTY = "lastModified";
+
+    /**
+     * Entity tag, {@literal null} if unknown.
+     */
+    private final String etag;
+
+    /**
+     * Last modification date, {@literal null} if unknown.
+     */
+    private final String modified;
+
+    /**
+     * Constructor.
+     * @param etag Value of the {@code ETag} response header, {@literal null} if absent.
+     * @param modified Value of the {@code Last-Modified} response header, {@literal null} if absent.
+     */
+    public Validators(@Nullable final String etag, @Nullable final String modified) {
+        this.etag = etag;
+        this.modified = modified;
+    }
+
+    /**
+     * Entity tag, to be sent with {@code If-None-Match}.
+     * @return Entity tag; empty if unknown.
+     */
+    public Optional<String> etag() {
+        return Optional.ofNullable(this.etag);
+    }
+
+    /**
+     * Last modification date, to be sent with {@code If-Modified-Since}.
+     * @return Last modification date; empty if unknown.
+     */
+    public Optional<String> lastModified() {
+        return Optional.ofNullable(this.modified);
+    }
+
+    /**
+     * Checks whether there is nothing to revalidate the content with.
+     * @return True if neither validator is known.
+     */
+    public boolean isEmpty() {
+        return this.etag == null && this.modified == null;
+    }
+
+    /**
+     * Reads validators from properties.
+     * @param props Properties.
+     * @return Validators.
+     */
+    static Validators load(final Properties props) {
+        return new Validators(props.getProperty(ETAG_PROPERTY), props.getProperty(MODIFIED_PROPERTY));
+    }
+
+    /**
+     * Writes the validators to properties.
+     * @return Properties.
+     */
+    Properties store() {
+        final Properties props = new Properties();
+        this.etag().ifPresent(value -> props.setProperty(ETAG_PROPERTY, value));
+        this.lastModified().ifPresent(value -> props.setProperty(MODIFIED_PROPERTY, value));
+        return props;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal.cache;
+
+import io.github.download.maven.plugin.internal.checksum.Checksums;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Digests already verified for a cached file, recorded next to it together with
+ * the size, modification time and file key of the file they were computed for.
+ * <p>The digests are only trusted as long as the file still has the recorded
+ * attributes, so that a cached file modified or replaced behind the back of the
+ * cache is hashed again.</p>
+ * <p>A CRC32 of the file is recorded with the digests, to check cheaply that the
+ * content did not rot or get truncated since it was verified, without changing
+ * the attributes of the file.</p>
+ * @since 2.0.1
+ */
+final class VerifiedDigests {
+
+    /**
+     * Suffix of the file holding the digests of a cached file.
+     */
+    private static final String SUFFIX = ".digests";
+
+    /**
+     * Property holding the size of the file.
+     */
+    private static final String SIZE_PROPERTY = "size";
+
+    /**
+     * Property holding the modification time of the file, in nanoseconds.
+     */
+    private static final String MODIFIED_PROPERTY = "modified";
+
+    /**
+     * Property holding the file key, such as the device and inode, if the platform has one.
+     */
+    private static final String KEY_PROPERTY = "key";
+
+    /**
+     * Prefix of the properties holding the digests, followed by the algorithm.
+     */
+    private static final String DIGEST_PREFIX = "digest.";
+
+    /**
+     * Property holding the CRC32 of the file.
+     */
+    private static final String CRC_PROPERTY = "crc32";
+
+    /**
+     * Buffer size used to compute the CRC32 of the file.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Cached file.
+     */
+    private final File file;
+
+    /**
+     * File holding the digests.
+     */
+    private final File record;
+
+    /**
+     * Constructor.
+     * @param file Cached file.
+     */
+    VerifiedDigests(final File file) {
+        this.file = file;
+        this.record = new File(file.getParentFile(), file.getName() + SUFFIX);
+    }
+
+    /**
+     * Reads the digests recorded for the file.
+     * @return Digests by algorithm; empty if none were recorded or if the file
+     *  changed since they were.
+     * @throws IOException If the digests could not be read.
+     */
+    Map<String, String> load() throws IOException {
+        final Map<String, String> digests = new HashMap<>();
+        final Properties props = this.read();
+        final boolean unchanged = this.stamp().equals(VerifiedDigests.stamp(props));
+        for (final String name : props.stringPropertyNames()) {
+            if (unchanged && name.startsWith(DIGEST_PREFIX)) {
+                digests.put(name.substring(DIGEST_PREFIX.length()), props.getProperty(name));
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * Checks that the content of the file still has the CRC32 recorded with its digests.
+     * @return True if it has; false if it changed or if no CRC32 was recorded.
+     * @throws IOException If the record or the file could not be read.
+     */
+    boolean intact() throws IOException {
+        final String recorded = this.read().getProperty(CRC_PROPERTY);
+        return recorded != null && recorded.equals(VerifiedDigests.crc(this.file));
+    }
+
+    /**
+     * Records digests of the file, replacing the ones recorded before.
+     * The record is replaced atomically, as other processes may be reading it.
+     * <p>The CRC32 computed along with the digests is taken from them, under
+     * {@link Checksums#CRC32}. Without it, the CRC32 recorded before is kept if the
+     * file did not change since, and only otherwise is the file read again.</p>
+     * @param digests Digests by algorithm.
+     * @throws IOException If the digests could not be written.
+     */
+    void store(final Map<String, String> digests) throws IOException {
+        final Properties recorded = this.read();
+        final Map<String, String> stamp = this.stamp();
+        final Properties props = new Properties();
+        props.putAll(stamp);
+        String crc = digests.get(Checksums.CRC32);
+        if (crc == null && stamp.equals(VerifiedDigests.stamp(recorded))) {
+            crc = recorded.getProperty(CRC_PROPERTY);
+        }
+        if (crc == null) {
+            crc = VerifiedDigests.crc(this.file);
+        }
+        props.setProperty(CRC_PROPERTY, crc);
+        for (final Map.Entry<String, String> digest : digests.entrySet()) {
+            if (!Checksums.CRC32.equals(digest.getKey())) {
+                props.setProperty(DIGEST_PREFIX + digest.getKey(), digest.getValue());
+            }
+        }
+        final File temp = File.createTempFile(this.record.getName(), ".tmp", this.record.getParentFile());
+        try {
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                props.store(out, null);
+            }
+            Files.move(
+                temp.toPath(), this.record.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+            );
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Reads the record.
+     * @return Recorded properties; empty if there is no record.
+     * @throws IOException If the record could not be read.
+     */
+    private Properties read() throws IOException {
+        final Properties props = new Properties();
+        if (this.record.isFile()) {
+            try (InputStream in = Files.newInputStream(this.record.toPath())) {
+                props.load(in);
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Current attributes of the file.
+     * @return Attributes by property name.
+     * @throws IOException If the attributes could not be read.
+     */
+    private Map<String, String> stamp() throws IOException {
+        final BasicFileAttributes attrs = Files.readAttributes(this.file.toPath(), BasicFileAttributes.class);
+        final Map<String, String> stamp = new HashMap<>();
+        stamp.put(SIZE_PROPERTY, String.valueOf(attrs.size()));
+        stamp.put(MODIFIED_PROPERTY, String.valueOf(attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)));
+        stamp.put(KEY_PROPERTY, String.valueOf(attrs.fileKey()));
+        return stamp;
+    }
+
+    /**
+     * Attributes of the file recorded in properties.
+     * @param props Properties.
+     * @return Attributes by property name.
+     */
+    private static Map<String, String> stamp(final Properties props) {
+        final Map<String, String> stamp = new HashMap<>();
+        stamp.put(SIZE_PROPERTY, props.getProperty(SIZE_PROPERTY));
+        stamp.put(MODIFIED_PROPERTY, props.getProperty(MODIFIED_PROPERTY));
+        stamp.put(KEY_PROPERTY, props.getProperty(KEY_PROPERTY));
+        return stamp;
+    }
+
+    /**
+     * Computes the CRC32 of a file.
+     * @param file File.
+     * @return Hexadecimal CRC32.
+     * @throws IOException If the file could not be read.
+     */
+    private static String crc(final File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(VerifiedDigests.BUFFER_SIZE);
+        final Buffer window = buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                window.flip();
+                crc.update(buffer);
+                window.clear();
+            }
+        }
+        return Long.toHexString(crc.getValue());
+    }
+}
@@ -17,32 +17,41 @@ package io.github.download.maven.plugin.internal.checksum;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.security.MessageDigest;
+import java.util.Collection;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 
 /**
  * Checksums supplied to verify file integrity.
+ * <p>Not thread safe: the CRC32 of the file last validated is kept, to be recorded
+ * with the supplied checksums.</p>
  * @author Paul Polishchuk
  */
 public final class Checksums {
 
     /**
-     * Number of bytes in kByte.
+     * Algorithm under which the CRC32 of a validated file is recorded with its digests.
+     * @since 2.0.1
      */
-    private static final int KBYTE = 1024;
+    public static final String CRC32 = "CRC32";
 
     /**
      * A map of a checksum type to a digest.
      */
     private final Map<Checksum, String> supplied;
 
+    /**
+     * CRC32 of the file last validated, computed along with its digests;
+     * {@literal null} if no file was validated since content was.
+     */
+    @Nullable
+    private String validated;
+
     /**
      * Constructor.
      * @param md5 Supplied md5 checksum, may be {@literal null}.
@@ -61,10 +70,18 @@ public final class Checksums {
         if (this.supplied.isEmpty()) {
             log.debug("No checksums were supplied, skipping file validation");
         } else if (this.supplied.size() > 1) {
-            log.warn("More than one checksum is supplied. This may be slow for big files. Consider using a single checksum.");
+            log.warn("More than one checksum is supplied. Each one adds to the time to hash big files. Consider using a single checksum.");
         }
     }
 
+    /**
+     * Tells whether no checksums were supplied.
+     * @return True if there is nothing to validate.
+     */
+    public boolean isEmpty() {
+        return this.supplied.isEmpty();
+    }
+
     /**
      * Validates the file with supplied checksums.
      * @param file File to validate.
@@ -83,16 +100,105 @@ public final class Checksums {
     }
 
     /**
-     * Validates the file with supplied checksums.
+     * Validates the file with supplied checksums, computed in a single pass over the file.
      * @param file File to validate.
      * @throws Exception If the file didn't match any supplied checksum.
      */
     public void validate(final File file) throws Exception {
+        final Digester digester = Checksums.read(file, this.supplied.keySet());
+        this.validated = null;
+        for (final Map.Entry<Checksum, String> entry : digester.digest().entrySet()) {
+            Checksums.compare(this.supplied.get(entry.getKey()), entry.getValue());
+        }
+        if (digester.length() == file.length()) {
+            this.validated = digester.crc();
+        }
+    }
+
+    /**
+     * Validates the file with supplied checksums, comparing them with the digests
+     * already known for the file, so that only the unknown ones are computed,
+     * in a single pass over the file.
+     * @param file File to validate.
+     * @param verified Digests of the file by algorithm; receives the computed ones,
+     *  and its {@link #CRC32} if the file was read.
+     * @return True if the file matches all supplied checksums
+     *  or if no checksums were supplied.
+     */
+    public boolean isValid(final File file, final Map<String, String> verified) {
+        final Set<Checksum> unknown = EnumSet.noneOf(Checksum.class);
+        for (final Checksum checksum : this.supplied.keySet()) {
+            if (!verified.containsKey(checksum.algo())) {
+                unknown.add(checksum);
+            }
+        }
+        boolean valid = true;
+        try {
+            final Digester digester = Checksums.read(file, unknown);
+            for (final Map.Entry<Checksum, String> entry : digester.digest().entrySet()) {
+                verified.put(entry.getKey().algo(), entry.getValue());
+            }
+            if (!unknown.isEmpty()) {
+                verified.put(Checksums.CRC32, digester.crc());
+            }
+        } catch (final IOException ex) {
+            valid = false;
+        }
         for (final Map.Entry<Checksum, String> entry : this.supplied.entrySet()) {
-            Checksums.verifyChecksum(
-                file, entry.getValue(),
-                MessageDigest.getInstance(entry.getKey().algo())
-            );
+            valid = valid && entry.getValue().equals(verified.get(entry.getKey().algo()));
+        }
+        return valid;
+    }
+
+    /**
+     * Records the supplied checksums as digests of a file validated with them,
+     * together with the {@link #CRC32} computed while the file was validated.
+     * @param verified Digests of the file by algorithm; receives the supplied ones.
+     */
+    public void record(final Map<String, String> verified) {
+        for (final Map.Entry<Checksum, String> entry : this.supplied.entrySet()) {
+            verified.put(entry.getKey().algo(), entry.getValue());
+        }
+        if (this.validated != null) {
+            verified.put(Checksums.CRC32, this.validated);
+        }
+    }
+
+    /**
+     * Creates a digester computing the supplied checksums of content
+     * while it is being written.
+     * @return New digester.
+     */
+    public Digester digester() {
+        return new Digester(this.supplied.keySet());
+    }
+
+    /**
+     * Validates the file with supplied checksums, using the digests computed
+     * while it was written if they cover the whole file, so that it is not read again.
+     * @param file File to validate.
+     * @param digester Digester fed with the content of the file.
+     * @throws Exception If the file didn't match any supplied checksum.
+     */
+    public void validate(final File file, final Digester digester) throws Exception {
+        if (digester.length() == file.length()) {
+            this.validate(digester);
+            this.validated = digester.crc();
+        } else {
+            this.validate(file);
+        }
+    }
+
+    /**
+     * Validates content that was not written to a file with supplied checksums,
+     * using the digests computed while it was streamed.
+     * @param digester Digester fed with the whole content.
+     * @throws Exception If the content didn't match any supplied checksum.
+     */
+    public void validate(final Digester digester) throws Exception {
+        this.validated = null;
+        for (final Map.Entry<Checksum, String> entry : digester.digest().entrySet()) {
+            Checksums.compare(this.supplied.get(entry.getKey()), entry.getValue());
         }
     }
 
@@ -127,19 +233,28 @@ public final class Checksums {
     }
 
     /**
-     * Verifies the checksum of a file using the provided MessageDigest and compares it
-     * with an expected digest string.
-     *
-     * @param file The file whose checksum is to be verified.
-     * @param expectedDigest The expected checksum as a hexadecimal string.
-     * @param digest An instance of MessageDigest to compute the file's checksum.
+     * Digests a file, reading it once whatever the number of digests.
+     * @param file The file to digest.
+     * @param checksums Checksum types to compute.
+     * @return Digester fed with the file; fed with nothing, without reading the file, if no digest is requested.
      * @throws IOException If an I/O error occurs while reading the file.
+     */
+    private static Digester read(final File file, final Collection<Checksum> checksums) throws IOException {
+        final Digester digester = new Digester(checksums);
+        if (!checksums.isEmpty()) {
+            digester.update(file);
+        }
+        return digester;
+    }
+
+    /**
+     * Compares a computed checksum with an expected digest string.
+     * @param expectedDigest The expected checksum as a hexadecimal string.
+     * @param actualDigestHex The computed checksum as a hexadecimal string.
      * @throws MojoFailureException If the computed checksum does not match the expected checksum.
      */
-    private static void verifyChecksum(
-        final File file, final String expectedDigest, final MessageDigest digest
-    ) throws IOException, MojoFailureException {
-        final String actualDigestHex = Checksums.computeChecksumAsString(file, digest);
+    private static void compare(final String expectedDigest, final String actualDigestHex)
+        throws MojoFailureException {
         if (!actualDigestHex.equals(expectedDigest)) {
             throw new MojoFailureException(
                 String.format(
@@ -149,29 +264,4 @@ public final class Checksums {
             );
         }
     }
-
-    /**
-     * Computes the checksum of a given file using the provided MessageDigest instance
-     * and returns it as a hexadecimal string.
-     *
-     * @param file The file whose checksum is to be computed.
-     * @param digest An instance of MessageDigest to compute the file's checksum.
-     * @return The computed checksum as a hexadecimal string.
-     * @throws IOException If an I/O error occurs while reading the file.
-     */
-    private static String computeChecksumAsString(final File file, final MessageDigest digest)
-        throws IOException {
-        final InputStream fis = Files.newInputStream(file.toPath());
-        final byte[] buffer = new byte[Checksums.KBYTE];
-        int numRead;
-        do {
-            numRead = fis.read(buffer);
-            if (numRead > 0) {
-                digest.update(buffer, 0, numRead);
-            }
-        } while (numRead != -1);
-        fis.close();
-        final byte[] actualDigest = digest.digest();
-        return new String(Hex.encodeHex(actualDigest));
-    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.download.maven.plugin.internal.checksum;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Digests of content computed while it is being written, so that it does not
+ * have to be read again to be validated.
+ * <p>A CRC32 of the content is always computed along, as it is cheap, to be recorded
+ * with the digests of cached files.</p>
+ * <p>Not thread safe: the content must be fed in order from a single thread.</p>
+ */
+public final class Digester {
+
+    /**
+     * Buffer size used to digest a stream.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Buffer size used to digest a file.
+     */
+    private static final int FILE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Digests of the content by checksum type.
+     */
+    private final Map<Checksum, MessageDigest> digests;
+
+    /**
+     * CRC32 of the content.
+     */
+    private final CRC32 crc;
+
+    /**
+     * Number of bytes digested.
+     */
+    private long length;
+
+    /**
+     * Constructor.
+     * @param checksums Checksum types to compute.
+     */
+    Digester(final Collection<Checksum> checksums) {
+        this.digests = new EnumMap<>(Checksum.class);
+        this.crc = new CRC32();
+        for (final Checksum checksum : checksums) {
+            try {
+                this.digests.put(checksum, MessageDigest.getInstance(checksum.algo()));
+            } catch (final NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * Creates a digester computing no checksum, which only counts the content length.
+     * @return New digester.
+     */
+    public static Digester none() {
+        return new Digester(Collections.emptySet());
+    }
+
+    /**
+     * Digests a chunk of the content.
+     * @param bytes Buffer holding the chunk.
+     * @param offset Position of the chunk in the buffer.
+     * @param count Number of bytes of the chunk.
+     */
+    public void update(final byte[] bytes, final int offset, final int count) {
+        for (final MessageDigest digest : this.digests.values()) {
+            digest.update(bytes, offset, count);
+        }
+        this.crc.update(bytes, offset, count);
+        this.length += count;
+    }
+
+    /**
+     * Digests the rest of the content read from a stream.
+     * @param input Stream to read; it is not closed.
+     * @throws IOException If the stream could not be read.
+     */
+    public void update(final InputStream input) throws IOException {
+        final byte[] buffer = new byte[Digester.BUFFER_SIZE];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            this.update(buffer, 0, count);
+        }
+    }
+
+    /**
+     * Digests the content of a file.
+     * <p>The file is read through its channel into a large direct buffer, so that
+     * hashing a big file takes few system calls and no copy to the heap.</p>
+     * @param file File to read.
+     * @throws IOException If the file could not be read.
+     */
+    public void update(final File file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(Digester.FILE_BUFFER_SIZE);
+        final Buffer window = buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                window.flip();
+                this.update(buffer);
+                window.clear();
+            }
+        }
+    }
+
+    /**
+     * Digests the remaining bytes of a buffer, leaving it consumed.
+     * @param buffer Buffer holding a chunk of the content.
+     */
+    public void update(final ByteBuffer buffer) {
+        for (final MessageDigest digest : this.digests.values()) {
+            digest.update(buffer.duplicate());
+        }
+        this.crc.update(buffer.duplicate());
+        final Buffer chunk = buffer;
+        this.length += chunk.remaining();
+        chunk.position(chunk.limit());
+    }
+
+    /**
+     * Drops everything digested so far, to start the content over.
+     */
+    public void reset() {
+        this.digests.values().forEach(MessageDigest::reset);
+        this.crc.reset();
+        this.length = 0L;
+    }
+
+    /**
+     * Number of bytes digested so far.
+     * @return Content length.
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * CRC32 of the content digested so far.
+     * @return Hexadecimal CRC32.
+     */
+    public String crc() {
+        return Long.toHexString(this.crc.getValue());
+    }
+
+    /**
+     * Completes the digests of the content.
+     * @return Hexadecimal digests by checksum type.
+     */
+    Map<Checksum, String> digest() {
+        final Map<Checksum, String> result = new EnumMap<>(Checksum.class);
+        for (final Map.Entry<Checksum, MessageDigest> entry : this.digests.entrySet()) {
+            result.put(entry.getKey(), new String(Hex.encodeHex(entry.getValue().digest())));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.download.maven.plugin.internal;
+
+import org.apache.http.HttpHost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * Unit tests for {@link HttpClientPool}
+ */
+public class HttpClientPoolTest {
+
+    @After
+    public void tearDown() throws Exception {
+        HttpClientPool.closeAll();
+    }
+
+    /**
+     * Executions with the same connection settings should share one pooled client.
+     */
+    @Test
+    public void testSameConfigurationSharesClient() {
+        assertThat(HttpClientPool.client(new HttpClientPool.Key(3000, 3000, true, false, null, 20, 10)),
+                is(sameInstance(HttpClientPool.client(new HttpClientPool.Key(3000, 3000, true, false, null, 20, 10)))));
+    }
+
+    /**
+     * Any difference in the connection settings should give a separate pooled client.
+     */
+    @Test
+    public void testDifferentConfigurationGetsOwnClient() {
+        final HttpClientPool.Key key = new HttpClientPool.Key(3000, 3000, true, false, null, 20, 10);
+        assertThat(HttpClientPool.client(key),
+                is(not(sameInstance(HttpClientPool.client(new HttpClientPool.Key(3000, 3000, true, true, null, 20, 10))))));
+        assertThat(HttpClientPool.client(key),
+                is(not(sameInstance(HttpClientPool.client(new HttpClientPool.Key(3000, 3000, false, false, null, 20, 10))))));
+        assertThat(HttpClientPool.client(key),
+                is(not(sameInstance(HttpClientPool.client(
+                        new HttpClientPool.Key(3000, 3000, true, false, new HttpHost("proxy", 3128), 20, 10))))));
+    }
+
+    /**
+     * Clients created outside of the registry should be new ones, not the shared client.
+     */
+    @Test
+    public void testCreatedClientsAreNotShared() throws Exception {
+        final HttpClientPool.Key key = new HttpClientPool.Key(3000, 3000, true, false, null, 20, 10);
+        try (CloseableHttpClient first = HttpClientPool.create(key);
+             CloseableHttpClient second = HttpClientPool.create(key)) {
+            assertThat(first, is(not(sameInstance(second))));
+            assertThat(first, is(not(sameInstance(HttpClientPool.client(key)))));
+        }
+    }
+}
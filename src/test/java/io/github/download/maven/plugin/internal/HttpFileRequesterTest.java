@@ -1,27 +1,34 @@
 package io.github.download.maven.plugin.internal;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import io.github.download.maven.plugin.internal.cache.Validators;
+import io.github.download.maven.plugin.internal.checksum.Checksums;
+import io.github.download.maven.plugin.internal.checksum.Digester;
 import javax.net.ssl.SSLHandshakeException;
 import org.apache.http.auth.AUTH;
 import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static java.util.Collections.emptyList;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.fail;
@@ -47,6 +54,12 @@ public class HttpFileRequesterTest {
         this.outputFile = new File(this.outputDirectory.getRoot(), OUTPUT_FILE_NAME);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        HttpClientPool.closeAll();
+        Http2Transport.closeAll();
+    }
+
     private HttpFileRequester.Builder createFileRequesterBuilder() throws Exception {
         class MavenSessionStub extends MavenSession {
             @SuppressWarnings("deprecation")
@@ -177,4 +190,243 @@ public class HttpFileRequesterTest {
             assertThat(e, is(instanceOf(DownloadFailureException.class)));
         }
     }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} should fetch a resource in parallel byte ranges
+     * if the server accepts ranges
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testSegmentedDownload()
+            throws Exception {
+        final String content = "0123456789abcdefghij";
+        this.wireMock.stubFor(head(anyUrl())
+                .willReturn(ok()
+                        .withHeader("Accept-Ranges", "bytes")
+                        .withHeader("Content-Length", String.valueOf(content.length()))
+                        .withHeader("ETag", "\"v1\"")));
+        for (int start = 0; start < content.length(); start += 5) {
+            this.wireMock.stubFor(get(anyUrl())
+                    .withHeader("Range", equalTo("bytes=" + start + "-" + (start + 4)))
+                    .withHeader("If-Range", equalTo("\"v1\""))
+                    .willReturn(aResponse().withStatus(206)
+                            .withHeader("Content-Range", "bytes " + start + "-" + (start + 4) + "/20")
+                            .withBody(content.substring(start, start + 5))));
+        }
+
+        createFileRequesterBuilder()
+                .withSegments(4)
+                .withSegmentSize(5)
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(new String(Files.readAllBytes(this.outputFile.toPath())), is(content));
+        this.wireMock.verify(4, getRequestedFor(anyUrl()).withHeader("Range", matching("bytes=.*")));
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} should fall back to a single stream
+     * if the server does not accept ranges
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testSegmentedDownloadFallback()
+            throws Exception {
+        this.wireMock.stubFor(head(anyUrl())
+                .willReturn(ok().withHeader("Content-Length", "20")));
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(ok().withBody("0123456789abcdefghij")));
+
+        createFileRequesterBuilder()
+                .withSegments(4)
+                .withSegmentSize(5)
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(new String(Files.readAllBytes(this.outputFile.toPath())), is("0123456789abcdefghij"));
+        this.wireMock.verify(1, getRequestedFor(anyUrl()).withoutHeader("Range"));
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} should fall back to a single stream
+     * if the resource only has a weak entity tag to request ranges with
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testSegmentedDownloadFallbackWithoutStrongValidator()
+            throws Exception {
+        this.wireMock.stubFor(head(anyUrl())
+                .willReturn(ok()
+                        .withHeader("Accept-Ranges", "bytes")
+                        .withHeader("Content-Length", "20")
+                        .withHeader("ETag", "W/\"v1\"")));
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(ok().withBody("0123456789abcdefghij")));
+
+        createFileRequesterBuilder()
+                .withSegments(4)
+                .withSegmentSize(5)
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(new String(Files.readAllBytes(this.outputFile.toPath())), is("0123456789abcdefghij"));
+        this.wireMock.verify(1, getRequestedFor(anyUrl()).withoutHeader("Range"));
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} should fail if a range is served
+     * with another content range than the requested one
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testSegmentedDownloadOfUnexpectedRange()
+            throws Exception {
+        this.wireMock.stubFor(head(anyUrl())
+                .willReturn(ok()
+                        .withHeader("Accept-Ranges", "bytes")
+                        .withHeader("Content-Length", "20")
+                        .withHeader("Date", "Sun, 06 Nov 1994 08:49:38 GMT")
+                        .withHeader("Last-Modified", "Sun, 06 Nov 1994 08:49:37 GMT")));
+        this.wireMock.stubFor(get(anyUrl())
+                .withHeader("If-Range", equalTo("Sun, 06 Nov 1994 08:49:37 GMT"))
+                .willReturn(aResponse().withStatus(206)
+                        .withHeader("Content-Range", "bytes 0-4/25")
+                        .withBody("01234")));
+
+        try {
+            createFileRequesterBuilder()
+                    .withSegments(4)
+                    .withSegmentSize(5)
+                    .build()
+                    .download(this.outputFile, emptyList());
+            fail("An IOException should have been thrown");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("content range bytes 0-4/25"));
+        }
+    }
+
+    /**
+     * Tests that {@link HttpFileRequester#download(File, List)} continues a partial download
+     * with a range request
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testResumeDownload()
+            throws Exception {
+        new PartialDownload(this.outputFile, new URI("http://localhost:" + this.wireMock.port()))
+                .start("\"v1\"");
+        Files.write(new File(this.outputFile.getPath() + ".part").toPath(), "Hello, ".getBytes());
+        this.wireMock.stubFor(get(anyUrl())
+                .withHeader("Range", equalTo("bytes=7-"))
+                .withHeader("If-Range", equalTo("\"v1\""))
+                .willReturn(aResponse()
+                        .withStatus(206)
+                        .withHeader("Content-Range", "bytes 7-12/13")
+                        .withBody("world!")));
+
+        createFileRequesterBuilder()
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(new String(Files.readAllBytes(this.outputFile.toPath())), is("Hello, world!"));
+        assertThat(new File(this.outputFile.getPath() + ".part").exists(), is(false));
+        assertThat(new File(this.outputFile.getPath() + ".part.properties").exists(), is(false));
+    }
+
+    /**
+     * Tests that {@link HttpFileRequester#download(File, List)} starts over when the server
+     * answers a range request with the full, changed content
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testResumeDownloadOfChangedResource()
+            throws Exception {
+        new PartialDownload(this.outputFile, new URI("http://localhost:" + this.wireMock.port()))
+                .start("\"v1\"");
+        Files.write(new File(this.outputFile.getPath() + ".part").toPath(), "Hello, ".getBytes());
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(ok()
+                        .withHeader("ETag", "\"v2\"")
+                        .withBody("Goodbye!")));
+
+        createFileRequesterBuilder()
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(new String(Files.readAllBytes(this.outputFile.toPath())), is("Goodbye!"));
+        this.wireMock.verify(1, getRequestedFor(anyUrl()).withHeader("Range", equalTo("bytes=7-")));
+    }
+
+    /**
+     * Tests that {@link HttpFileRequester#download(File, List)} digests the content, including
+     * the resumed partial content, while it is written
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testDigestWhileDownloading()
+            throws Exception {
+        new PartialDownload(this.outputFile, new URI("http://localhost:" + this.wireMock.port()))
+                .start("\"v1\"");
+        Files.write(new File(this.outputFile.getPath() + ".part").toPath(), "Hello, ".getBytes());
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(aResponse()
+                        .withStatus(206)
+                        .withHeader("Content-Range", "bytes 7-12/13")
+                        .withBody("world!")));
+        final Checksums checksums = new Checksums(
+                null, null, "315f5bdb76d078c43b8ac0064e4a0164612b1fce77c869345bfc94c75894edd3", null, LOG
+        );
+        final Digester digester = checksums.digester();
+
+        createFileRequesterBuilder()
+                .withDigester(digester)
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(digester.length(), is(this.outputFile.length()));
+        checksums.validate(this.outputFile, digester);
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} over the multiplexed HTTP/2 transport
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testMultiplexedDownload()
+            throws Exception {
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(ok("Hello, world!").withHeader("ETag", "\"v1\"")));
+
+        final Optional<Validators> validators = createFileRequesterBuilder()
+                .withMultiplexing(true)
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(new String(Files.readAllBytes(this.outputFile.toPath())), is("Hello, world!"));
+        assertThat(validators.flatMap(Validators::etag), is(Optional.of("\"v1\"")));
+        assertThat(this.wireMock.getAllServeEvents().get(0).getRequest().getProtocol(), is("HTTP/2.0"));
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} with basic authentication over the multiplexed
+     * HTTP/2 transport
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testMultiplexedDownloadWithPreemptiveAuth()
+            throws Exception {
+        this.wireMock.stubFor(get(anyUrl())
+                .withBasicAuth("user", "pass")
+                .willReturn(ok("Hello, world!")));
+
+        createFileRequesterBuilder()
+                .withMultiplexing(true)
+                .withUsername("user")
+                .withPassword("pass")
+                .withPreemptiveAuth(true)
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(new String(Files.readAllBytes(this.outputFile.toPath())), is("Hello, world!"));
+    }
 }
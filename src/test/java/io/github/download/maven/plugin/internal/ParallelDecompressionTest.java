@@ -0,0 +1,187 @@
+package io.github.download.maven.plugin.internal;
+
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit test suite for the {@link ParallelDecompression} class.
+ */
+public class ParallelDecompressionTest {
+
+    private static final int THREADS = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Shall decompress the BGZF members of a gzip archive in parallel, in order.
+     */
+    @Test
+    public void decompressesBgzfMembers() throws Exception {
+        final byte[] content = content();
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        for (int start = 0; start < content.length; start += 60 * 1024) {
+            archive.write(bgzfMember(Arrays.copyOfRange(content, start, Math.min(content.length, start + 60 * 1024))));
+        }
+        archive.write(bgzfMember(new byte[0]));
+        assertThat(decompress(archive.toByteArray(), TarStreamUnArchiver.Compression.GZIP), is(content));
+    }
+
+    /**
+     * Shall decompress a gzip archive without BGZF members in sequence.
+     */
+    @Test
+    public void decompressesGzipArchive() throws Exception {
+        final byte[] content = content();
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(archive)) {
+            out.write(content);
+        }
+        assertThat(decompress(archive.toByteArray(), TarStreamUnArchiver.Compression.GZIP), is(content));
+    }
+
+    /**
+     * Shall decompress the frames of a zstd archive not recording their content size in sequence,
+     * skipping skippable frames.
+     */
+    @Test
+    public void decompressesZstdFrames() throws Exception {
+        final byte[] content = content();
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        for (int start = 0; start < content.length; start += 1024 * 1024) {
+            try (OutputStream out = new ZstdCompressorOutputStream(new NonClosing(archive))) {
+                out.write(content, start, Math.min(content.length - start, 1024 * 1024));
+            }
+            archive.write(
+                ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN).putInt(0x184D2A5F).putInt(4).putInt(0).array()
+            );
+        }
+        assertThat(decompress(archive.toByteArray(), TarStreamUnArchiver.Compression.ZSTD), is(content));
+    }
+
+    /**
+     * Shall decompress the frames of a zstd archive recording their content size in parallel.
+     */
+    @Test
+    public void decompressesZstdFramesOfKnownSize() throws Exception {
+        final byte[] content = content();
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        for (int start = 0; start < content.length; start += 100 * 1024) {
+            archive.write(rawZstdFrame(Arrays.copyOfRange(content, start, Math.min(content.length, start + 100 * 1024))));
+        }
+        assertThat(decompress(archive.toByteArray(), TarStreamUnArchiver.Compression.ZSTD), is(content));
+    }
+
+    /**
+     * Shall decompress the blocks of an xz archive in parallel, in order.
+     */
+    @Test
+    public void decompressesXzBlocks() throws Exception {
+        final byte[] content = content();
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (XZOutputStream out = new XZOutputStream(archive, new LZMA2Options(1))) {
+            for (int start = 0; start < content.length; start += 512 * 1024) {
+                out.write(content, start, Math.min(content.length - start, 512 * 1024));
+                out.endBlock();
+            }
+        }
+        assertThat(decompress(archive.toByteArray(), TarStreamUnArchiver.Compression.XZ), is(content));
+    }
+
+    private byte[] decompress(final byte[] archive, final TarStreamUnArchiver.Compression compression)
+        throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), archive);
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = ParallelDecompression.open(file, compression, THREADS)) {
+            final byte[] buffer = new byte[7919];
+            int read = in.read(buffer);
+            while (read >= 0) {
+                result.write(buffer, 0, read);
+                read = in.read(buffer);
+            }
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] content() {
+        final Random random = new Random(42L);
+        final byte[] result = new byte[5 * 1024 * 1024 + 123];
+        for (int idx = 0; idx < result.length; idx += 1024) {
+            final byte[] line = new byte[512];
+            random.nextBytes(line);
+            System.arraycopy(line, 0, result, idx, Math.min(line.length, result.length - idx));
+        }
+        return result;
+    }
+
+    private static byte[] bgzfMember(final byte[] content) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content);
+        deflater.finish();
+        final byte[] deflated = new byte[content.length + 1024];
+        final int length = deflater.deflate(deflated);
+        deflater.end();
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        return ByteBuffer.allocate(18 + length + 8).order(ByteOrder.LITTLE_ENDIAN)
+            .put(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff})
+            .putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2)
+            .putShort((short) (18 + length + 8 - 1))
+            .put(deflated, 0, length)
+            .putInt((int) crc.getValue()).putInt(content.length)
+            .array();
+    }
+
+    private static byte[] rawZstdFrame(final byte[] content) {
+        final int header = content.length << 3 | 1;
+        return ByteBuffer.allocate(4 + 1 + 4 + 3 + content.length).order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(0xFD2FB528).put((byte) 0xA0).putInt(content.length)
+            .put((byte) header).putShort((short) (header >>> 8))
+            .put(content)
+            .array();
+    }
+
+    /**
+     * Stream that leaves its underlying stream open when closed.
+     */
+    private static final class NonClosing extends OutputStream {
+
+        private final OutputStream out;
+
+        NonClosing(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            out.write(value);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int count) throws IOException {
+            out.write(bytes, offset, count);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.download.maven.plugin.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit test suite for the {@link ParallelZipUnArchiver} class.
+ */
+public class ParallelZipUnArchiverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Shall extract only the entry of a path, to the given directory.
+     */
+    @Test
+    public void extractsSingleEntry() throws Exception {
+        final ParallelZipUnArchiver unarchiver = new ParallelZipUnArchiver(2);
+        unarchiver.setSourceFile(this.archive());
+        final File output = this.folder.newFolder();
+        unarchiver.extract("docs/readme.txt", output);
+        assertThat(new String(Files.readAllBytes(new File(output, "docs/readme.txt").toPath())), is("docs/readme.txt"));
+        assertThat(new File(output, "docs/guide.txt").exists(), is(false));
+        assertThat(new File(output, "src/main.c").exists(), is(false));
+    }
+
+    /**
+     * Shall extract the entries under a directory, to the given directory.
+     */
+    @Test
+    public void extractsEntriesUnderDirectory() throws Exception {
+        final ParallelZipUnArchiver unarchiver = new ParallelZipUnArchiver(2);
+        unarchiver.setSourceFile(this.archive());
+        final File output = this.folder.newFolder();
+        unarchiver.extract("docs/", output);
+        assertThat(new File(output, "docs/readme.txt").isFile(), is(true));
+        assertThat(new File(output, "docs/guide.txt").isFile(), is(true));
+        assertThat(new File(output, "src/main.c").exists(), is(false));
+    }
+
+    private File archive() throws Exception {
+        final File archive = this.folder.newFile("archive.zip");
+        try (OutputStream out = Files.newOutputStream(archive.toPath()); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (final String name : new String[]{"docs/readme.txt", "docs/guide.txt", "src/main.c"}) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(name.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return archive;
+    }
+}
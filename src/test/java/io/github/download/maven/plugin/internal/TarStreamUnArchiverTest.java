@@ -0,0 +1,33 @@
+package io.github.download.maven.plugin.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit test suite for the {@link TarStreamUnArchiver} class.
+ */
+public class TarStreamUnArchiverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Shall extract only the entries under a path, to the given directory.
+     */
+    @Test
+    public void extractsEntriesUnderPath() throws Exception {
+        final TarStreamUnArchiver unarchiver = new TarStreamUnArchiver(TarStreamUnArchiver.Compression.GZIP, 2);
+        unarchiver.setSourceFile(new File(getClass().getResource("/archive.tar.gz").toURI()));
+        final File output = this.folder.newFolder();
+        unarchiver.extract("docs/", output);
+        assertThat(new String(Files.readAllBytes(new File(output, "docs/readme.txt").toPath())), is("docs/readme.txt"));
+        assertThat(new File(output, "src/main.c").exists(), is(false));
+    }
+}
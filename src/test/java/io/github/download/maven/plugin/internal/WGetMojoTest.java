@@ -1,11 +1,20 @@
 package io.github.download.maven.plugin.internal;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.sun.net.httpserver.HttpServer;
+import io.github.download.maven.plugin.internal.cache.CacheEntryLock;
+import io.github.download.maven.plugin.internal.cache.DownloadCache;
+import io.github.download.maven.plugin.internal.checksum.Checksums;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
 import org.apache.http.*;
 import org.apache.http.client.cache.HeaderConstants;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
 import org.apache.http.message.BasicHttpResponse;
@@ -18,8 +27,14 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.archiver.manager.ArchiverManager;
+import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
+import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
+import org.codehaus.plexus.components.io.filemappers.FileMapper;
+import org.codehaus.plexus.components.io.filemappers.PrefixFileMapper;
 import org.codehaus.plexus.util.ReflectionUtils;
 import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -30,10 +45,13 @@ import org.sonatype.plexus.build.incremental.BuildContext;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -42,15 +60,22 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
@@ -79,6 +104,7 @@ public class WGetMojoTest {
     private Path cacheDirectory;
     private final static String OUTPUT_FILE_NAME = "output-file";
     private Path outputDirectory;
+    private final List<CloseableHttpClient> clients = new CopyOnWriteArrayList<>();
 
     @Before
     public void setUp() throws Exception {
@@ -87,6 +113,13 @@ public class WGetMojoTest {
         outputDirectory = temporaryFolder.newFolder("wget-test").toPath();
     }
 
+    @After
+    public void tearDown() throws Exception {
+        for (CloseableHttpClient client : clients) {
+            client.close();
+        }
+    }
+
     private <T> void setVariableValueToObject(Object object, String variable, T value) {
         try {
             Field field = ReflectionUtils.getFieldByNameIncludingSuperclasses(variable, object.getClass());
@@ -106,6 +139,12 @@ public class WGetMojoTest {
         setVariableValueToObject(mojo, "outputDirectory", outputDirectory.toFile());
         setVariableValueToObject(mojo, "cacheDirectory", cacheDirectory.toFile());
         setVariableValueToObject(mojo, "retries", 1);
+        setVariableValueToObject(mojo, "maxConnections", 20);
+        setVariableValueToObject(mojo, "maxRouteConnections", 10);
+        setVariableValueToObject(mojo, "concurrency", 4);
+        setVariableValueToObject(mojo, "cacheIndex", "journal");
+        setVariableValueToObject(mojo, "cacheLayout", "named");
+        setVariableValueToObject(mojo, "materialization", "copy");
         setVariableValueToObject(mojo, "buildContext", buildContext);
         setVariableValueToObject(mojo, "overwrite", true);
         setVariableValueToObject(mojo, "uri", URI.create("http://test"));
@@ -119,6 +158,13 @@ public class WGetMojoTest {
             }
         }
         setVariableValueToObject(mojo, "session", new MavenSessionStub());
+        // each request gets a client of its own, built from the client builder stubbed by the test
+        Function<HttpClientPool.Key, CloseableHttpClient> unshared = key -> {
+            CloseableHttpClient client = HttpClientPool.create(key);
+            clients.add(client);
+            return client;
+        };
+        setVariableValueToObject(mojo, "clients", unshared);
 
         initializer.accept(mojo);
         return mojo;
@@ -336,19 +382,13 @@ public class WGetMojoTest {
                 })).forEach(CompletableFuture::join);
 
         // cache should contain both entries
-        try (ObjectInputStream stream = new ObjectInputStream(Files.newInputStream(
-                cacheDirectory.resolve("index.ser")))) {
-            @SuppressWarnings("unchecked")
-            Map<URI, String> index = (Map<URI, String>) stream.readObject();
-            assertThat(index.entrySet(), hasSize(2));
-            assertThat(index.keySet(), containsInAnyOrder(firstMojoUri, secondMojoUri));
-
-            assertThat(String.join("", Files.readAllLines(cacheDirectory.resolve(index.get(firstMojoUri)))),
-                    is("foo"));
-
-            assertThat(String.join("", Files.readAllLines(cacheDirectory.resolve(index.get(secondMojoUri)))),
-                    is("bar"));
-        }
+        final Log log = new SystemStreamLog();
+        final DownloadCache cache = new DownloadCache(cacheDirectory.toFile(), log);
+        final Checksums none = new Checksums(null, null, null, null, log);
+        assertThat(String.join("", Files.readAllLines(cache.getArtifact(firstMojoUri, none).toPath())),
+                is("foo"));
+        assertThat(String.join("", Files.readAllLines(cache.getArtifact(secondMojoUri, none).toPath())),
+                is("bar"));
     }
 
     /**
@@ -500,6 +540,157 @@ public class WGetMojoTest {
         assertThat(Files.getLastModifiedTime(outputPath), not(firstModificationTime));
     }
 
+    /**
+     * The plugin, if {@code revalidate} is {@code true}, should use the cached file when the server answers
+     * a conditional request with {@code 304 Not Modified}.
+     */
+    @Test
+    public void testRevalidateNotModified() throws MojoExecutionException, MojoFailureException, IOException {
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(ok("Hello").withHeader("ETag", "\"v1\"")));
+        this.wireMock.stubFor(get(anyUrl())
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse().withStatus(304)));
+
+        createMojo(m -> setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()))).execute();
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+            setVariableValueToObject(m, "revalidate", true);
+        }).execute();
+
+        assertThat(String.join("", Files.readAllLines(outputDirectory.resolve(OUTPUT_FILE_NAME))),
+                is("Hello"));
+        this.wireMock.verify(1, getRequestedFor(anyUrl()).withHeader("If-None-Match", equalTo("\"v1\"")));
+    }
+
+    /**
+     * The plugin, if {@code revalidate} is {@code true}, should download and cache the new content
+     * when the cached file has been modified.
+     */
+    @Test
+    public void testRevalidateModified() throws MojoExecutionException, MojoFailureException, IOException {
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(ok("Hello").withHeader("ETag", "\"v1\"")));
+        createMojo(m -> setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()))).execute();
+
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(ok("Goodbye").withHeader("ETag", "\"v2\"")));
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+            setVariableValueToObject(m, "revalidate", true);
+        }).execute();
+        createMojo(m -> setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()))).execute();
+
+        assertThat(String.join("", Files.readAllLines(outputDirectory.resolve(OUTPUT_FILE_NAME))),
+                is("Goodbye"));
+        this.wireMock.verify(2, getRequestedFor(anyUrl()));
+    }
+
+    /**
+     * The plugin should download all the entries of {@code downloads} in a single execution.
+     */
+    @Test
+    public void testBatchDownloads() throws MojoExecutionException, MojoFailureException, IOException {
+        this.wireMock.stubFor(get(urlEqualTo("/one")).willReturn(ok("One")));
+        this.wireMock.stubFor(get(urlEqualTo("/two")).willReturn(ok("Two")));
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", null);
+            setVariableValueToObject(m, "outputFileName", null);
+            setVariableValueToObject(m, "downloads", Arrays.asList(
+                    new Download().withUri(URI.create(wireMock.url("/one"))),
+                    new Download().withUri(URI.create(wireMock.url("/two"))).withOutputFileName("second")));
+        }).execute();
+
+        assertThat(String.join("", Files.readAllLines(outputDirectory.resolve("one"))), is("One"));
+        assertThat(String.join("", Files.readAllLines(outputDirectory.resolve("second"))), is("Two"));
+    }
+
+    /**
+     * A failed entry of {@code downloads} should not prevent the other ones from being downloaded,
+     * and all the failures should be reported once they are over.
+     */
+    @Test
+    public void testBatchDownloadsReportFailures() throws IOException {
+        this.wireMock.stubFor(get(urlEqualTo("/one")).willReturn(ok("One")));
+        this.wireMock.stubFor(get(urlEqualTo("/missing")).willReturn(notFound()));
+        try {
+            createMojo(m -> {
+                setVariableValueToObject(m, "outputFileName", null);
+                setVariableValueToObject(m, "uri", URI.create(wireMock.url("/missing")));
+                setVariableValueToObject(m, "failOnError", true);
+                setVariableValueToObject(m, "downloads", Collections.singletonList(
+                        new Download().withUri(URI.create(wireMock.url("/one")))));
+            }).execute();
+            fail();
+        } catch (MojoExecutionException | MojoFailureException ex) {
+            assertThat(ex.getMessage(), allOf(containsString("1 of 2 downloads failed"), containsString("/missing")));
+        }
+        assertThat(String.join("", Files.readAllLines(outputDirectory.resolve("one"))), is("One"));
+    }
+
+    /**
+     * Concurrent executions fetching the same resource to different output files
+     * should download it only once, the others taking it from the cache.
+     */
+    @Test
+    public void testSingleFlightOfConcurrentDownloads() throws IOException {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok("Hello").withFixedDelay(500)));
+        IntStream.range(0, 3)
+                .mapToObj(i -> createMojo(m -> {
+                    setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+                    setVariableValueToObject(m, "outputFileName", "output-" + i);
+                    setVariableValueToObject(m, "maxLockWaitTime", 10000L);
+                }))
+                .map(mojo -> CompletableFuture.runAsync(() -> {
+                    try {
+                        mojo.execute();
+                    } catch (MojoExecutionException | MojoFailureException e) {
+                        throw new RuntimeException(e);
+                    }
+                }))
+                .collect(Collectors.toList())
+                .forEach(CompletableFuture::join);
+
+        for (int i = 0; i < 3; ++i) {
+            assertThat(String.join("", Files.readAllLines(outputDirectory.resolve("output-" + i))), is("Hello"));
+        }
+        this.wireMock.verify(1, getRequestedFor(anyUrl()));
+    }
+
+    /**
+     * While another process holds the lock of a cache entry, the plugin should wait for it
+     * and take the file it installed from the cache instead of downloading it.
+     */
+    @Test
+    public void testWaitForDownloadOfAnotherProcess() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok("Downloaded")));
+        final URI uri = URI.create(wireMock.baseUrl());
+        final Log log = new SystemStreamLog();
+        final DownloadCache otherProcess = new DownloadCache(cacheDirectory.toFile(), log);
+        final CompletableFuture<Void> execution;
+        try (CacheEntryLock ignored = otherProcess.lock(uri, 0L).orElseThrow(IllegalStateException::new)) {
+            execution = CompletableFuture.runAsync(() -> {
+                try {
+                    createMojo(m -> {
+                        setVariableValueToObject(m, "uri", uri);
+                        setVariableValueToObject(m, "maxLockWaitTime", 10000L);
+                    }).execute();
+                } catch (MojoExecutionException | MojoFailureException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(500L);
+            final File installed = temporaryFolder.newFile("installed");
+            Files.write(installed.toPath(), "Installed".getBytes());
+            otherProcess.install(uri, installed, new Checksums(null, null, null, null, log));
+        }
+        execution.join();
+
+        assertThat(String.join("", Files.readAllLines(outputDirectory.resolve(OUTPUT_FILE_NAME))),
+                is("Installed"));
+        this.wireMock.verify(0, getRequestedFor(anyUrl()));
+    }
+
     /**
      * The plugin, if provided the {@code md5}, {@code sha1}, {@code sha256}, {@code sha512} parameters, should verify
      * if the signature is correct.
@@ -911,6 +1102,58 @@ public class WGetMojoTest {
     }
 
 
+    @Test
+    public void usesIndexConfiguredForSameCacheDirectory() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok("Hello")));
+        createMojo(m -> setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl() + "/first"))).execute();
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl() + "/second"));
+            setVariableValueToObject(m, "cacheIndex", "mapped");
+        }).execute();
+        assertThat(cacheDirectory.resolve("index.table").toFile().isFile(), is(true));
+    }
+
+    @Test
+    public void resumesDownloadDroppedByServer() throws Exception {
+        final byte[] content = new byte[64 * 1024];
+        new Random(7L).nextBytes(content);
+        final List<String> ranges = new CopyOnWriteArrayList<>();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(String.valueOf(range));
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if (range == null) {
+                exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content, 0, content.length / 2);
+                exchange.getResponseBody().flush();
+                // closing the exchange before the end of the content drops the connection
+            } else {
+                final int first = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                exchange.getResponseHeaders().add(
+                    "Content-Range", String.format("bytes %d-%d/%d", first, content.length - 1, content.length)
+                );
+                exchange.sendResponseHeaders(206, content.length - first);
+                exchange.getResponseBody().write(content, first, content.length - first);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            createMojo(m -> {
+                setVariableValueToObject(m, "uri", URI.create("http://localhost:" + server.getAddress().getPort()));
+                setVariableValueToObject(m, "skipCache", true);
+                setVariableValueToObject(m, "retries", 2);
+            }).execute();
+        } finally {
+            server.stop(0);
+        }
+        assertThat(Files.readAllBytes(outputDirectory.resolve(OUTPUT_FILE_NAME)), is(content));
+        assertThat(ranges.size(), is(2));
+        assertThat(ranges.get(1), is(not("null")));
+        assertThat(ranges.get(1), is(not("bytes=0-")));
+    }
+
     @Test
     public void setsFilePermOnDownload() throws MojoExecutionException, MojoFailureException, IOException {
         this.wireMock.stubFor(get(anyUrl()).willReturn(ok("Hello")));
@@ -933,4 +1176,275 @@ public class WGetMojoTest {
         );
         assertThat(outputDirectory.resolve(OUTPUT_FILE_NAME).toFile().canExecute(), is(true));
     }
+
+    @Test
+    public void setsFilePermOnCopyOfHardLinkedCachedFile() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok("Hello")));
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+            setVariableValueToObject(m, "materialization", "hardlink");
+            setVariableValueToObject(m, "outputFilePermissions", "+x");
+        }).execute();
+        final Log log = new SystemStreamLog();
+        final File cached = new DownloadCache(cacheDirectory.toFile(), log)
+                .getArtifact(URI.create(wireMock.baseUrl()), new Checksums(null, null, null, null, log));
+        assertThat(outputDirectory.resolve(OUTPUT_FILE_NAME).toFile().canExecute(), is(true));
+        assertThat(cached.canExecute(), is(false));
+    }
+
+    @Test
+    public void unpacksTarArchiveWhileDownloading() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(
+            ok().withBody(Files.readAllBytes(new File(getClass().getResource("/archive.tar.gz").toURI()).toPath()))
+        ));
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+            setVariableValueToObject(m, "outputFileName", "archive.tar.gz");
+            setVariableValueToObject(m, "unpack", true);
+            setVariableValueToObject(m, "streamUnpack", true);
+            setVariableValueToObject(m, "includes", new String[]{"docs/**"});
+            setVariableValueToObject(m, "excludes", new String[0]);
+        }).execute();
+        assertThat(
+            new String(Files.readAllBytes(outputDirectory.resolve("docs/readme.txt"))), is("docs/readme.txt")
+        );
+        assertThat(Files.exists(outputDirectory.resolve("src/main.c")), is(false));
+        assertThat(Files.exists(outputDirectory.resolve("archive.tar.gz")), is(false));
+        final Log log = new SystemStreamLog();
+        final DownloadCache cache = new DownloadCache(cacheDirectory.toFile(), log);
+        assertThat(
+            cache.getArtifact(URI.create(wireMock.baseUrl()), new Checksums(null, null, null, null, log)),
+            notNullValue()
+        );
+    }
+
+    @Test
+    public void unpacksZstdTarArchive() throws Exception {
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (InputStream in = new GzipCompressorInputStream(getClass().getResourceAsStream("/entries.tar.gz"));
+             OutputStream out = new ZstdCompressorOutputStream(archive)) {
+            final byte[] buffer = new byte[8192];
+            int read = in.read(buffer);
+            while (read >= 0) {
+                out.write(buffer, 0, read);
+                read = in.read(buffer);
+            }
+        }
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok().withBody(archive.toByteArray())));
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+            setVariableValueToObject(m, "outputFileName", "archive.tar.zst");
+            setVariableValueToObject(m, "unpack", true);
+            setVariableValueToObject(m, "includes", new String[]{"docs/**"});
+            setVariableValueToObject(m, "excludes", new String[0]);
+        }).execute();
+        for (int idx = 0; idx < 100; ++idx) {
+            assertThat(
+                new String(Files.readAllBytes(outputDirectory.resolve(String.format("docs/%d.txt", idx)))),
+                is(String.format("docs/%d.txt", idx))
+            );
+        }
+        assertThat(
+            new String(Files.readAllBytes(outputDirectory.resolve("docs/large.txt"))),
+            is(String.join("", Collections.nCopies(20000, "docs/large.txt\n")))
+        );
+        assertThat(Files.exists(outputDirectory.resolve("src/main.c")), is(false));
+    }
+
+    @Test
+    public void failsOnCorruptTarArchiveWhileDownloading() {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok("not a gzip stream")));
+        try {
+            createMojo(m -> {
+                setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+                setVariableValueToObject(m, "outputFileName", "archive.tgz");
+                setVariableValueToObject(m, "skipCache", true);
+                setVariableValueToObject(m, "failOnError", true);
+                setVariableValueToObject(m, "unpack", true);
+                setVariableValueToObject(m, "streamUnpack", true);
+                setVariableValueToObject(m, "includes", new String[0]);
+                setVariableValueToObject(m, "excludes", new String[0]);
+            }).execute();
+            fail("Corrupt archive must not be unpacked");
+        } catch (MojoExecutionException | MojoFailureException e) {
+            assertThat(Files.exists(outputDirectory.resolve("archive.tgz")), is(false));
+        }
+    }
+
+    @Test
+    public void unpacksZipArchiveRemotely() throws Exception {
+        final byte[] archive = createZipArchive();
+        final AtomicLong served = new AtomicLong();
+        final HttpServer server = createRangeServer(archive, served);
+        try {
+            createMojo(m -> {
+                setVariableValueToObject(m, "uri", URI.create("http://localhost:" + server.getAddress().getPort()));
+                setVariableValueToObject(m, "outputFileName", "archive.zip");
+                setVariableValueToObject(m, "failOnError", true);
+                setVariableValueToObject(m, "unpack", true);
+                setVariableValueToObject(m, "remoteUnpack", true);
+                setVariableValueToObject(m, "archiverManager", createZipArchiverManager());
+                setVariableValueToObject(m, "includes", new String[]{"docs/**"});
+                setVariableValueToObject(m, "excludes", new String[0]);
+            }).execute();
+        } finally {
+            server.stop(0);
+        }
+        assertThat(
+            new String(Files.readAllBytes(outputDirectory.resolve("docs/readme.txt"))), is("docs/readme.txt")
+        );
+        assertThat(Files.exists(outputDirectory.resolve("data.bin")), is(false));
+        assertThat(Files.exists(outputDirectory.resolve("archive.zip")), is(false));
+        assertThat(Files.exists(outputDirectory.resolve("archive.zip.sparse")), is(false));
+        assertThat(served.get(), lessThan(archive.length / 2L));
+    }
+
+    @Test
+    public void downloadsZipArchiveInFullWithoutRanges() throws Exception {
+        this.wireMock.stubFor(head(anyUrl()).willReturn(ok()));
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok().withBody(createZipArchive())));
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+            setVariableValueToObject(m, "outputFileName", "archive.zip");
+            setVariableValueToObject(m, "skipCache", true);
+            setVariableValueToObject(m, "failOnError", true);
+            setVariableValueToObject(m, "unpack", true);
+            setVariableValueToObject(m, "remoteUnpack", true);
+            setVariableValueToObject(m, "archiverManager", createZipArchiverManager());
+            setVariableValueToObject(m, "includes", new String[]{"docs/**"});
+            setVariableValueToObject(m, "excludes", new String[0]);
+        }).execute();
+        assertThat(
+            new String(Files.readAllBytes(outputDirectory.resolve("docs/readme.txt"))), is("docs/readme.txt")
+        );
+        assertThat(Files.exists(outputDirectory.resolve("data.bin")), is(false));
+        assertThat(Files.exists(outputDirectory.resolve("archive.zip.sparse")), is(false));
+        this.wireMock.verify(1, getRequestedFor(anyUrl()).withoutHeader("Range"));
+    }
+
+    @Test
+    public void unpacksArchiveThroughCachedTree() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok().withBody(createZipArchive())));
+        final Consumer<WGetMojo> config = m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+            setVariableValueToObject(m, "outputFileName", "archive.zip");
+            setVariableValueToObject(m, "unpack", true);
+            setVariableValueToObject(m, "unpackCache", true);
+            setVariableValueToObject(m, "materialization", "hardlink");
+            setVariableValueToObject(m, "archiverManager", createZipArchiverManager());
+            setVariableValueToObject(m, "includes", new String[]{"docs/**"});
+            setVariableValueToObject(m, "excludes", new String[0]);
+        };
+        createMojo(config).execute();
+        final Path readme = outputDirectory.resolve("docs/readme.txt");
+        assertThat(new String(Files.readAllBytes(readme)), is("docs/readme.txt"));
+        final Path[] trees;
+        try (Stream<Path> paths = Files.walk(cacheDirectory.resolve("trees"))) {
+            trees = paths.filter(path -> path.endsWith("docs/readme.txt")).toArray(Path[]::new);
+        }
+        assertThat(trees.length, is(1));
+        assertThat(Files.isSameFile(readme, trees[0]), is(true));
+        Files.delete(readme);
+        createMojo(config).execute();
+        assertThat(new String(Files.readAllBytes(readme)), is("docs/readme.txt"));
+        assertThat(Files.isSameFile(readme, trees[0]), is(true));
+        assertThat(Files.exists(outputDirectory.resolve("data.bin")), is(false));
+        verify(1, getRequestedFor(anyUrl()));
+    }
+
+    private static byte[] createZipArchive() throws IOException {
+        final byte[] data = new byte[256 * 1024];
+        new Random(42L).nextBytes(data);
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("data.bin"));
+            zip.write(data);
+            zip.putNextEntry(new ZipEntry("docs/readme.txt"));
+            zip.write("docs/readme.txt".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("more.bin"));
+            zip.write(data);
+        }
+        return archive.toByteArray();
+    }
+
+    private static ArchiverManager createZipArchiverManager() {
+        final ArchiverManager archiverManager = mock(ArchiverManager.class);
+        try {
+            when(archiverManager.getUnArchiver(any(File.class))).thenAnswer(invocation -> new ZipUnArchiver());
+        } catch (NoSuchArchiverException e) {
+            throw new IllegalStateException(e);
+        }
+        return archiverManager;
+    }
+
+    /**
+     * Creates a server of the given content accepting byte ranges, counting the bytes it serves.
+     */
+    private static HttpServer createRangeServer(byte[] content, AtomicLong served) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+                exchange.sendResponseHeaders(200, -1);
+            } else if (range == null) {
+                exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content);
+                served.addAndGet(content.length);
+            } else {
+                final String[] bounds = range.substring("bytes=".length()).split("-");
+                final int first = Integer.parseInt(bounds[0]);
+                final int last = Integer.parseInt(bounds[1]);
+                exchange.getResponseHeaders().add(
+                    "Content-Range", String.format("bytes %d-%d/%d", first, last, content.length)
+                );
+                exchange.sendResponseHeaders(206, last - first + 1);
+                exchange.getResponseBody().write(content, first, last - first + 1);
+                served.addAndGet(last - first + 1);
+            }
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+    @Test
+    public void unpacksZipArchiveEntriesInParallel() throws Exception {
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(archive)) {
+            for (int i = 0; i < 64; ++i) {
+                final ZipArchiveEntry entry = new ZipArchiveEntry(String.format("dir%d/file%d.txt", i % 4, i));
+                entry.setUnixMode(i == 0 ? 0100755 : 0100644);
+                zip.putArchiveEntry(entry);
+                zip.write(String.format("file %d", i).getBytes(StandardCharsets.UTF_8));
+                zip.closeArchiveEntry();
+            }
+        }
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok().withBody(archive.toByteArray())));
+        final PrefixFileMapper mapper = new PrefixFileMapper();
+        mapper.setPrefix("mapped/");
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+            setVariableValueToObject(m, "outputFileName", "archive.zip");
+            setVariableValueToObject(m, "skipCache", true);
+            setVariableValueToObject(m, "failOnError", true);
+            setVariableValueToObject(m, "unpack", true);
+            setVariableValueToObject(m, "archiverManager", createZipArchiverManager());
+            setVariableValueToObject(m, "fileMappers", new FileMapper[]{mapper});
+            setVariableValueToObject(m, "includes", new String[]{"dir0/**", "dir1/**"});
+            setVariableValueToObject(m, "excludes", new String[]{"**/file1.txt"});
+        }).execute();
+        for (int i = 0; i < 64; ++i) {
+            final Path file = outputDirectory.resolve(String.format("mapped/dir%d/file%d.txt", i % 4, i));
+            assertThat(Files.exists(file), is(i % 4 < 2 && i != 1));
+        }
+        assertThat(
+            new String(Files.readAllBytes(outputDirectory.resolve("mapped/dir0/file4.txt"))), is("file 4")
+        );
+        assertThat(Files.isExecutable(outputDirectory.resolve("mapped/dir0/file0.txt")), is(true));
+        assertThat(Files.isExecutable(outputDirectory.resolve("mapped/dir0/file4.txt")), is(false));
+        assertThat(Files.exists(outputDirectory.resolve("archive.zip")), is(false));
+    }
 }
@@ -0,0 +1,310 @@
+package io.github.download.maven.plugin.internal.cache;
+
+import io.github.download.maven.plugin.internal.checksum.Checksums;
+import io.github.download.maven.plugin.internal.checksum.Digester;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class DownloadCacheTest {
+
+    private static final URI RESOURCE = URI.create("http://test/file");
+
+    private static final String CONTENT = "cached content";
+
+    private static final String TAMPERED = "cached CONTENT";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Log log = Mockito.mock(Log.class);
+
+    @Test
+    public void trustsVerifiedDigestsOfUnchangedFile() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        final Checksums checksums = this.checksums(CONTENT);
+        cache.install(RESOURCE, this.file(CONTENT), checksums, Validators.NONE);
+        final File cached = cache.getArtifact(RESOURCE, checksums);
+        final FileTime modified = Files.getLastModifiedTime(cached.toPath());
+        Files.write(cached.toPath(), TAMPERED.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(cached.toPath(), modified);
+        MatcherAssert.assertThat(cache.getArtifact(RESOURCE, checksums), Matchers.is(cached));
+        MatcherAssert.assertThat(
+            cache.getArtifact(RESOURCE, checksums, DownloadCache.FULL_VERIFICATION), Matchers.nullValue()
+        );
+        MatcherAssert.assertThat(cache.getArtifact(RESOURCE, checksums), Matchers.nullValue());
+    }
+
+    @Test
+    public void checksCrcOfUnchangedFile() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        final Checksums checksums = this.checksums(CONTENT);
+        cache.install(RESOURCE, this.file(CONTENT), checksums, Validators.NONE);
+        final File cached = cache.getArtifact(RESOURCE, checksums, DownloadCache.CRC_VERIFICATION);
+        MatcherAssert.assertThat(cached, Matchers.notNullValue());
+        final FileTime modified = Files.getLastModifiedTime(cached.toPath());
+        Files.write(cached.toPath(), TAMPERED.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(cached.toPath(), modified);
+        MatcherAssert.assertThat(cache.getArtifact(RESOURCE, checksums), Matchers.is(cached));
+        MatcherAssert.assertThat(
+            cache.getArtifact(RESOURCE, checksums, DownloadCache.CRC_VERIFICATION), Matchers.nullValue()
+        );
+    }
+
+    @Test
+    public void hashesFileChangedSinceVerified() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        cache.install(RESOURCE, this.file(CONTENT), this.checksums(null));
+        MatcherAssert.assertThat(cache.getArtifact(RESOURCE, this.checksums(TAMPERED)), Matchers.nullValue());
+        final File cached = cache.getArtifact(RESOURCE, this.checksums(CONTENT));
+        MatcherAssert.assertThat(cached, Matchers.notNullValue());
+        Files.write(cached.toPath(), "changed content of another size".getBytes(StandardCharsets.UTF_8));
+        MatcherAssert.assertThat(cache.getArtifact(RESOURCE, this.checksums(CONTENT)), Matchers.nullValue());
+    }
+
+    @Test
+    public void verifiesEntriesOfDifferentUrisInParallel() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        final URI other = URI.create("http://test/other");
+        cache.install(RESOURCE, this.file(CONTENT), this.checksums(null));
+        cache.install(other, this.file(CONTENT), this.checksums(null));
+        final CountDownLatch verifying = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Checksums slow = Mockito.mock(Checksums.class);
+        Mockito.when(slow.isValid(Mockito.any(File.class), Mockito.anyMap())).thenAnswer(
+            invocation -> {
+                verifying.countDown();
+                return release.await(10L, TimeUnit.SECONDS);
+            }
+        );
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<File> blocked = executor.submit(() -> cache.getArtifact(RESOURCE, slow));
+            MatcherAssert.assertThat(verifying.await(10L, TimeUnit.SECONDS), Matchers.is(true));
+            MatcherAssert.assertThat(cache.getArtifact(other, this.checksums(CONTENT)), Matchers.notNullValue());
+            release.countDown();
+            MatcherAssert.assertThat(blocked.get(10L, TimeUnit.SECONDS), Matchers.notNullValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void storesIdenticalContentOnce() throws Exception {
+        final DownloadCache cache = new DownloadCache(
+            this.temporaryFolder.newFolder(), this.log, DownloadCache.JOURNAL_INDEX, DownloadCache.CONTENT_LAYOUT
+        );
+        final URI mirror = URI.create("http://mirror/file?variant=1");
+        cache.install(RESOURCE, this.file(CONTENT), this.checksums(CONTENT), new Validators("first", null));
+        cache.install(mirror, this.file(CONTENT), this.checksums(null), new Validators("second", null));
+        final File cached = cache.getArtifact(RESOURCE, this.checksums(CONTENT));
+        MatcherAssert.assertThat(cached, Matchers.notNullValue());
+        MatcherAssert.assertThat(cache.getArtifact(mirror, this.checksums(null)), Matchers.is(cached));
+        MatcherAssert.assertThat(cached.getName(), Matchers.is(DigestUtils.sha256Hex(CONTENT)));
+        MatcherAssert.assertThat(cache.getValidators(RESOURCE).etag().get(), Matchers.is("first"));
+        MatcherAssert.assertThat(cache.getValidators(mirror).etag().get(), Matchers.is("second"));
+    }
+
+    @Test
+    public void findsContentBySuppliedDigest() throws Exception {
+        final DownloadCache cache = new DownloadCache(
+            this.temporaryFolder.newFolder(), this.log, DownloadCache.JOURNAL_INDEX, DownloadCache.CONTENT_LAYOUT
+        );
+        final URI unseen = URI.create("http://other/file");
+        cache.install(RESOURCE, this.file(CONTENT), this.checksums(CONTENT), Validators.NONE);
+        MatcherAssert.assertThat(cache.getArtifact(unseen, this.checksums(null)), Matchers.nullValue());
+        MatcherAssert.assertThat(cache.getArtifact(unseen, this.checksums(TAMPERED)), Matchers.nullValue());
+        final File cached = cache.getArtifact(unseen, this.checksums(CONTENT));
+        MatcherAssert.assertThat(cached, Matchers.is(cache.getArtifact(RESOURCE, this.checksums(null))));
+        MatcherAssert.assertThat(cache.getArtifact(unseen, this.checksums(null)), Matchers.is(cached));
+    }
+
+    @Test
+    public void logsLockThatCannotBeReleased() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        final CacheEntryLock lock = cache.lock(RESOURCE, 0L).orElseThrow(IllegalStateException::new);
+        lock.close();
+        lock.close();
+        Mockito.verify(this.log).warn(Mockito.startsWith("Could not release the lock"), Mockito.any(Throwable.class));
+        cache.lock(RESOURCE, 0L).orElseThrow(IllegalStateException::new).close();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFiles() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        final URI[] uris = {
+            URI.create("http://test/old"), URI.create("http://test/used"), URI.create("http://test/new"),
+        };
+        for (int idx = 0; idx < uris.length; ++idx) {
+            cache.install(uris[idx], this.file(CONTENT), this.checksums(null));
+            this.age(cache.getArtifact(uris[idx], this.checksums(null)), uris.length - idx);
+        }
+        cache.evict(2L * CONTENT.length(), 0L);
+        MatcherAssert.assertThat(cache.getArtifact(uris[0], this.checksums(null)), Matchers.nullValue());
+        MatcherAssert.assertThat(cache.getArtifact(uris[1], this.checksums(null)), Matchers.notNullValue());
+        MatcherAssert.assertThat(cache.getArtifact(uris[2], this.checksums(null)), Matchers.notNullValue());
+    }
+
+    @Test
+    public void evictsExpiredFilesOnly() throws Exception {
+        final DownloadCache cache = new DownloadCache(
+            this.temporaryFolder.newFolder(), this.log, DownloadCache.JOURNAL_INDEX, DownloadCache.CONTENT_LAYOUT
+        );
+        final URI recent = URI.create("http://test/recent");
+        cache.install(RESOURCE, this.file(CONTENT), this.checksums(null));
+        final File expired = cache.getArtifact(RESOURCE, this.checksums(null));
+        this.age(expired, 3);
+        cache.install(recent, this.file(TAMPERED), this.checksums(null));
+        cache.evict(1L, TimeUnit.HOURS.toMillis(2L));
+        MatcherAssert.assertThat(expired.exists(), Matchers.is(false));
+        MatcherAssert.assertThat(cache.getArtifact(RESOURCE, this.checksums(null)), Matchers.nullValue());
+        MatcherAssert.assertThat(cache.getArtifact(recent, this.checksums(null)), Matchers.notNullValue());
+    }
+
+    @Test
+    public void keepsExpiredFileFoundBeforeEviction() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        cache.install(RESOURCE, this.file(CONTENT), this.checksums(CONTENT));
+        final File cached = cache.getArtifact(RESOURCE, this.checksums(CONTENT));
+        this.age(cached, 3);
+        MatcherAssert.assertThat(cache.getArtifact(RESOURCE, this.checksums(CONTENT)), Matchers.is(cached));
+        cache.evict(0L, TimeUnit.HOURS.toMillis(2L));
+        MatcherAssert.assertThat(cached.isFile(), Matchers.is(true));
+    }
+
+    @Test
+    public void deletesAbandonedDownloadsWithSizeLimitOnly() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        final File abandoned = cache.staging(RESOURCE);
+        Files.write(abandoned.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        final File recent = cache.staging(URI.create("http://test/recent"));
+        Files.write(recent.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(
+            abandoned.toPath(), FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1L))
+        );
+        cache.evict(Long.MAX_VALUE, 0L);
+        MatcherAssert.assertThat(abandoned.exists(), Matchers.is(false));
+        MatcherAssert.assertThat(recent.exists(), Matchers.is(true));
+    }
+
+    @Test
+    public void unpacksTreeOncePerArchiveAndOptions() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        cache.install(RESOURCE, this.file(CONTENT), this.checksums(null));
+        final File archive = cache.getArtifact(RESOURCE, this.checksums(null));
+        final AtomicInteger unpacked = new AtomicInteger();
+        final DownloadCache.Unpacking unpacking = directory -> {
+            unpacked.incrementAndGet();
+            Files.write(new File(directory, "entry").toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        };
+        final File tree = cache.tree(archive, "options", unpacking);
+        MatcherAssert.assertThat(cache.tree(archive, "options", unpacking), Matchers.is(tree));
+        MatcherAssert.assertThat(unpacked.get(), Matchers.is(1));
+        MatcherAssert.assertThat(new File(tree, "entry").isFile(), Matchers.is(true));
+        MatcherAssert.assertThat(cache.tree(archive, "other options", unpacking), Matchers.not(tree));
+        MatcherAssert.assertThat(unpacked.get(), Matchers.is(2));
+        MatcherAssert.assertThat(tree.getParentFile().listFiles(File::isDirectory).length, Matchers.is(1));
+    }
+
+    @Test
+    public void evictsExpiredTrees() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        cache.install(RESOURCE, this.file(CONTENT), this.checksums(null));
+        final File tree = cache.tree(
+            cache.getArtifact(RESOURCE, this.checksums(null)), "options",
+            directory -> Files.write(new File(directory, "entry").toPath(), CONTENT.getBytes(StandardCharsets.UTF_8))
+        );
+        this.age(tree, 3);
+        cache.evict(0L, TimeUnit.HOURS.toMillis(2L));
+        MatcherAssert.assertThat(tree.exists(), Matchers.is(false));
+        MatcherAssert.assertThat(cache.getArtifact(RESOURCE, this.checksums(null)), Matchers.notNullValue());
+    }
+
+    @Test
+    public void publishesStagedDownloadByMovingIt() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        final File staged = cache.staging(RESOURCE);
+        Files.write(staged.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        final Object key = Files.readAttributes(staged.toPath(), BasicFileAttributes.class).fileKey();
+        final File cached = cache.publish(RESOURCE, staged, "file", this.checksums(CONTENT), Validators.NONE);
+        MatcherAssert.assertThat(staged.exists(), Matchers.is(false));
+        MatcherAssert.assertThat(
+            Files.readAttributes(cached.toPath(), BasicFileAttributes.class).fileKey(), Matchers.is(key)
+        );
+        MatcherAssert.assertThat(cache.getArtifact(RESOURCE, this.checksums(CONTENT)), Matchers.is(cached));
+    }
+
+    @Test
+    public void recordsCrcOfStagedDownloadValidatedWhileWritten() throws Exception {
+        final DownloadCache cache = new DownloadCache(this.temporaryFolder.newFolder(), this.log);
+        final File staged = cache.staging(RESOURCE);
+        final byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+        Files.write(staged.toPath(), content);
+        final Checksums checksums = this.checksums(CONTENT);
+        final Digester digester = checksums.digester();
+        digester.update(content, 0, content.length);
+        checksums.validate(staged, digester);
+        final File cached = cache.publish(RESOURCE, staged, "file", checksums, Validators.NONE);
+        final Properties record = new Properties();
+        try (InputStream in = Files.newInputStream(new File(cached.getPath() + ".digests").toPath())) {
+            record.load(in);
+        }
+        MatcherAssert.assertThat(record.getProperty("crc32"), Matchers.is(digester.crc()));
+        MatcherAssert.assertThat(
+            cache.getArtifact(RESOURCE, this.checksums(CONTENT), DownloadCache.CRC_VERIFICATION), Matchers.is(cached)
+        );
+    }
+
+    @Test
+    public void dropsStagedDownloadOfStoredContent() throws Exception {
+        final DownloadCache cache = new DownloadCache(
+            this.temporaryFolder.newFolder(), this.log, DownloadCache.JOURNAL_INDEX, DownloadCache.CONTENT_LAYOUT
+        );
+        final URI mirror = URI.create("http://mirror/file");
+        cache.install(RESOURCE, this.file(CONTENT), this.checksums(CONTENT), Validators.NONE);
+        final File staged = cache.staging(mirror);
+        Files.write(staged.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        final File cached = cache.publish(mirror, staged, "file", this.checksums(null), Validators.NONE);
+        MatcherAssert.assertThat(staged.exists(), Matchers.is(false));
+        MatcherAssert.assertThat(cached, Matchers.is(cache.getArtifact(RESOURCE, this.checksums(CONTENT))));
+    }
+
+    private void age(final File cached, final int hours) throws Exception {
+        final FileTime time = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(hours));
+        Files.setLastModifiedTime(cached.toPath(), time);
+        Files.setLastModifiedTime(new File(cached.getParentFile(), cached.getName() + ".access").toPath(), time);
+    }
+
+    private File file(final String content) throws Exception {
+        final File file = this.temporaryFolder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private Checksums checksums(final String content) {
+        String sha256 = null;
+        if (content != null) {
+            sha256 = DigestUtils.sha256Hex(content);
+        }
+        return new Checksums(null, null, sha256, null, this.log);
+    }
+}
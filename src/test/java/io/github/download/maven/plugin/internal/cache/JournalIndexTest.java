@@ -0,0 +1,108 @@
+package io.github.download.maven.plugin.internal.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class JournalIndexTest {
+
+    private static final URI FIRST = URI.create("http://test/first");
+
+    private static final URI SECOND = URI.create("http://test/second");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsEntriesAppendedByAnotherIndex() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        final JournalIndex reader = new JournalIndex(dir, Mockito.mock(Log.class));
+        final JournalIndex writer = new JournalIndex(dir, Mockito.mock(Log.class));
+        writer.put(FIRST, "first");
+        MatcherAssert.assertThat(reader.get(FIRST), Matchers.is("first"));
+        writer.put(SECOND, "second");
+        writer.put(FIRST, "replaced");
+        MatcherAssert.assertThat(reader.get(SECOND), Matchers.is("second"));
+        MatcherAssert.assertThat(reader.get(FIRST), Matchers.is("replaced"));
+    }
+
+    @Test
+    public void keepsEntriesWhenCompacted() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        final JournalIndex reader = new JournalIndex(dir, Mockito.mock(Log.class));
+        final JournalIndex writer = new JournalIndex(dir, Mockito.mock(Log.class));
+        writer.put(SECOND, "second");
+        MatcherAssert.assertThat(reader.get(SECOND), Matchers.is("second"));
+        for (int idx = 0; idx < 3000; ++idx) {
+            writer.put(FIRST, "first-" + idx);
+        }
+        MatcherAssert.assertThat(
+            Files.size(new File(dir, "index.journal").toPath()),
+            Matchers.lessThan(100_000L)
+        );
+        MatcherAssert.assertThat(reader.get(FIRST), Matchers.is("first-2999"));
+        MatcherAssert.assertThat(reader.get(SECOND), Matchers.is("second"));
+    }
+
+    @Test
+    public void ignoresIncompleteRecord() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        new JournalIndex(dir, Mockito.mock(Log.class)).put(FIRST, "first");
+        Files.write(
+            new File(dir, "index.journal").toPath(), new byte[]{1, 0, 42, 'h'},
+            StandardOpenOption.APPEND
+        );
+        final JournalIndex index = new JournalIndex(dir, Mockito.mock(Log.class));
+        MatcherAssert.assertThat(index.get(FIRST), Matchers.is("first"));
+        index.put(SECOND, "second");
+        final JournalIndex other = new JournalIndex(dir, Mockito.mock(Log.class));
+        MatcherAssert.assertThat(other.get(FIRST), Matchers.is("first"));
+        MatcherAssert.assertThat(other.get(SECOND), Matchers.is("second"));
+    }
+
+    @Test
+    public void migratesSerializedIndex() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        final Map<URI, String> legacy = new HashMap<>();
+        legacy.put(FIRST, "first");
+        try (
+            OutputStream out = Files.newOutputStream(new File(dir, "index.ser").toPath());
+            ObjectOutputStream serialize = new ObjectOutputStream(out)
+        ) {
+            serialize.writeObject(legacy);
+        }
+        MatcherAssert.assertThat(
+            new JournalIndex(dir, Mockito.mock(Log.class)).get(FIRST), Matchers.is("first")
+        );
+        MatcherAssert.assertThat(new File(dir, "index.journal").isFile(), Matchers.is(true));
+        MatcherAssert.assertThat(
+            new JournalIndex(dir, Mockito.mock(Log.class)).get(FIRST), Matchers.is("first")
+        );
+    }
+
+    @Test
+    public void ignoresCorruptSerializedIndex() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        Files.write(new File(dir, "index.ser").toPath(), new byte[]{(byte) 0xAC, (byte) 0xED, 0, 5, 's'});
+        final Log log = Mockito.mock(Log.class);
+        final JournalIndex index = new JournalIndex(dir, log);
+        index.put(FIRST, "first");
+        Mockito.verify(log).warn(Mockito.startsWith("Could not import cache index"));
+        MatcherAssert.assertThat(
+            new JournalIndex(dir, Mockito.mock(Log.class)).get(FIRST), Matchers.is("first")
+        );
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.download.maven.plugin.internal.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import org.apache.maven.plugin.logging.Log;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class MappedIndexTest {
+
+    private static final URI FIRST = URI.create("http://test/first");
+
+    private static final URI SECOND = URI.create("http://test/second");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsEntriesInsertedByAnotherIndex() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        final MappedIndex reader = new MappedIndex(dir, Mockito.mock(Log.class));
+        final MappedIndex writer = new MappedIndex(dir, Mockito.mock(Log.class));
+        MatcherAssert.assertThat(reader.get(FIRST), Matchers.nullValue());
+        writer.put(FIRST, "first");
+        MatcherAssert.assertThat(reader.get(FIRST), Matchers.is("first"));
+        writer.put(SECOND, "second");
+        writer.put(FIRST, "replaced");
+        MatcherAssert.assertThat(reader.get(SECOND), Matchers.is("second"));
+        MatcherAssert.assertThat(reader.get(FIRST), Matchers.is("replaced"));
+        MatcherAssert.assertThat(reader.get(URI.create("http://test/third")), Matchers.nullValue());
+    }
+
+    @Test
+    public void looksNormalizedUrisUp() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        final MappedIndex index = new MappedIndex(dir, Mockito.mock(Log.class));
+        index.put(URI.create("http://test/a/../first"), "first");
+        MatcherAssert.assertThat(index.get(FIRST), Matchers.is("first"));
+    }
+
+    @Test
+    public void growsWhenHalfFull() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        final MappedIndex writer = new MappedIndex(dir, Mockito.mock(Log.class));
+        final MappedIndex reader = new MappedIndex(dir, Mockito.mock(Log.class));
+        MatcherAssert.assertThat(reader.get(FIRST), Matchers.nullValue());
+        for (int idx = 0; idx < 10_000; ++idx) {
+            writer.put(URI.create("http://test/" + idx), "file-" + idx);
+        }
+        for (int idx = 0; idx < 10_000; ++idx) {
+            MatcherAssert.assertThat(reader.get(URI.create("http://test/" + idx)), Matchers.is("file-" + idx));
+        }
+    }
+
+    @Test
+    public void importsJournal() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        new JournalIndex(dir, Mockito.mock(Log.class)).put(FIRST, "first");
+        MatcherAssert.assertThat(new MappedIndex(dir, Mockito.mock(Log.class)).get(FIRST), Matchers.is("first"));
+    }
+
+    @Test
+    public void ignoresFilesOfInterruptedGrowth() throws IOException {
+        final File dir = this.temporaryFolder.newFolder();
+        new MappedIndex(dir, Mockito.mock(Log.class)).put(FIRST, "first");
+        Files.write(new File(dir, "index.table.tmp").toPath(), new byte[]{1, 2, 3});
+        Files.write(new File(dir, "index.data.1").toPath(), new byte[]{4, 5});
+        final MappedIndex index = new MappedIndex(dir, Mockito.mock(Log.class));
+        MatcherAssert.assertThat(index.get(FIRST), Matchers.is("first"));
+        for (int idx = 0; idx < 5000; ++idx) {
+            index.put(URI.create("http://test/" + idx), "file-" + idx);
+        }
+        MatcherAssert.assertThat(
+            dir.listFiles(file -> file.getName().startsWith("index.data")).length, Matchers.is(1)
+        );
+        final MappedIndex other = new MappedIndex(dir, Mockito.mock(Log.class));
+        MatcherAssert.assertThat(other.get(FIRST), Matchers.is("first"));
+        MatcherAssert.assertThat(other.get(URI.create("http://test/4999")), Matchers.is("file-4999"));
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.download.maven.plugin.internal.cache;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import org.apache.maven.plugin.logging.Log;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class MaterializationTest {
+
+    private static final String CONTENT = "content";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void linksHardLinkToSameContent() throws Exception {
+        final File source = this.source();
+        final File target = new File(this.temporaryFolder.getRoot(), "target");
+        new Materialization(Materialization.HARDLINK, Mockito.mock(Log.class)).apply(source, target);
+        MatcherAssert.assertThat(this.key(target), Matchers.is(this.key(source)));
+        MatcherAssert.assertThat(this.content(target), Matchers.is(CONTENT));
+    }
+
+    @Test
+    public void copiesFilesToBeModifiedInsteadOfLinking() throws Exception {
+        final File source = this.source();
+        final File target = new File(this.temporaryFolder.getRoot(), "target");
+        new Materialization(Materialization.HARDLINK, Mockito.mock(Log.class)).unshared(true).apply(source, target);
+        MatcherAssert.assertThat(this.key(target), Matchers.not(this.key(source)));
+        MatcherAssert.assertThat(this.content(target), Matchers.is(CONTENT));
+    }
+
+    @Test
+    public void replacesExistingTarget() throws Exception {
+        final File source = this.source();
+        final File target = this.temporaryFolder.newFile();
+        Files.write(target.toPath(), "stale".getBytes(StandardCharsets.UTF_8));
+        new Materialization(Materialization.HARDLINK, Mockito.mock(Log.class)).apply(source, target);
+        MatcherAssert.assertThat(this.content(target), Matchers.is(CONTENT));
+    }
+
+    @Test
+    public void storesSymbolicLinkAsRegularFile() throws Exception {
+        final File source = this.source();
+        final File linked = new File(this.temporaryFolder.getRoot(), "linked");
+        final File stored = new File(this.temporaryFolder.getRoot(), "stored");
+        final Materialization materialization = new Materialization(Materialization.SYMLINK, Mockito.mock(Log.class));
+        materialization.apply(source, linked);
+        materialization.store(source, stored);
+        MatcherAssert.assertThat(Files.isSymbolicLink(linked.toPath()), Matchers.is(true));
+        MatcherAssert.assertThat(Files.isSymbolicLink(stored.toPath()), Matchers.is(false));
+        MatcherAssert.assertThat(this.key(stored), Matchers.not(this.key(source)));
+        MatcherAssert.assertThat(this.content(stored), Matchers.is(CONTENT));
+    }
+
+    @Test
+    public void clonesOrCopiesWithReflink() throws Exception {
+        final File source = this.source();
+        final File target = new File(this.temporaryFolder.getRoot(), "target");
+        new Materialization(Materialization.REFLINK, Mockito.mock(Log.class)).apply(source, target);
+        MatcherAssert.assertThat(this.key(target), Matchers.not(this.key(source)));
+        MatcherAssert.assertThat(this.content(target), Matchers.is(CONTENT));
+    }
+
+    @Test
+    public void clonesOrCopiesManyFilesWithReflink() throws Exception {
+        final File source = this.source();
+        final Materialization materialization = new Materialization(Materialization.REFLINK, Mockito.mock(Log.class));
+        for (int idx = 0; idx < 3; ++idx) {
+            final File target = new File(this.temporaryFolder.getRoot(), String.format("target%d", idx));
+            materialization.apply(source, target);
+            MatcherAssert.assertThat(this.content(target), Matchers.is(CONTENT));
+        }
+    }
+
+    @Test
+    public void linksTreeSkippingIntactFiles() throws Exception {
+        final File tree = this.temporaryFolder.newFolder();
+        Files.createDirectories(new File(tree, "dir/sub").toPath());
+        Files.write(new File(tree, "dir/a.txt").toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(tree, "dir/sub/b.txt").toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        final File target = new File(this.temporaryFolder.getRoot(), "target");
+        final Materialization materialization = new Materialization(Materialization.HARDLINK, Mockito.mock(Log.class));
+        MatcherAssert.assertThat(materialization.applyTree(tree, target), Matchers.is(2));
+        MatcherAssert.assertThat(this.key(new File(target, "dir/sub/b.txt")), Matchers.is(this.key(new File(tree, "dir/sub/b.txt"))));
+        MatcherAssert.assertThat(materialization.applyTree(tree, target), Matchers.is(0));
+        Files.delete(new File(target, "dir/a.txt").toPath());
+        MatcherAssert.assertThat(materialization.applyTree(tree, target), Matchers.is(1));
+        MatcherAssert.assertThat(this.content(new File(target, "dir/a.txt")), Matchers.is(CONTENT));
+    }
+
+    @Test
+    public void copiesTreeWithModificationTimes() throws Exception {
+        final File tree = this.temporaryFolder.newFolder();
+        final File file = new File(tree, "a.txt");
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1_000_000_000_000L));
+        final File target = new File(this.temporaryFolder.getRoot(), "target");
+        final Materialization materialization = new Materialization(Materialization.COPY, Mockito.mock(Log.class));
+        MatcherAssert.assertThat(materialization.applyTree(tree, target), Matchers.is(1));
+        MatcherAssert.assertThat(this.key(new File(target, "a.txt")), Matchers.not(this.key(file)));
+        MatcherAssert.assertThat(new File(target, "a.txt").lastModified(), Matchers.is(1_000_000_000_000L));
+        MatcherAssert.assertThat(materialization.applyTree(tree, target), Matchers.is(0));
+        Files.write(new File(target, "a.txt").toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        MatcherAssert.assertThat(materialization.applyTree(tree, target), Matchers.is(1));
+        MatcherAssert.assertThat(this.content(new File(target, "a.txt")), Matchers.is(CONTENT));
+    }
+
+    private File source() throws Exception {
+        final File source = this.temporaryFolder.newFile();
+        Files.write(source.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        return source;
+    }
+
+    private Object key(final File file) throws Exception {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    private String content(final File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.download.maven.plugin.internal.checksum;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class ChecksumsTest {
+
+    private static final String CONTENT = "content to digest";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Log log = Mockito.mock(Log.class);
+
+    @Test
+    public void validatesAllSuppliedChecksums() throws Exception {
+        new Checksums(
+            DigestUtils.md5Hex(CONTENT), DigestUtils.sha1Hex(CONTENT),
+            DigestUtils.sha256Hex(CONTENT), DigestUtils.sha512Hex(CONTENT), this.log
+        ).validate(this.file());
+    }
+
+    @Test
+    public void validatesFileLargerThanBuffer() throws Exception {
+        final byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42L).nextBytes(content);
+        final File file = this.temporaryFolder.newFile();
+        Files.write(file.toPath(), content);
+        new Checksums(
+            DigestUtils.md5Hex(content), null, DigestUtils.sha256Hex(content), null, this.log
+        ).validate(file);
+    }
+
+    @Test(expected = MojoFailureException.class)
+    public void rejectsFileNotMatchingOneChecksum() throws Exception {
+        new Checksums(
+            DigestUtils.md5Hex(CONTENT), null, DigestUtils.sha256Hex("other content"), null, this.log
+        ).validate(this.file());
+    }
+
+    @Test
+    public void computesOnlyUnknownDigests() throws Exception {
+        final Checksums checksums = new Checksums(
+            DigestUtils.md5Hex(CONTENT), null, DigestUtils.sha256Hex(CONTENT), null, this.log
+        );
+        final Map<String, String> verified = new HashMap<>();
+        verified.put("MD5", DigestUtils.md5Hex(CONTENT));
+        MatcherAssert.assertThat(checksums.isValid(this.file(), verified), Matchers.is(true));
+        MatcherAssert.assertThat(verified.get("SHA-256"), Matchers.is(DigestUtils.sha256Hex(CONTENT)));
+        verified.put("MD5", DigestUtils.md5Hex("other content"));
+        MatcherAssert.assertThat(checksums.isValid(this.file(), verified), Matchers.is(false));
+    }
+
+    @Test
+    public void recordsCrcComputedWhileContentWasWritten() throws Exception {
+        final Checksums checksums = new Checksums(null, null, DigestUtils.sha256Hex(CONTENT), null, this.log);
+        final byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+        final Digester digester = checksums.digester();
+        digester.update(content, 0, content.length);
+        checksums.validate(this.file(), digester);
+        final Map<String, String> verified = new HashMap<>();
+        checksums.record(verified);
+        final CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        MatcherAssert.assertThat(verified.get(Checksums.CRC32), Matchers.is(Long.toHexString(crc.getValue())));
+        final Digester streamed = checksums.digester();
+        streamed.update(content, 0, content.length);
+        checksums.validate(streamed);
+        verified.clear();
+        checksums.record(verified);
+        MatcherAssert.assertThat(verified.containsKey(Checksums.CRC32), Matchers.is(false));
+    }
+
+    private File file() throws Exception {
+        final File file = this.temporaryFolder.newFile();
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}